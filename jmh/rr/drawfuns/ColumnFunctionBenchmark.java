@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rr.drawfuns;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Replays a whole trace of wall and sprite columns through one column function per invocation,
+ * so the score reads as time spent drawing the columns of a demo.
+ *
+ * The fuzz columns are left out: their BlurryTable reads the live engine configuration.
+ *
+ * @author Good Sign
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnFunctionBenchmark {
+
+    @Param({
+        "R_DrawColumn",
+        "R_DrawColumnLow",
+        "R_DrawColumnUnrolled",
+        "R_DrawColumnBoomSuperOpt",
+        "R_DrawTLColumn",
+        "R_DrawColumnBoom.Indexed",
+        "R_DrawColumnBoom.HiColor",
+        "R_DrawColumnBoom.TrueColor",
+        "R_DrawColumnBoomLow.Indexed",
+        "R_DrawColumnBoomLow.HiColor",
+        "R_DrawColumnBoomLow.TrueColor",
+        "R_DrawColumnBoomOpt.Indexed",
+        "R_DrawColumnBoomOpt.HiColor",
+        "R_DrawColumnBoomOpt.TrueColor",
+        "R_DrawColumnBoomOptLow.Indexed",
+        "R_DrawColumnBoomOptLow.HiColor",
+        "R_DrawColumnBoomOptLow.TrueColor",
+        "R_DrawTranslatedColumn.Indexed",
+        "R_DrawTranslatedColumn.HiColor",
+        "R_DrawTranslatedColumn.TrueColor",
+        "R_DrawTranslatedColumnLow.Indexed",
+        "R_DrawTranslatedColumnLow.HiColor",
+        "R_DrawTranslatedColumnLow.TrueColor"
+    })
+    public String kernel;
+
+    /**
+     * A file written with -capturedrawvars, or empty for the synthetic frames
+     */
+    @Param("")
+    public String trace;
+
+    private DrawInputs<Object> inputs;
+    private DoomColumnFunction<byte[], Object> function;
+    private ColVars<byte[], Object>[] columns;
+
+    @Setup
+    public void setup() throws Exception {
+        inputs = new DrawInputs<>(DrawInputs.loadTrace(trace), kernel);
+        columns = inputs.columns;
+        function = inputs.newKernel(kernel, new ColVars<byte[], Object>());
+    }
+
+    @Benchmark
+    public void drawColumns(Blackhole bh) {
+        final DoomColumnFunction<byte[], Object> f = function;
+        for (ColVars<byte[], Object> dc : columns) {
+            f.invoke(dc);
+        }
+        bh.consume(inputs.screen);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rr.drawfuns;
+
+import i.DummySystem;
+import i.IDoomSystem;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import static m.fixed_t.FRACBITS;
+import static m.fixed_t.FRACUNIT;
+import static rr.drawfuns.DrawVarsCapture.COLUMN_FIELDS;
+import static rr.drawfuns.DrawVarsCapture.SPAN_FIELDS;
+
+/**
+ * Screen, lookup tables and ColVars/SpanVars for the draw function benchmarks.
+ *
+ * The geometry comes from a trace written with -capturedrawvars. Without one, a frame-like
+ * trace is made up: one wall column per screen column and floor/ceiling spans in between.
+ * Textures, flats and colormaps are random data of the right size and type for the bpp mode.
+ *
+ * @author Good Sign
+ */
+final class DrawInputs<V> {
+
+    static final IDoomSystem SYSTEM = new DummySystem();
+    private static final int SYNTHETIC_WIDTH = 960;
+    private static final int SYNTHETIC_HEIGHT = 600;
+    private static final int SYNTHETIC_FRAMES = 35;
+    private static final int FLATSIZE = 64 * 64;
+
+    final int width, height;
+    final int[] ylookup, columnofs;
+    final V screen;
+    final ColVars<byte[], V>[] columns;
+    final SpanVars<byte[], V>[] spans;
+    /**
+     * The low detail span functions double ds_x1 and ds_x2 in place, so they need restoring
+     */
+    final int[] spanX1, spanX2;
+
+    @SuppressWarnings("unchecked")
+    DrawInputs(DrawVarsCapture.Trace trace, String kernel) {
+        final Bpp bpp = bppOf(kernel);
+        final boolean lowDetail = isLowDetail(kernel);
+        final boolean masked = isMasked(kernel);
+        final Random random = new Random(0x1D);
+        this.width = trace.viewWidth;
+        this.height = trace.viewHeight;
+        this.ylookup = new int[height];
+        this.columnofs = new int[width];
+        for (int i = 0; i < height; i++) {
+            ylookup[i] = i * width;
+        }
+        for (int i = 0; i < width; i++) {
+            columnofs[i] = i;
+        }
+        this.screen = (V) bpp.buffer(width * height, random);
+
+        // Colormaps are only known by the order they appeared in, so give each its own noise
+        int numColormaps = 1;
+        for (int i = 0; i < trace.columnCount(); i++) {
+            numColormaps = Math.max(numColormaps, trace.columns[i * COLUMN_FIELDS + 9] + 1);
+        }
+        for (int i = 0; i < trace.spanCount(); i++) {
+            numColormaps = Math.max(numColormaps, trace.spans[i * SPAN_FIELDS + 7] + 1);
+        }
+        final V[] colormaps = (V[]) new Object[numColormaps];
+        for (int i = 0; i < numColormaps; i++) {
+            colormaps[i] = (V) bpp.buffer(256, random);
+        }
+
+        final byte[] translation = noise(256, random);
+        final byte[] tranmap = noise(256 * 256, random);
+
+        this.columns = new ColVars[trace.columnCount()];
+        for (int i = 0, f = 0; i < columns.length; i++, f += COLUMN_FIELDS) {
+            final ColVars<byte[], V> dc = new ColVars<>();
+            final int texheight = trace.columns[f + 5] > 0 ? trace.columns[f + 5] : 128;
+            final int ofs = trace.columns[f + 7];
+            // the older kernels assume 128 high textures, make sure they stay inside
+            int length = Math.max(trace.columns[f + 8], ofs + Math.max(texheight, 128));
+            // low detail kernels draw every column twice as wide, the trace is taken in high detail
+            dc.dc_x = lowDetail ? trace.columns[f] >> 1 : trace.columns[f];
+            dc.dc_yl = trace.columns[f + 1];
+            dc.dc_yh = trace.columns[f + 2];
+            dc.dc_iscale = trace.columns[f + 3];
+            dc.centery = trace.columns[f + 6];
+            dc.dc_texturemid = trace.columns[f + 4];
+            if (masked) {
+                // sprite posts don't wrap around, so start at the top of the post and make it long enough
+                dc.dc_texturemid = (dc.centery - dc.dc_yl) * dc.dc_iscale;
+                length = Math.max(length, ofs + (int) (((long) (dc.dc_yh - dc.dc_yl + 1) * dc.dc_iscale) >> FRACBITS) + 1);
+            }
+            dc.dc_texheight = texheight;
+            dc.viewheight = height;
+            dc.dc_source_ofs = ofs;
+            dc.dc_source = noise(length, random);
+            dc.dc_colormap = colormaps[trace.columns[f + 9]];
+            dc.dc_translation = translation;
+            dc.tranmap = tranmap;
+            columns[i] = dc;
+        }
+
+        this.spans = new SpanVars[trace.spanCount()];
+        this.spanX1 = new int[spans.length];
+        this.spanX2 = new int[spans.length];
+        final byte[] flat = noise(FLATSIZE, random);
+        for (int i = 0, f = 0; i < spans.length; i++, f += SPAN_FIELDS) {
+            final SpanVars<byte[], V> ds = new SpanVars<>();
+            ds.ds_y = trace.spans[f];
+            ds.ds_x1 = lowDetail ? trace.spans[f + 1] >> 1 : trace.spans[f + 1];
+            ds.ds_x2 = lowDetail ? trace.spans[f + 2] >> 1 : trace.spans[f + 2];
+            ds.ds_xfrac = trace.spans[f + 3];
+            ds.ds_yfrac = trace.spans[f + 4];
+            ds.ds_xstep = trace.spans[f + 5];
+            ds.ds_ystep = trace.spans[f + 6];
+            ds.ds_source = flat;
+            ds.ds_colormap = colormaps[trace.spans[f + 7]];
+            spans[i] = ds;
+            spanX1[i] = ds.ds_x1;
+            spanX2[i] = ds.ds_x2;
+        }
+    }
+
+    /**
+     * Kernel parameters name the class as it's written in source: R_DrawSpan.TrueColor for the
+     * nested bpp variants, or just R_DrawColumn for the ones that only exist for HiColor
+     */
+    private static Bpp bppOf(String kernel) {
+        final int dot = kernel.indexOf('.');
+        return dot < 0 ? Bpp.HiColor : Bpp.valueOf(kernel.substring(dot + 1));
+    }
+
+    private static boolean isLowDetail(String kernel) {
+        return kernel.contains("Low");
+    }
+
+    /**
+     * Translucent and translated columns draw sprites, which are never tiled
+     */
+    private static boolean isMasked(String kernel) {
+        return kernel.startsWith("R_DrawTL") || kernel.startsWith("R_DrawTranslated");
+    }
+
+    /**
+     * Every draw function has the same constructor shape, so one reflective call covers them all
+     */
+    @SuppressWarnings("unchecked")
+    <F> F newKernel(String kernel, Object vars) throws ReflectiveOperationException {
+        final Class<?> type = Class.forName(DrawInputs.class.getPackage().getName() + '.' + kernel.replace('.', '$'));
+        return (F) type.getConstructors()[0].newInstance(width, height, ylookup, columnofs, vars, screen, SYSTEM);
+    }
+
+    static DrawVarsCapture.Trace loadTrace(String fileName) throws IOException {
+        if (fileName == null || fileName.isEmpty()) {
+            return syntheticTrace();
+        }
+        return DrawVarsCapture.read(fileName);
+    }
+
+    /**
+     * Something shaped like a frame of an indoor level: walls taking the middle of each column,
+     * getting nearer and farther across the screen, with the floor and ceiling spans around them
+     */
+    static DrawVarsCapture.Trace syntheticTrace() {
+        final Random random = new Random(0xD00D);
+        final int centery = SYNTHETIC_HEIGHT / 2;
+        final int[] columns = new int[SYNTHETIC_FRAMES * SYNTHETIC_WIDTH * COLUMN_FIELDS];
+        final int[] spans = new int[SYNTHETIC_FRAMES * SYNTHETIC_HEIGHT * SPAN_FIELDS];
+        int c = 0, s = 0;
+        final int[] wallTop = new int[SYNTHETIC_WIDTH];
+        for (int frame = 0; frame < SYNTHETIC_FRAMES; frame++) {
+            for (int x = 0; x < SYNTHETIC_WIDTH; x++) {
+                final double depth = 1.5 + Math.sin((x + frame * 8) / 90.0) + random.nextDouble() * 0.1;
+                final int half = Math.min(centery - 1, (int) (centery / depth));
+                final int iscale = (int) (FRACUNIT * depth * 200 / SYNTHETIC_HEIGHT);
+                wallTop[x] = centery - half;
+                columns[c++] = x;
+                columns[c++] = centery - half;
+                columns[c++] = centery + half - 1;
+                columns[c++] = iscale;
+                columns[c++] = (random.nextInt(128) << FRACBITS);
+                columns[c++] = (x & 7) == 0 ? 72 : 128;
+                columns[c++] = centery;
+                columns[c++] = 0;
+                columns[c++] = 128;
+                columns[c++] = Math.min(31, (int) (depth * 8));
+            }
+            // one span per row above and below the walls, clipped to the widest opening
+            for (int y = 0; y < SYNTHETIC_HEIGHT; y++) {
+                final int row = y < centery ? y : SYNTHETIC_HEIGHT - 1 - y;
+                int x1 = -1, x2 = -1;
+                for (int x = 0; x < SYNTHETIC_WIDTH; x++) {
+                    if (row < wallTop[x]) {
+                        if (x1 < 0) {
+                            x1 = x;
+                        }
+                        x2 = x;
+                    }
+                }
+                if (x1 < 0) {
+                    continue;
+                }
+                final int distance = Math.max(1, Math.abs(y - centery));
+                spans[s++] = y;
+                spans[s++] = x1;
+                spans[s++] = x2;
+                spans[s++] = random.nextInt();
+                spans[s++] = random.nextInt();
+                spans[s++] = FRACUNIT * 64 / distance;
+                spans[s++] = FRACUNIT * 16 / distance;
+                spans[s++] = Math.min(31, 1024 / distance);
+            }
+        }
+        return new DrawVarsCapture.Trace(SYNTHETIC_WIDTH, SYNTHETIC_HEIGHT,
+                Arrays.copyOf(columns, c), Arrays.copyOf(spans, s));
+    }
+
+    private static byte[] noise(int length, Random random) {
+        final byte[] ret = new byte[length];
+        random.nextBytes(ret);
+        return ret;
+    }
+
+    enum Bpp {
+        Indexed {
+            @Override
+            Object buffer(int length, Random random) {
+                return noise(length, random);
+            }
+        },
+        HiColor {
+            @Override
+            Object buffer(int length, Random random) {
+                final short[] ret = new short[length];
+                for (int i = 0; i < length; i++) {
+                    ret[i] = (short) (random.nextInt() & 0x7FFF);
+                }
+                return ret;
+            }
+        },
+        TrueColor {
+            @Override
+            Object buffer(int length, Random random) {
+                final int[] ret = new int[length];
+                for (int i = 0; i < length; i++) {
+                    ret[i] = random.nextInt() | 0xFF000000;
+                }
+                return ret;
+            }
+        };
+
+        abstract Object buffer(int length, Random random);
+    }
+}
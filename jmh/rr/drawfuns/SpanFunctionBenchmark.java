@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rr.drawfuns;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Replays a whole trace of floor and ceiling spans through one span function per invocation.
+ *
+ * @author Good Sign
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpanFunctionBenchmark {
+
+    @Param({
+        "R_DrawSpanUnrolled2",
+        "R_DrawSpan.Indexed",
+        "R_DrawSpan.HiColor",
+        "R_DrawSpan.TrueColor",
+        "R_DrawSpanLow.Indexed",
+        "R_DrawSpanLow.HiColor",
+        "R_DrawSpanLow.TrueColor",
+        "R_DrawSpanUnrolled.Indexed",
+        "R_DrawSpanUnrolled.HiColor",
+        "R_DrawSpanUnrolled.TrueColor"
+    })
+    public String kernel;
+
+    /**
+     * A file written with -capturedrawvars, or empty for the synthetic frames
+     */
+    @Param("")
+    public String trace;
+
+    private DrawInputs<Object> inputs;
+    private DoomSpanFunction<byte[], Object> function;
+    private SpanVars<byte[], Object>[] spans;
+
+    @Setup
+    public void setup() throws Exception {
+        inputs = new DrawInputs<>(DrawInputs.loadTrace(trace), kernel);
+        spans = inputs.spans;
+        function = inputs.newKernel(kernel, new SpanVars<byte[], Object>());
+    }
+
+    @Benchmark
+    public void drawSpans(Blackhole bh) {
+        final DoomSpanFunction<byte[], Object> f = function;
+        final SpanVars<byte[], Object>[] s = spans;
+        for (int i = 0; i < s.length; i++) {
+            s[i].ds_x1 = inputs.spanX1[i];
+            s[i].ds_x2 = inputs.spanX2[i];
+            f.invoke(s[i]);
+        }
+        bh.consume(inputs.screen);
+    }
+}
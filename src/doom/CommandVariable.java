@@ -23,7 +23,7 @@ package doom;
  */
 public enum CommandVariable {
     DISP(String.class), GEOM(String[].class), CONFIG(String[].class), TRANMAP(String.class),
-    PLAYDEMO(String.class), FASTDEMO(String.class), TIMEDEMO(String.class), RECORD(String.class), STATCOPY(String.class),
+    PLAYDEMO(String.class), FASTDEMO(String.class), TIMEDEMO(String.class), RECORD(String.class), STATCOPY(String.class), BENCHREPORT(String.class), CAPTUREDRAWVARS(String.class), RENDERAUDIO(String.class),
     TURBO(Integer.class), SKILL(Integer.class), EPISODE(Integer.class), TIMER(Integer.class), PORT(Integer.class),
     MULTIPLY(Integer.class), WIDTH(Integer.class), HEIGHT(Integer.class),
     PARALLELRENDERER(Integer.class, Integer.class, Integer.class),
@@ -57,6 +57,7 @@ public enum CommandVariable {
     AVG,
     NODRAW,
     NOBLIT,
+    HEADLESS,
     NOPLAYPAL,
     NOCOLORMAP,
     SERIALRENDERER,
@@ -75,6 +76,7 @@ public enum CommandVariable {
     BLOCKMAP,
     SHOWFPS,
     JAVARANDOM,
+    POOLMOBJS,
     GREYPAL;
 
     public final char prefix;
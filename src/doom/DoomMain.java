@@ -142,7 +142,11 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -161,6 +165,8 @@ import p.AbstractLevelLoader;
 import p.ActionFunctions;
 import p.BoomLevelLoader;
 import p.mobj_t;
+import pooling.MpscRing;
+import rr.FrameInterpolation;
 import rr.ISpriteManager;
 import rr.SceneRenderer;
 import rr.SpriteManager;
@@ -177,7 +183,9 @@ import savegame.VanillaDSG;
 import savegame.VanillaDSGHeader;
 import st.AbstractStatusBar;
 import st.StatusBar;
+import timing.FrameProfiler;
 import timing.ITicker;
+import timing.InputLatency;
 import timing.MilliTicker;
 import utils.C2JUtils;
 import static utils.C2JUtils.eval;
@@ -238,9 +246,31 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
     // Events are asynchronous inputs generally generated by the game user.
     // Events can be discarded if no responder claims them
     //
-    public final event_t[] events = new event_t[MAXEVENTS];
-    public int eventhead;
-    public int eventtail;
+    // Events are posted from the AWT threads and read by the game thread,
+    // each with the time it was posted at, for the input latency.
+    // None are thrown away: what doesn't fit in the ring, while the game thread
+    // is loading a level or otherwise not taking them, waits in the overflow,
+    // and once anything is there, everything after it goes there too to keep the order.
+    //
+    public final MpscRing<event_t> events = new MpscRing<>(MAXEVENTS, event_t[]::new);
+    private final Queue<PostedEvent> overflow = new ConcurrentLinkedQueue<>();
+    public final InputLatency inputLatency = new InputLatency();
+
+    /**
+     * The last mouse event queued, the I/O thread adds motion into it until the game thread takes it
+     */
+    private event_t.mouseevent_t queuedMouse;
+
+    private static final class PostedEvent {
+
+        final event_t ev;
+        final long stamp;
+
+        PostedEvent(event_t ev, long stamp) {
+            this.ev = ev;
+            this.stamp = stamp;
+        }
+    }
 
     /**
      * D_PostEvent
@@ -258,8 +288,50 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
             return; // Nothing more to do here.
         }
 
-        events[eventhead] = ev;
-        eventhead = (++eventhead) & (MAXEVENTS - 1);
+        /**
+         * The I/O side keeps one mouse event and adds motion into it until told it was processed,
+         * so what is queued is a copy of it, and it is told at once to start over from nothing.
+         * While the copy waits, more motion with the same buttons is added into it, so a fast mouse
+         * queues one event a tic; a button change is always an event of its own.
+         */
+        if (ev.isType(evtype_t.ev_mouse) && ev != event_t.CANCEL_MOUSE) {
+            final event_t.mouseevent_t mouse = (event_t.mouseevent_t) ev;
+            final int x = mouse.x, y = mouse.y, buttons = mouse.buttons;
+            mouse.x = mouse.y = 0;
+            mouse.processedNotify();
+
+            if (addMotion(queuedMouse, x, y, buttons)) {
+                return;
+            }
+            ev = queuedMouse = new event_t.mouseevent_t(mouse.type, buttons, x, y);
+            queuedMouse.resetNotify();
+        }
+
+        final long stamp = System.nanoTime();
+        if (!overflow.isEmpty() || !events.offer(ev, stamp)) {
+            overflow.add(new PostedEvent(ev, stamp));
+            inputLatency.overflowed();
+        }
+    }
+
+    /**
+     * I/O thread: adds motion into a queued mouse event, the game thread marks it processed
+     * under the same lock before it reads it
+     *
+     * @return false if it was taken already, or has other buttons
+     */
+    private static boolean addMotion(event_t.mouseevent_t queued, int x, int y, int buttons) {
+        if (queued == null || queued.buttons != buttons) {
+            return false;
+        }
+        synchronized (queued) {
+            if (queued.processed) {
+                return false;
+            }
+            queued.x += x;
+            queued.y += y;
+            return true;
+        }
     }
 
     /**
@@ -273,22 +345,48 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
             W_CheckNumForName:
             {
                 if ((wadLoader.CheckNumForName("MAP01") < 0)) {
+                    // thrown away, rather than left to pile up in the overflow
+                    while (events.peek() != null) {
+                        events.release();
+                    }
+                    overflow.clear();
                     return;
                 }
             }
         }
 
-        for (; eventtail != eventhead; eventtail = (++eventtail) & (MAXEVENTS - 1)) {
-            final event_t ev = events[eventtail];
-            ev.withMouse(event_t.mouseevent_t::processedNotify);
+        for (;;) {
+            event_t ev = events.peek();
+            final long stamp;
+            if (ev != null) {
+                stamp = events.peekStamp();
+                events.release();
+            } else {
+                final PostedEvent posted = overflow.poll();
+                if (posted == null) {
+                    break;
+                }
+                ev = posted.ev;
+                stamp = posted.stamp;
+            }
+
+            if (ev instanceof event_t.mouseevent_t) {
+                // from here on the I/O thread queues motion anew
+                synchronized (ev) {
+                    ((event_t.mouseevent_t) ev).processedNotify();
+                }
+            }
 
             M_Responder:
             {
                 if (menu.Responder(ev)) {
+                    inputLatency.handled(stamp, true);
                     continue; // menu ate the event
                 }
             }
 
+            inputLatency.handled(stamp, false);
+
             G_Responder:
             {
                 Responder(ev);
@@ -322,6 +420,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
         if (nodrawers) {
             return;
         }
+        profiler.beginFrame();
         redrawsbar = false;
 
         // change the view size if needed
@@ -359,17 +458,25 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
                         || (diskDrawer.justDoneReading())) {
                     redrawsbar = true; // just put away the help screen
                 }
+                graphicSystem.BeginOverlay();
                 statusBar.Drawer(sceneRenderer.isFullHeight(), redrawsbar);
+                graphicSystem.EndOverlay();
                 fullscreen = sceneRenderer.isFullHeight();
                 break;
             case GS_INTERMISSION:
+                graphicSystem.BeginOverlay();
                 endLevel.Drawer();
+                graphicSystem.EndOverlay();
                 break;
             case GS_FINALE:
+                graphicSystem.BeginOverlay();
                 finale.Drawer();
+                graphicSystem.EndOverlay();
                 break;
             case GS_DEMOSCREEN:
+                graphicSystem.BeginOverlay();
                 PageDrawer();
+                graphicSystem.EndOverlay();
                 break;
             default:
                 break;
@@ -381,12 +488,16 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
                 graphicSystem.FillRect(FG, new Rectangle(view.getViewWindowX(), view.getViewWindowY(),
                         view.getScaledViewWidth(), view.getScaledViewHeight()), gametic % 256);
             }
+            interpolation.BeginFrame();
             sceneRenderer.RenderPlayerView(players[displayplayer]);
+            interpolation.EndFrame();
         }
 
         // Automap was active, update only HU.
         if (gamestate == GS_LEVEL && eval(gametic)) {
+            graphicSystem.BeginOverlay();
             headsUp.Drawer();
+            graphicSystem.EndOverlay();
         }
 
         // clean up border stuff
@@ -420,6 +531,9 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
         inhelpscreensstate = inhelpscreens;
         oldgamestate = wipegamestate = gamestate;
 
+        // patches from here to the menu are drawn together
+        graphicSystem.BeginOverlay();
+
         // draw pause pic
         if (paused) {
             if (automapactive) {
@@ -434,6 +548,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
 
         // menus go directly to the screen
         menu.Drawer(); // menu is drawn even on top of everything
+        graphicSystem.EndOverlay();
         NetUpdate(); // send out any new accumulation
 
         // Disk access goes after everything.
@@ -444,6 +559,8 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
             //System.out.print("Tick "+gametic+"\t");
             //System.out.print(players[0]);
             Engine.updateFrame(); // page flip or blit buffer
+            inputLatency.displayed(gametic / ticdup);
+            profiler.endFrame();
             return;
         }
 
@@ -455,6 +572,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
         wipestart = ticker.GetTime() - 1;
 
         do {
+            ticker.WaitForTic(wipestart + 1);
             do {
                 nowtime = ticker.GetTime();
                 tics = nowtime - wipestart;
@@ -468,7 +586,9 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
             soundDriver.SubmitSound();             // update sounds after one wipe tic.
             menu.Drawer();                    // menu is drawn even on top of wipes
             Engine.updateFrame();             // page flip or blit buffer
+            inputLatency.displayed(gametic / ticdup);
         } while (!done);
+        profiler.endFrame();
     }
 
     /**
@@ -502,6 +622,9 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
      *  calls I_GetTime, I_StartFrame, and I_StartTic
      * @throws IOException
      */
+    /** gametic when sounds were last updated */
+    private int lastsoundtic = -1;
+
     @D_Main.C(D_DoomLoop)
     public void DoomLoop() throws IOException {
         if (demorecording) {
@@ -558,30 +681,42 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
                 }
                 G_Ticker:
                 {
+                    profiler.begin(FrameProfiler.Phase.TIC);
                     Ticker();
+                    profiler.end(FrameProfiler.Phase.TIC);
                 }
                 gametic++;
                 maketic++;
             } else {
                 gameNetworking.TryRunTics(); // will run at least one tic (in NET)
             }
-            S_UpdateSounds:
-            {
-                doomSound.UpdateSounds(players[consoleplayer].mo); // move positional sounds
+
+            // Uncapped, a pass may only draw a frame. Sounds still go once a tic,
+            // the mixing of some drivers counts on it.
+            final boolean soundtic = !interpolation.isUncapped() || gametic != lastsoundtic;
+            lastsoundtic = gametic;
+
+            if (soundtic) {
+                S_UpdateSounds:
+                {
+                    doomSound.UpdateSounds(players[consoleplayer].mo); // move positional sounds
+                }
             }
             D_Display:
             { // Update display, next frame, with current state.
                 Display();
             }
-            //#ifndef SNDSERV
-            // Sound mixing for the buffer is snychronous.
-            soundDriver.UpdateSound();
-            //#endif
-            // Synchronous sound output is explicitly called.
-            //#ifndef SNDINTR
-            // Update sound output.
-            soundDriver.SubmitSound();
-            //#endif
+            if (soundtic) {
+                //#ifndef SNDSERV
+                // Sound mixing for the buffer is snychronous.
+                soundDriver.UpdateSound();
+                //#endif
+                // Synchronous sound output is explicitly called.
+                //#ifndef SNDINTR
+                // Update sound output.
+                soundDriver.SubmitSound();
+                //#endif
+            }
 
             // simulate stepping through menu (only on the first frame)
             if (frameon == 1) {
@@ -982,6 +1117,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
         base.copyTo(cmd);
 
         cmd.consistancy = consistancy[consoleplayer][maketic % BACKUPTICS];
+        inputLatency.built(maketic);
 
         strafe = gamekeydown[key_strafe] || mousebuttons(mousebstrafe) || joybuttons(joybstrafe);
         speed = ((gamekeydown[key_speed] ^ alwaysrun) || joybuttons(joybspeed)) ? 1 : 0;
@@ -1408,8 +1544,9 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
                     mousebuttons(1, ev.isMouse(event_t.MOUSE_RIGHT));
                     mousebuttons(2, ev.isMouse(event_t.MOUSE_MID));
                     ev.withMouse(mouseEvent -> {
-                        mousex = mouseEvent.x * (mouseSensitivity + 5) / 10;
-                        mousey = mouseEvent.y * (mouseSensitivity + 5) / 10;
+                        // each event is only the motion since the last, and more than one may come in a tic
+                        mousex += mouseEvent.x * (mouseSensitivity + 5) / 10;
+                        mousey += mouseEvent.y * (mouseSensitivity + 5) / 10;
                     });
                 }
                 return true; // eat events
@@ -1610,6 +1747,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
         // do main actions
         switch (gamestate) {
             case GS_LEVEL:
+                interpolation.SaveTic();
                 actions.Ticker();
                 statusBar.Ticker();
                 autoMap.Ticker();
@@ -2564,6 +2702,22 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
             // killough -- added fps information and made it work for longer demos:
             long realtics = endtime - starttime;
 
+            cVarManager.with(CommandVariable.BENCHREPORT, 0, (String reportName) -> {
+                final Map<String, Object> info = new LinkedHashMap<>();
+                info.put("demo", defdemoname);
+                info.put("bpp_mode", bppMode.name());
+                info.put("renderer", sceneRenderer.getClass().getName());
+                info.put("width", vs.getScreenWidth());
+                info.put("height", vs.getScreenHeight());
+                info.put("headless", cVarManager.bool(CommandVariable.HEADLESS));
+                info.put("gametics", gametic);
+                info.put("realtics", realtics);
+                info.put("fps", gametic * (double) (TICRATE) / realtics);
+                info.put("lump_cache", wadLoader.getCacheStatistics());
+                info.put("input_latency", inputLatency.statistics());
+                profiler.writeReport(reportName, info);
+            });
+
             this.commit();
             CM.SaveDefaults();
             doomSystem.Error("timed %d gametics in %d realtics = %f frames per second", gametic,
@@ -2604,6 +2758,12 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
     /** This should always be available for real timing */
     protected ITicker RealTime;
 
+    /** Per-phase frame timings for -benchreport, does nothing otherwise */
+    public final FrameProfiler profiler;
+
+    /** Where the world is drawn between tics, when frames are not capped to them */
+    public final FrameInterpolation interpolation;
+
     // Bookkeeping on players - state.
     public player_t[] players;
 
@@ -2657,9 +2817,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
 
         // Init objects
         this.cVarManager = Engine.getCVM();
-
-        // Prepare events array with event instances
-        Arrays.fill(events, event_t.EMPTY_EVENT);
+        this.profiler = FrameProfiler.createProfiler(cVarManager);
 
         // Create DoomSystem
         this.doomSystem = new DoomSystem(this);
@@ -2676,6 +2834,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
 
         // Set ticker. It is a shared status object, but not a holder itself.
         this.ticker = ITicker.createTicker(cVarManager);
+        this.interpolation = new FrameInterpolation(this);
 
         // Network "driver"
         this.systemNetworking = new DummyNetworkDriver<>(this);
@@ -2762,7 +2921,7 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
 
         LOGGER.log(Level.INFO, "S_Init: Setting up sound.");
         // Sound "drivers" before the game sound controller.
-        this.music = IMusic.chooseModule(cVarManager);
+        this.music = IMusic.chooseModule(this, cVarManager);
         this.soundDriver = ISoundDriver.chooseModule(this, cVarManager);
         this.doomSound = IDoomSound.chooseSoundIsPresent(this, cVarManager, soundDriver);
 
@@ -3574,13 +3733,14 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
         int stoptic;
 
         stoptic = ticker.GetTime() + 2;
+        ticker.WaitForTic(stoptic);
         while (ticker.GetTime() < stoptic) {
         }
         //videoInterface.StartTic ();
 
         //videoInterface.StartTic ();
-        for (; eventtail != eventhead; eventtail = (++eventtail) & (MAXEVENTS - 1)) {
-            ev = events[eventtail];
+        while ((ev = events.peek()) != null) {
+            events.release();
             if (ev.isKey(SC_ESCAPE, ev_keydown)) {
                 doomSystem.Error("Network game synchronization aborted.");
             }
@@ -3872,6 +4032,16 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
                 menu.Ticker();
                 return;
             }
+
+            // Nothing comes in between tics on our own, so draw a frame in between,
+            // or sleep until the next one. Net games still spin, to pick up packets
+            // as soon as they arrive.
+            if (!netgame && lowtic < gametic / ticdup + counts) {
+                if (interpolation.isUncapped()) {
+                    return;
+                }
+                ticker.WaitForTic((gametime + 1) * ticdup);
+            }
         }
 
         // run the count * ticdup dics
@@ -3884,7 +4054,9 @@ public class DoomMain<T, V> extends DoomStatus<T, V> implements IDoomGameNetwork
                     DoAdvanceDemo();
                 }
                 menu.Ticker();
+                profiler.begin(FrameProfiler.Phase.TIC);
                 Ticker();
+                profiler.end(FrameProfiler.Phase.TIC);
                 gametic++;
 
                 // modify command for duplicated tics
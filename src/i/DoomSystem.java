@@ -108,6 +108,7 @@ package i;
 import awt.MsgBox;
 import doom.DoomMain;
 import doom.ticcmd_t;
+import java.awt.GraphicsEnvironment;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -259,6 +260,12 @@ public class DoomSystem implements IDoomSystem {
     // This particular implementation will generate a popup box.//
     @Override
     public boolean GenerateAlert(String title, String cause, boolean showCancelButton) {
+        if (GraphicsEnvironment.isHeadless()) {
+            // Nobody to ask, so log it and carry on
+            LOGGER.log(Level.WARNING, String.format("%s: %s", title, cause));
+            return true;
+        }
+
         MsgBox alert = new MsgBox(null, title, cause, showCancelButton);
         return alert.isOk();
     }
@@ -126,6 +126,18 @@ public enum Settings {
     extend_plats_limit(FILE_MOCHADOOM, true), // Resize instead of "P_AddActivePlat: no more plats!"
     extend_button_slots_limit(FILE_MOCHADOOM, true), // Resize instead of "P_StartButton: no button slots left!"
     fix_blockmap(FILE_MOCHADOOM, true), // Add support for 512x512 blockmap
+    reject_visibility(FILE_MOCHADOOM, false), // Add sectors that can never see each other to REJECT. Worked out in the background, cached on disk
+    parallel_level_setup(FILE_MOCHADOOM, true), // Load the parts of a level that don't depend on each other at the same time
+    packed_geometry(FILE_MOCHADOOM, true), // Walk the BSP and check sight through a packed copy of nodes, segs and lines, fewer cache misses on big maps
+    sound_latency(FILE_MOCHADOOM, 4), // Tics of sound effects buffered by the audio line, at least 1. Lower starts sounds sooner, higher rides out stalls better
+    prefetch_level(FILE_MOCHADOOM, true), // When graphics are not precached, read the level's ones in the background so they are ready before first drawn
+    lump_cache_budget(FILE_MOCHADOOM, 128), // Megabytes of WAD lumps kept in memory before PU_CACHE ones are dropped, 0 for no limit
+    lump_cache_soft(FILE_MOCHADOOM, false), // Keep dropped PU_CACHE lumps through soft references, until the garbage collector needs the memory
+    tic_pacing(FILE_MOCHADOOM, true), // Sleep until the next tic is due instead of spinning a core at 100% while waiting for it
+    tic_pacing_spin(FILE_MOCHADOOM, 500), // Microseconds before a tic is due to stop sleeping and spin, to make up for late wakeups
+    uncapped_framerate(FILE_MOCHADOOM, false), // Draw as many frames as the machine can between the 35 tics a second, not one per tic. Not in net games
+    interpolate_world(FILE_MOCHADOOM, true), // With uncapped_framerate, things and sector planes move between tics too, not only the view
+    patch_raster_cache(FILE_MOCHADOOM, 16), // Megabytes of menu, HUD and status bar patches kept scaled, to draw them as row copies. 0 draws them by columns
     fix_gamma_ramp(FILE_MOCHADOOM, false), // Vanilla do not use pure black color because Gamma LUT calculated without it, doubling 128
     fix_gamma_palette(FILE_MOCHADOOM, false), // In vanilla, switching gamma with F11 hides Berserk or Rad suit tint
     fix_sky_change(FILE_MOCHADOOM, false), // In vanilla, sky does not change when you exit the level and the next level with new sky
@@ -139,7 +151,8 @@ public enum Settings {
     semi_translucent_fuzz(FILE_MOCHADOOM, false), // only works in AlphaTrueColor mode. Also ignored with fuzz_mix = true
     fuzz_mix(FILE_MOCHADOOM, false), // Maes unique features on Fuzz effect. Vanilla dont have that, so they are switched off by default
     parallelism_realcolor_tint(FILE_MOCHADOOM, Runtime.getRuntime().availableProcessors()), // Used for real color tinting to speed up
-    parallelism_patch_columns(FILE_MOCHADOOM, 0), // When drawing screen graphics patches, this speeds up column drawing, <= 0 is serial
+    pipeline_realcolor_tint(FILE_MOCHADOOM, false), // Tint a TrueColor frame while the next one renders. Shows frames one later
+    parallelism_patch_columns(FILE_MOCHADOOM, 0), // Threads drawing the status bar, HUD and menu patches of a frame together, by screen bands. <= 0 is serial
     greyscale_filter(FILE_MOCHADOOM, GreyscaleFilter.Luminance), // Used for FUZZ effect or with -greypal comand line argument (for test)
     scene_renderer_mode(FILE_MOCHADOOM, SceneRendererMode.Serial), // In vanilla, scene renderer is serial. Parallel can be faster
     reconstruct_savegame_pointers(FILE_MOCHADOOM, true), // In vanilla, infighting targets are not restored on savegame load
@@ -31,10 +31,14 @@ import static g.Signals.ScanCode.SC_ESCAPE;
 import static g.Signals.ScanCode.SC_LALT;
 import static g.Signals.ScanCode.SC_PAUSE;
 import i.Strings;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import timing.FrameProfiler;
 
 public class Engine {
 
@@ -83,12 +87,23 @@ public class Engine {
         // reads command line arguments
         this.cvm = new CVarManager(Arrays.asList(argv));
 
+        // no window, no input, frames only go as far as an offscreen image
+        if (cvm.bool(CommandVariable.HEADLESS)) {
+            System.setProperty("java.awt.headless", "true");
+        }
+
         // reads default.cfg and mochadoom.cfg
         this.cm = new ConfigManager();
 
         // intiializes stuff
         this.DOOM = new DoomMain<>();
 
+        if (cvm.bool(CommandVariable.HEADLESS)) {
+            LOGGER.log(Level.INFO, "Headless mode: no window will be opened.");
+            this.windowController = null;
+            return;
+        }
+
         // opens a window
         this.windowController = /*cvm.bool(CommandVariable.AWTFRAME)
             ? */ DoomWindow.createCanvasWindowController(
@@ -141,7 +156,39 @@ public class Engine {
      * Temporary solution. Will be later moved in more detailed place
      */
     public static void updateFrame() {
-        instance.windowController.updateFrame();
+        instance.doUpdateFrame();
+    }
+
+    /**
+     * Offscreen destination of the frames when running -headless
+     */
+    private BufferedImage headlessSink;
+
+    private void doUpdateFrame() {
+        final FrameProfiler profiler = DOOM.profiler;
+        if (windowController != null) {
+            // post-process happens while the window pulls the image, can't tell them apart here
+            profiler.begin(FrameProfiler.Phase.BLIT);
+            windowController.updateFrame();
+            profiler.end(FrameProfiler.Phase.BLIT);
+            return;
+        }
+
+        profiler.begin(FrameProfiler.Phase.POSTPROCESS);
+        final Image image = DOOM.graphicSystem.getScreenImage();
+        profiler.end(FrameProfiler.Phase.POSTPROCESS);
+
+        profiler.begin(FrameProfiler.Phase.BLIT);
+        if (headlessSink == null) {
+            headlessSink = new BufferedImage(
+                    DOOM.graphicSystem.getScreenWidth(),
+                    DOOM.graphicSystem.getScreenHeight(),
+                    BufferedImage.TYPE_INT_RGB);
+        }
+        final Graphics2D g = headlessSink.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        profiler.end(FrameProfiler.Phase.BLIT);
     }
 
     public String getWindowTitle(double frames) {
@@ -69,6 +69,9 @@ public abstract class AbstractLevelLoader implements ILevelLoader {
     public int numsides;
     public side_t[] sides;
 
+    /** Packed copy of the above for the BSP and sight walks, null when turned off */
+    public LevelGeometry geometry;
+
     // BLOCKMAP
     // Created from axis aligned bounding box
     // of the map, a rectangular array of
@@ -204,6 +207,13 @@ public abstract class AbstractLevelLoader implements ILevelLoader {
 
         nodenum = numnodes - 1;
 
+        if (geometry != null) {
+            while (!C2JUtils.flags(nodenum, NF_SUBSECTOR)) {
+                nodenum = geometry.child(nodenum, geometry.PointOnSide(nodenum, x, y));
+            }
+            return subsectors[nodenum & ~NF_SUBSECTOR];
+        }
+
         while (!C2JUtils.flags(nodenum, NF_SUBSECTOR)) {
             node = nodes[nodenum];
             R_PointOnSide:
@@ -667,73 +677,6 @@ public abstract class AbstractLevelLoader implements ILevelLoader {
 
     }
 
-    protected static int[] POKE_REJECT = new int[]{1, 2, 4, 8, 16, 32, 64,
-        128};
-
-    /**
-     * Updates Reject table dynamically based on what expensive LOS checks say.
-     * It does decrease the "reject density" the longer the level runs, however
-     * its by no means perfect, and results in many sleeping monsters. When
-     * called, visibility between sectors x and y will be set to "false" for the
-     * rest of the level, aka they will be rejected based on subsequent sight
-     * checks.
-     *
-     * @param x
-     * @param y
-     */
-    protected void pokeIntoReject(int x, int y) {
-        // Locate bit pointer e.g. for a 4x4 table, x=2 and y=3 give
-        // 3*4+2=14
-        final int pnum = y * numsectors + x;
-
-        // Which byte?
-        // 14= 1110 >>3 = 0001 so
-        // Byte 0 Byte 1
-        // xxxxxxxx xxxxxxxx
-        // ^
-        // 0.....bits......16
-        // We are writing inside the second Byte 1
-        final int bytenum = pnum >> 3;
-
-        // OK, so how we pinpoint that one bit?
-        // 1110 & 0111 = 0110 = 6 so it's the sixth bit
-        // of the second byte
-        final int bitnum = pnum & 7;
-
-        // This sets only that one bit, and the reject lookup will be faster
-        // next time.
-        rejectmatrix[bytenum] |= POKE_REJECT[bitnum];
-
-        rejectDensity();
-    }
-
-    protected void retrieveFromReject(int x, int y, boolean value) {
-        // Locate bit pointer e.g. for a 4x4 table, x=2 and y=3 give
-        // 3*4+2=14
-        final int pnum = y * numsectors + x;
-
-        // Which byte?
-        // 14= 1110 >>3 = 0001 so
-        // Byte 0 Byte 1
-        // xxxxxxxx xxxxxxxx
-        // ^
-        // 0.....bits......16
-        // We are writing inside the second Byte 1
-        final int bytenum = pnum >> 3;
-
-        // OK, so how we pinpoint that one bit?
-        // 1110 & 0111 = 0110 = 6 so it's the sixth bit
-        // of the second byte
-        final int bitnum = pnum & 7;
-
-        // This sets only that one bit, and the reject lookup will be faster
-        // next time.
-        rejectmatrix[bytenum] |= POKE_REJECT[bitnum];
-
-        rejectDensity();
-
-    }
-
     // Keeps track of lines that belong to a sector, to exclude e.g.
     // orphaned ones from the blockmap.
     protected boolean[] used_lines;
@@ -748,6 +691,9 @@ public abstract class AbstractLevelLoader implements ILevelLoader {
     // A 511x511 blockmap would still have a valid negative number
     // e.g. -1..510, so they would be set to -2
     public static final boolean FIX_BLOCKMAP_512 = Engine.getConfig().equals(Settings.fix_blockmap, Boolean.TRUE);
+
+    /** Whether a level that is not precached gets its graphics read in the background */
+    protected static final boolean PREFETCH = Engine.getConfig().equals(Settings.prefetch_level, Boolean.TRUE);
     public int blockmapxneg = -257;
     public int blockmapyneg = -257;
 
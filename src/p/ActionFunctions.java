@@ -20,6 +20,7 @@ package p;
 import automap.IAutoMap;
 import data.sounds;
 import defines.skill_t;
+import doom.CommandVariable;
 import doom.DoomMain;
 import doom.player_t;
 import hu.IHeadsUp;
@@ -34,6 +35,7 @@ import p.Actions.ActiveStates.Ai;
 import p.Actions.ActiveStates.Attacks;
 import p.Actions.ActiveStates.Thinkers;
 import p.Actions.ActiveStates.Weapons;
+import pooling.MobjPool;
 import rr.SceneRenderer;
 import s.ISoundOrigin;
 import st.IDoomStatusBar;
@@ -45,11 +47,18 @@ public class ActionFunctions extends UnifiedGameMap implements
 
     private static final Logger LOGGER = Loggers.getLogger(ActionFunctions.class.getName());
 
+    /**
+     * Enough for the puffs, blood and projectiles of a busy fight
+     */
+    private static final int MOBJ_POOL_SIZE = 1024;
+
     private final SharedContext traitsSharedContext;
+    private final MobjPool mobjPool;
 
     public ActionFunctions(final DoomMain<?, ?> DOOM) {
         super(DOOM);
         this.traitsSharedContext = buildContext();
+        this.mobjPool = DOOM.cVarManager.bool(CommandVariable.POOLMOBJS) ? new MobjPool(MOBJ_POOL_SIZE) : null;
     }
 
     private SharedContext buildContext() {
@@ -128,9 +137,28 @@ public class ActionFunctions extends UnifiedGameMap implements
 
     @Override
     public mobj_t createMobj() {
+        if (mobjPool != null) {
+            final mobj_t recycled = mobjPool.checkOut();
+            if (recycled != null) {
+                return recycled;
+            }
+        }
         return mobj_t.createOn(DOOM);
     }
 
+    @Override
+    public void recycleMobj(mobj_t mobj) {
+        if (mobjPool != null) {
+            // players hold on to whoever hurt them last, with no generation to check
+            for (player_t player: DOOM.players) {
+                if (player.attacker == mobj) {
+                    player.attacker = null;
+                }
+            }
+            mobjPool.checkIn(mobj);
+        }
+    }
+
     @Override
     public int LevelTime() {
         return DOOM.leveltime;
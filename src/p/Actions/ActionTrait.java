@@ -103,6 +103,8 @@ public interface ActionTrait extends Trait, ThinkerList {
 
     mobj_t createMobj(); // mobj_t.from(DOOM);
 
+    void recycleMobj(mobj_t mobj); // back to the pool, if -poolmobjs
+
     int LevelTime(); // DOOM.leveltime
 
     int P_Random();
@@ -155,6 +157,8 @@ public interface ActionTrait extends Trait, ThinkerList {
 
         @fixed_t
         int tmxmove, tmymove;
+
+        Predicate<intercept_t> slideTraverse;
     }
 
     final class Spechits {
@@ -166,6 +170,7 @@ public interface ActionTrait extends Trait, ThinkerList {
         // USE LINES
         //
         mobj_t usething;
+        Predicate<intercept_t> useTraverse;
     }
 
     ///////////////// MOVEMENT'S ACTIONS ////////////////////////
@@ -191,6 +196,10 @@ public interface ActionTrait extends Trait, ThinkerList {
 
         long tmflags;
 
+        // PIT functions for the block iterators, bound once instead of on every call
+        Predicate<mobj_t> checkThing, stompThing;
+        Predicate<line_t> checkLine;
+
         @fixed_t
         int tmx, tmy;
 
@@ -451,6 +460,11 @@ public interface ActionTrait extends Trait, ThinkerList {
             return true;
         }
 
+        if (ma.checkThing == null) {
+            ma.checkThing = this::CheckThing;
+            ma.checkLine = this::CheckLine;
+        }
+
         // Check things first, possibly picking things up.
         // The bounding box is extended by MAXRADIUS
         // because mobj_ts are grouped into mapblocks
@@ -465,7 +479,7 @@ public interface ActionTrait extends Trait, ThinkerList {
             for (by = yl; by <= yh; by++) {
                 P_BlockThingsIterator:
                 {
-                    if (!BlockThingsIterator(bx, by, this::CheckThing)) {
+                    if (!BlockThingsIterator(bx, by, ma.checkThing)) {
                         return false;
                     }
                 }
@@ -499,7 +513,7 @@ public interface ActionTrait extends Trait, ThinkerList {
             for (by = yl; by <= yh; by++) {
                 P_BlockLinesIterator:
                 {
-                    if (!this.BlockLinesIterator(bx, by, this::CheckLine)) {
+                    if (!this.BlockLinesIterator(bx, by, ma.checkLine)) {
                         return false;
                     }
                 }
@@ -61,7 +61,11 @@ public interface ActionsAim extends ActionsMissiles {
         targ.attackrange = distance;
         targ.linetarget = null;
 
-        PathTraverse(t1.x, t1.y, x2, y2, PT_ADDLINES | PT_ADDTHINGS, this::AimTraverse);
+        if (targ.aimTraverse == null) {
+            targ.aimTraverse = this::AimTraverse;
+        }
+
+        PathTraverse(t1.x, t1.y, x2, y2, PT_ADDLINES | PT_ADDTHINGS, targ.aimTraverse);
 
         if (targ.linetarget != null) {
             return targ.aimslope;
@@ -33,6 +33,7 @@ import static doom.SourceCode.P_Map.PIT_RadiusAttack;
 import static doom.SourceCode.P_Map.PTR_ShootTraverse;
 import doom.SourceCode.angle_t;
 import doom.SourceCode.fixed_t;
+import java.util.function.Predicate;
 import static m.fixed_t.FRACBITS;
 import static m.fixed_t.FRACUNIT;
 import static m.fixed_t.FixedDiv;
@@ -68,6 +69,9 @@ public interface ActionsAttacks extends ActionsAim, ActionsMobj, ActionsSight, A
         public mobj_t vileObj;
         public int vileTryX;
         public int vileTryY;
+
+        // PIT functions for the block iterators, bound once instead of on every call
+        public Predicate<mobj_t> radiusAttack, vileCheck;
     }
 
     //
@@ -109,7 +113,11 @@ public interface ActionsAttacks extends ActionsAim, ActionsMobj, ActionsSight, A
         targ.attackrange = distance;
         targ.aimslope = slope;
 
-        PathTraverse(t1.x, t1.y, x2, y2, PT_ADDLINES | PT_ADDTHINGS, this::ShootTraverse);
+        if (targ.shootTraverse == null) {
+            targ.shootTraverse = this::ShootTraverse;
+        }
+
+        PathTraverse(t1.x, t1.y, x2, y2, PT_ADDLINES | PT_ADDTHINGS, targ.shootTraverse);
     }
 
     //
@@ -142,9 +150,13 @@ public interface ActionsAttacks extends ActionsAim, ActionsMobj, ActionsSight, A
         att.bombsource = source;
         att.bombdamage = damage;
 
+        if (att.radiusAttack == null) {
+            att.radiusAttack = this::RadiusAttack;
+        }
+
         for (y = yl; y <= yh; y++) {
             for (x = xl; x <= xh; x++) {
-                BlockThingsIterator(x, y, this::RadiusAttack);
+                BlockThingsIterator(x, y, att.radiusAttack);
             }
         }
     }
@@ -274,7 +274,7 @@ public interface ActionsEnemies extends ActionsSight, ActionsSpawns {
                 }
             }
 
-            actor.target = player.mo;
+            actor.setTarget(player.mo);
             return true;
         }
         // The compiler complains that this is unreachable
@@ -73,7 +73,7 @@ public interface ActionsMissiles extends ActionsMobj {
             StartSound(th, th.info.seesound);
         }
 
-        th.target = source;    // where it came from
+        th.setTarget(source);    // where it came from
         an = sceneRenderer().PointToAngle2(source.x, source.y, dest.x, dest.y) & BITS32;
 
         // fuzzy player
@@ -143,7 +143,7 @@ public interface ActionsMissiles extends ActionsMobj {
             StartSound(th, th.info.seesound);
         }
 
-        th.target = source;
+        th.setTarget(source);
         th.angle = an;
         th.momx = FixedMul(th.info.speed, finecosine(an));
         th.momy = FixedMul(th.info.speed, finesine(an));
@@ -194,7 +194,7 @@ public interface ActionsMobj extends ActionsThings, ActionsMovement, ActionsTele
                 && (source.type != mobjtype_t.MT_VILE)) {
             // if not intent on another player,
             // chase after this one
-            target.target = source;
+            target.setTarget(source);
             target.threshold = BASETHRESHOLD;
             if (target.mobj_state == states[target.info.spawnstate.ordinal()]
                     && target.info.seestate != statenum_t.S_NULL) {
@@ -213,7 +213,7 @@ public interface ActionsMobj extends ActionsThings, ActionsMovement, ActionsTele
 
         // Maes: this seems necessary in order for barrel damage
         // to propagate inflictors.
-        target.target = source;
+        target.setTarget(source);
 
         target.flags &= ~(MF_SHOOTABLE | MF_FLOAT | MF_SKULLFLY);
 
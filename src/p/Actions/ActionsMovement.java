@@ -427,6 +427,10 @@ public interface ActionsMovement extends ActionsPathTraverse {
         slideMove.slidemo = mo;
         hitcount = 0;
 
+        if (slideMove.slideTraverse == null) {
+            slideMove.slideTraverse = this::SlideTraverse;
+        }
+
         do {
             if (++hitcount == 3) {
                 // goto stairstep
@@ -453,9 +457,9 @@ public interface ActionsMovement extends ActionsPathTraverse {
 
             slideMove.bestslidefrac = FRACUNIT + 1;
 
-            PathTraverse(leadx, leady, leadx + mo.momx, leady + mo.momy, PT_ADDLINES, this::SlideTraverse);
-            PathTraverse(trailx, leady, trailx + mo.momx, leady + mo.momy, PT_ADDLINES, this::SlideTraverse);
-            PathTraverse(leadx, traily, leadx + mo.momx, traily + mo.momy, PT_ADDLINES, this::SlideTraverse);
+            PathTraverse(leadx, leady, leadx + mo.momx, leady + mo.momy, PT_ADDLINES, slideMove.slideTraverse);
+            PathTraverse(trailx, leady, trailx + mo.momx, leady + mo.momy, PT_ADDLINES, slideMove.slideTraverse);
+            PathTraverse(leadx, traily, leadx + mo.momx, traily + mo.momy, PT_ADDLINES, slideMove.slideTraverse);
 
             // move up to the wall
             if (slideMove.bestslidefrac == FRACUNIT + 1) {
@@ -23,7 +23,6 @@ import static data.Defines.MAPBTOFRAC;
 import static data.Defines.PT_ADDLINES;
 import static data.Defines.PT_ADDTHINGS;
 import static data.Defines.PT_EARLYOUT;
-import static data.Limits.MAXINT;
 import static data.Limits.MAXINTERCEPTS;
 import doom.SourceCode.P_MapUtl;
 import static doom.SourceCode.P_MapUtl.P_PathTraverse;
@@ -34,6 +33,14 @@ import static m.fixed_t.FRACUNIT;
 import static m.fixed_t.FixedDiv;
 import static m.fixed_t.FixedMul;
 import p.AbstractLevelLoader;
+import p.LevelGeometry;
+import static p.LevelGeometry.LINE_BACK;
+import static p.LevelGeometry.LINE_SIZE;
+import static p.LevelGeometry.LINE_V1X;
+import static p.LevelGeometry.LINE_V1Y;
+import static p.LevelGeometry.LINE_V2X;
+import static p.LevelGeometry.LINE_V2Y;
+import static p.LevelGeometry.LINE_VALIDCOUNT;
 import static p.MapUtils.InterceptVector;
 import p.divline_t;
 import p.intercept_t;
@@ -73,6 +80,10 @@ public interface ActionsPathTraverse extends ActionsSectors {
 
         int intercept_p;
 
+        // bound once instead of on every call
+        Predicate<line_t> addLineIntercepts;
+        Predicate<mobj_t> addThingIntercepts;
+
         //
         // INTERCEPT ROUTINES
         //
@@ -81,6 +92,66 @@ public interface ActionsPathTraverse extends ActionsSectors {
         void ResizeIntercepts() {
             intercepts = C2JUtils.resize(intercepts[0], intercepts, intercepts.length * 2);
         }
+
+        /**
+         * Binary min-heap of the intercepts still to traverse, each as frac in the high
+         * half and index in the low half, so equal fracs come out in the order they were
+         * added, just like the first-lowest scan of vanilla P_TraverseIntercepts.
+         */
+        long[] queue = new long[MAXINTERCEPTS];
+        int queued;
+
+        /**
+         * Heapifies the intercepts up to maxfrac. Anything farther would only make vanilla
+         * stop and return true, so it's left out and the queue just runs out instead.
+         * Fracs are never negative here: those behind the source are not added.
+         */
+        void QueueIntercepts(int maxfrac) {
+            if (queue.length < intercept_p) {
+                queue = new long[intercepts.length];
+            }
+
+            queued = 0;
+            for (int i = 0; i < intercept_p; i++) {
+                final int frac = intercepts[i].frac;
+                if (frac <= maxfrac) {
+                    queue[queued++] = ((long) frac << 32) | i;
+                }
+            }
+
+            for (int i = (queued >> 1) - 1; i >= 0; i--) {
+                SiftDown(i, queue[i]);
+            }
+        }
+
+        /**
+         * @return the nearest intercept left, or null when the queue is empty
+         */
+        intercept_t NextIntercept() {
+            if (queued == 0) {
+                return null;
+            }
+
+            final long first = queue[0];
+            if (--queued > 0) {
+                SiftDown(0, queue[queued]);
+            }
+            return intercepts[(int) first];
+        }
+
+        private void SiftDown(int i, long key) {
+            for (int child = 2 * i + 1; child < queued; child = 2 * i + 1) {
+                if (child + 1 < queued && queue[child + 1] < queue[child]) {
+                    ++child;
+                }
+                if (key <= queue[child]) {
+                    break;
+                }
+                queue[i] = queue[child];
+                i = child;
+            }
+            queue[i] = key;
+        }
     }
 
     /**
@@ -91,6 +162,7 @@ public interface ActionsPathTraverse extends ActionsSectors {
     @P_MapUtl.C(P_PathTraverse)
     default boolean PathTraverse(int x1, int y1, int x2, int y2, int flags, Predicate<intercept_t> trav) {
         final AbstractLevelLoader ll = levelLoader();
+        final LevelGeometry g = ll.geometry;
         final Spawn sp = contextRequire(KEY_SPAWN);
         final Traverse tr = contextRequire(KEY_TRAVERSE);
 
@@ -181,6 +253,11 @@ public interface ActionsPathTraverse extends ActionsSectors {
         }
         xintercept = mapx1 + FixedMul(partial, xstep);
 
+        if (tr.addLineIntercepts == null) {
+            tr.addLineIntercepts = this::AddLineIntercepts;
+            tr.addThingIntercepts = this::AddThingIntercepts;
+        }
+
         // Step through map blocks.
         // Count is present to prevent a round off error
         // from skipping the break.
@@ -189,13 +266,16 @@ public interface ActionsPathTraverse extends ActionsSectors {
 
         for (count = 0; count < 64; count++) {
             if (eval(flags & PT_ADDLINES)) {
-                if (!this.BlockLinesIterator(mapx, mapy, this::AddLineIntercepts)) {
+                final boolean checked = g != null
+                        ? BlockLineIntercepts(g, mapx, mapy)
+                        : this.BlockLinesIterator(mapx, mapy, tr.addLineIntercepts);
+                if (!checked) {
                     return false;   // early out
                 }
             }
 
             if (eval(flags & PT_ADDTHINGS)) {
-                if (!this.BlockThingsIterator(mapx, mapy, this::AddThingIntercepts)) {
+                if (!this.BlockThingsIterator(mapx, mapy, tr.addThingIntercepts)) {
                     return false;   // early out
                 }
             }
@@ -275,6 +355,95 @@ public interface ActionsPathTraverse extends ActionsSectors {
 
     ;
 
+    /**
+     * P_BlockLinesIterator with PIT_AddLineIntercepts over the packed geometry,
+     * the same walk, with a line only looked up as an object once it is added
+     * as an intercept. The validcount is kept in the packed lines, as in sight.
+     */
+    default boolean BlockLineIntercepts(LevelGeometry g, int x, int y) {
+        final AbstractLevelLoader ll = levelLoader();
+        final int[] lines = g.lines;
+        int lineinblock;
+
+        if (x < 0 || y < 0 || x >= ll.bmapwidth || y >= ll.bmapheight) {
+            return true;
+        }
+
+        final int offset = ll.blockmap[y * ll.bmapwidth + x];
+        final int validcount = sceneRenderer().getValidCount();
+
+        // [SYNC ISSUE]: don't skip offset+1 :-/
+        for (int list = offset; (lineinblock = ll.blockmap[list]) != -1; list++) {
+            final int line = lineinblock * LINE_SIZE;
+            if (lines[line + LINE_VALIDCOUNT] == validcount) {
+                continue;   // line has already been checked
+            }
+            lines[line + LINE_VALIDCOUNT] = validcount;
+            if (!AddLineIntercepts(g, lineinblock)) {
+                return false;
+            }
+        }
+        return true;    // everything was checked
+    }
+
+    /**
+     * PIT_AddLineIntercepts over the packed geometry
+     */
+    default boolean AddLineIntercepts(LevelGeometry g, int num) {
+        final Spawn sp = contextRequire(KEY_SPAWN);
+        final Traverse tr = contextRequire(KEY_TRAVERSE);
+        final int line = num * LINE_SIZE;
+        final int v1x = g.lines[line + LINE_V1X];
+        final int v1y = g.lines[line + LINE_V1Y];
+        final int v2x = g.lines[line + LINE_V2X];
+        final int v2y = g.lines[line + LINE_V2Y];
+
+        boolean s1;
+        boolean s2;
+        @fixed_t
+        int frac;
+
+        // avoid precision problems with two routines
+        if (sp.trace.dx > FRACUNIT * 16 || sp.trace.dy > FRACUNIT * 16
+                || sp.trace.dx < -FRACUNIT * 16 || sp.trace.dy < -FRACUNIT * 16) {
+            s1 = sp.trace.PointOnDivlineSide(v1x, v1y);
+            s2 = sp.trace.PointOnDivlineSide(v2x, v2y);
+        } else {
+            s1 = g.PointOnLineSide(num, sp.trace.x, sp.trace.y);
+            s2 = g.PointOnLineSide(num, sp.trace.x + sp.trace.dx, sp.trace.y + sp.trace.dy);
+        }
+
+        if (s1 == s2) {
+            return true; // line isn't crossed
+        }
+        // hit the line
+        tr.addLineDivLine.x = v1x;
+        tr.addLineDivLine.y = v1y;
+        tr.addLineDivLine.dx = v2x - v1x;
+        tr.addLineDivLine.dy = v2y - v1y;
+        frac = InterceptVector(sp.trace, tr.addLineDivLine);
+
+        if (frac < 0) {
+            return true; // behind source
+        }
+        // try to early out the check
+        if (tr.earlyout && frac < FRACUNIT && g.lines[line + LINE_BACK] == 0) {
+            return false; // stop checking
+        }
+
+        // "create" a new intercept in the static intercept pool.
+        if (tr.intercept_p >= tr.intercepts.length) {
+            tr.ResizeIntercepts();
+        }
+
+        tr.intercepts[tr.intercept_p].frac = frac;
+        tr.intercepts[tr.intercept_p].isaline = true;
+        tr.intercepts[tr.intercept_p].line = levelLoader().lines[num];
+        tr.intercept_p++;
+
+        return true; // continue
+    }
+
     default boolean AddThingIntercepts(mobj_t thing) {
         final Spawn sp = contextRequire(KEY_SPAWN);
         final Traverse tr = contextRequire(KEY_TRAVERSE);
@@ -341,44 +510,17 @@ public interface ActionsPathTraverse extends ActionsSectors {
     //Returns true if the traverser function returns true
     //for all lines.
     //
+    // Vanilla scans the whole list for the lowest frac before each call,
+    // which is quadratic in the intercepts; a heap gives the same order.
+    //
     default boolean TraverseIntercept(Predicate<intercept_t> func, int maxfrac) {
         final Traverse tr = contextRequire(KEY_TRAVERSE);
 
-        int count;
-        @fixed_t
-        int dist;
-        intercept_t in = null;  // shut up compiler warning
-
-        count = tr.intercept_p;
-
-        while (count-- > 0) {
-            dist = MAXINT;
-            for (int scan = 0; scan < tr.intercept_p; scan++) {
-                if (tr.intercepts[scan].frac < dist) {
-                    dist = tr.intercepts[scan].frac;
-                    in = tr.intercepts[scan];
-                }
-            }
-
-            if (dist > maxfrac) {
-                return true;    // checked everything in range
-            }
-            /*  // UNUSED
-            {
-            // don't check these yet, there may be others inserted
-            in = scan = intercepts;
-            for ( scan = intercepts ; scan<intercept_p ; scan++)
-                if (scan.frac > maxfrac)
-                *in++ = *scan;
-            intercept_p = in;
-            return false;
-            }
-             */
-
+        tr.QueueIntercepts(maxfrac);
+        for (intercept_t in = tr.NextIntercept(); in != null; in = tr.NextIntercept()) {
             if (!func.test(in)) {
                 return false;   // don't bother going farther
             }
-            in.frac = MAXINT;
         }
 
         return true;        // everything was traversed
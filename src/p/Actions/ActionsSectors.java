@@ -25,6 +25,7 @@ import defines.statenum_t;
 import doom.SourceCode.P_Map;
 import static doom.SourceCode.P_Map.PIT_ChangeSector;
 import doom.SourceCode.fixed_t;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 import static m.BBox.BOXBOTTOM;
 import static m.BBox.BOXLEFT;
@@ -36,6 +37,7 @@ import p.ActiveStates;
 import p.divline_t;
 import p.floor_e;
 import p.floormove_t;
+import p.intercept_t;
 import p.mobj_t;
 import static p.mobj_t.MF_DROPPED;
 import static p.mobj_t.MF_SHOOTABLE;
@@ -64,6 +66,7 @@ public interface ActionsSectors extends ActionsLights, ActionsFloors, ActionsDoo
 
         boolean crushchange;
         boolean nofit;
+        Predicate<mobj_t> changeSector;
     }
 
     final class RespawnQueue {
@@ -111,6 +114,9 @@ public interface ActionsSectors extends ActionsLights, ActionsFloors, ActionsDoo
         //
         public int bulletslope;
 
+        // PTR functions for PathTraverse, bound once instead of on every call
+        Predicate<intercept_t> aimTraverse, shootTraverse;
+
         boolean isMeleeRange() {
             return attackrange == MELEERANGE;
         }
@@ -139,11 +145,14 @@ public interface ActionsSectors extends ActionsLights, ActionsFloors, ActionsDoo
 
         cr.nofit = false;
         cr.crushchange = crunch;
+        if (cr.changeSector == null) {
+            cr.changeSector = this::ChangeSector;
+        }
 
         // re-check heights for all things near the moving sector
         for (x = sector.blockbox[BOXLEFT]; x <= sector.blockbox[BOXRIGHT]; x++) {
             for (y = sector.blockbox[BOXBOTTOM]; y <= sector.blockbox[BOXTOP]; y++) {
-                this.BlockThingsIterator(x, y, this::ChangeSector);
+                this.BlockThingsIterator(x, y, cr.changeSector);
             }
         }
 
@@ -22,6 +22,21 @@ import static data.Defines.RANGECHECK;
 import doom.SourceCode.fixed_t;
 import static m.fixed_t.FixedDiv;
 import p.AbstractLevelLoader;
+import p.LevelGeometry;
+import static p.LevelGeometry.LINE_SIZE;
+import static p.LevelGeometry.LINE_TWOSIDED;
+import static p.LevelGeometry.LINE_V1X;
+import static p.LevelGeometry.LINE_V1Y;
+import static p.LevelGeometry.LINE_V2X;
+import static p.LevelGeometry.LINE_V2Y;
+import static p.LevelGeometry.LINE_VALIDCOUNT;
+import static p.LevelGeometry.SEG_BACK;
+import static p.LevelGeometry.SEG_FRONT;
+import static p.LevelGeometry.SEG_LINE;
+import static p.LevelGeometry.SEG_SIZE;
+import static p.LevelGeometry.SUB_FIRSTLINE;
+import static p.LevelGeometry.SUB_NUMLINES;
+import static p.LevelGeometry.SUB_SIZE;
 import p.MapUtils;
 import p.divline_t;
 import p.mobj_t;
@@ -46,6 +61,8 @@ public interface ActionsSight extends ActionsSectors {
         ; // from t1 to t2
         int t2x, t2y;
         int[] sightcounts = new int[2];
+        // the line crossed, so it isn't allocated for every subsector
+        divline_t divl = new divline_t();
     }
 
     /**
@@ -97,6 +114,9 @@ public interface ActionsSight extends ActionsSectors {
         sight.strace.dy = t2.y - t1.y;
 
         // the head node is the last node output
+        if (ll.geometry != null) {
+            return CrossBSPNode(ll.geometry, ll.numnodes - 1);
+        }
         return CrossBSPNode(ll.numnodes - 1);
     }
 
@@ -107,7 +127,6 @@ public interface ActionsSight extends ActionsSectors {
     default boolean CrossSubsector(int num) {
         final SceneRenderer<?, ?> sr = sceneRenderer();
         final AbstractLevelLoader ll = levelLoader();
-        final Spawn spawn = contextRequire(KEY_SPAWN);
         final Sight sight = contextRequire(KEY_SIGHT);
 
         int seg; // pointer inside segs
@@ -118,15 +137,9 @@ public interface ActionsSight extends ActionsSectors {
         subsector_t sub;
         sector_t front;
         sector_t back;
-        @fixed_t
-        int opentop;
-        int openbottom;
-        divline_t divl = new divline_t();
+        final divline_t divl = sight.divl;
         //vertex_t v1;
         //vertex_t v2;
-        @fixed_t
-        int frac;
-        int slope;
 
         if (RANGECHECK) {
             if (num >= ll.numsubsectors) {
@@ -188,43 +201,141 @@ public interface ActionsSight extends ActionsSectors {
                 continue;
             }
 
-            // possible occluder
-            // because of ceiling height differences
-            if (front.ceilingheight < back.ceilingheight) {
-                opentop = front.ceilingheight;
-            } else {
-                opentop = back.ceilingheight;
+            if (!CrossOpening(front, back, divl)) {
+                return false; // stop
             }
+        }
+        // passed the subsector ok
+        return true;
+    }
 
-            // because of ceiling height differences
-            if (front.floorheight > back.floorheight) {
-                openbottom = front.floorheight;
-            } else {
-                openbottom = back.floorheight;
+    /**
+     * The part of P_CrossSubsector past a two sided line crossed by strace:
+     * narrows the slopes by the opening between its sectors.
+     *
+     * @return false if the opening blocks sight
+     */
+    default boolean CrossOpening(sector_t front, sector_t back, divline_t divl) {
+        final Spawn spawn = contextRequire(KEY_SPAWN);
+        final Sight sight = contextRequire(KEY_SIGHT);
+
+        @fixed_t
+        int opentop;
+        int openbottom;
+        @fixed_t
+        int frac;
+        int slope;
+
+        // possible occluder
+        // because of ceiling height differences
+        if (front.ceilingheight < back.ceilingheight) {
+            opentop = front.ceilingheight;
+        } else {
+            opentop = back.ceilingheight;
+        }
+
+        // because of ceiling height differences
+        if (front.floorheight > back.floorheight) {
+            openbottom = front.floorheight;
+        } else {
+            openbottom = back.floorheight;
+        }
+
+        // quick test for totally closed doors
+        if (openbottom >= opentop) {
+            return false; // stop
+        }
+
+        frac = MapUtils.P_InterceptVector(sight.strace, divl);
+
+        if (front.floorheight != back.floorheight) {
+            slope = FixedDiv(openbottom - sight.sightzstart, frac);
+            if (slope > spawn.bottomslope) {
+                spawn.bottomslope = slope;
             }
+        }
 
-            // quick test for totally closed doors
-            if (openbottom >= opentop) {
-                return false; // stop
+        if (front.ceilingheight != back.ceilingheight) {
+            slope = FixedDiv(opentop - sight.sightzstart, frac);
+            if (slope < spawn.topslope) {
+                spawn.topslope = slope;
+            }
+        }
+
+        if (spawn.topslope <= spawn.bottomslope) {
+            return false; // stop
+        }
+
+        return true;
+    }
+
+    /**
+     * P_CrossSubsector over the packed geometry, the same walk without
+     * going through the seg and line objects
+     */
+    default boolean CrossSubsector(LevelGeometry g, int num) {
+        final AbstractLevelLoader ll = levelLoader();
+        final Sight sight = contextRequire(KEY_SIGHT);
+        final divline_t divl = sight.divl;
+        final int validcount = sceneRenderer().getValidCount();
+        final int[] segs = g.segs;
+        final int[] lines = g.lines;
+
+        if (RANGECHECK) {
+            if (num >= ll.numsubsectors) {
+                doomSystem().Error("P_CrossSubsector: ss %d with numss = %d", num, ll.numsubsectors);
+            }
+        }
+
+        final int first = g.subsectors[num * SUB_SIZE + SUB_FIRSTLINE];
+        final int end = first + g.subsectors[num * SUB_SIZE + SUB_NUMLINES];
+
+        for (int seg = first; seg < end; seg++) {
+            final int line = segs[seg * SEG_SIZE + SEG_LINE] * LINE_SIZE;
+
+            // allready checked other side?
+            if (lines[line + LINE_VALIDCOUNT] == validcount) {
+                continue;
             }
 
-            frac = MapUtils.P_InterceptVector(sight.strace, divl);
+            lines[line + LINE_VALIDCOUNT] = validcount;
+
+            final int v1x = lines[line + LINE_V1X];
+            final int v1y = lines[line + LINE_V1Y];
+            final int v2x = lines[line + LINE_V2X];
+            final int v2y = lines[line + LINE_V2Y];
 
-            if (front.floorheight != back.floorheight) {
-                slope = FixedDiv(openbottom - sight.sightzstart, frac);
-                if (slope > spawn.bottomslope) {
-                    spawn.bottomslope = slope;
-                }
+            // line isn't crossed?
+            if (sight.strace.DivlineSide(v1x, v1y) == sight.strace.DivlineSide(v2x, v2y)) {
+                continue;
             }
 
-            if (front.ceilingheight != back.ceilingheight) {
-                slope = FixedDiv(opentop - sight.sightzstart, frac);
-                if (slope < spawn.topslope) {
-                    spawn.topslope = slope;
-                }
+            divl.x = v1x;
+            divl.y = v1y;
+            divl.dx = v2x - v1x;
+            divl.dy = v2y - v1y;
+
+            // line isn't crossed?
+            if (divl.DivlineSide(sight.strace.x, sight.strace.y) == divl.DivlineSide(sight.t2x, sight.t2y)) {
+                continue;
             }
 
-            if (spawn.topslope <= spawn.bottomslope) {
+            // stop because it is not two sided anyway
+            if (lines[line + LINE_TWOSIDED] == 0) {
+                return false;
+            }
+
+            // crosses a two sided line
+            final sector_t front = ll.sectors[segs[seg * SEG_SIZE + SEG_FRONT]];
+            final sector_t back = ll.sectors[segs[seg * SEG_SIZE + SEG_BACK]];
+
+            // no wall to block sight with?
+            if (front.floorheight == back.floorheight
+                    && front.ceilingheight == back.ceilingheight) {
+                continue;
+            }
+
+            if (!CrossOpening(front, back, divl)) {
                 return false; // stop
             }
         }
@@ -273,4 +384,39 @@ public interface ActionsSight extends ActionsSectors {
         // cross the ending side
         return CrossBSPNode(bsp.children[side ^ 1]);
     }
-}
\ No newline at end of file
+
+    /**
+     * P_CrossBSPNode over the packed geometry
+     */
+    default boolean CrossBSPNode(LevelGeometry g, int bspnum) {
+        final Sight sight = contextRequire(KEY_SIGHT);
+
+        if (eval(bspnum & NF_SUBSECTOR)) {
+            if (bspnum == -1) {
+                return CrossSubsector(g, 0);
+            } else {
+                return CrossSubsector(g, bspnum & (~NF_SUBSECTOR));
+            }
+        }
+
+        // decide which side the start point is on
+        int side = g.DivlineSide(bspnum, sight.strace.x, sight.strace.y);
+        if (side == 2) {
+            side = 0; // an "on" should cross both sides
+        }
+
+        // cross the starting side
+        if (!CrossBSPNode(g, g.child(bspnum, side))) {
+            return false;
+        }
+
+        // the partition plane is crossed here
+        if (side == g.DivlineSide(bspnum, sight.t2x, sight.t2y)) {
+            // the line doesn't touch the other side
+            return true;
+        }
+
+        // cross the ending side
+        return CrossBSPNode(g, g.child(bspnum, side ^ 1));
+    }
+}
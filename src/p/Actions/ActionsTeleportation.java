@@ -171,6 +171,10 @@ public interface ActionsTeleportation extends ActionsSectors {
         sceneRenderer().increaseValidCount(1); // This is r_main's ?
         spechits.numspechit = 0;
 
+        if (ma.stompThing == null) {
+            ma.stompThing = this::StompThing;
+        }
+
         // stomp on any things contacted
         xl = ll.getSafeBlockX(ma.tmbbox[BOXLEFT] - ll.bmaporgx - MAXRADIUS);
         xh = ll.getSafeBlockX(ma.tmbbox[BOXRIGHT] - ll.bmaporgx + MAXRADIUS);
@@ -179,7 +183,7 @@ public interface ActionsTeleportation extends ActionsSectors {
 
         for (bx = xl; bx <= xh; bx++) {
             for (by = yl; by <= yh; by++) {
-                if (!BlockThingsIterator(bx, by, this::StompThing)) {
+                if (!BlockThingsIterator(bx, by, ma.stompThing)) {
                     return false;
                 }
             }
@@ -36,13 +36,13 @@ import static doom.SourceCode.P_Tick.P_RemoveThinker;
 import doom.thinker_t;
 import static m.fixed_t.FRACBITS;
 import p.AbstractLevelLoader;
+import p.ActionFunctions;
 import p.ActiveStates;
-import p.ActiveStates.MobjConsumer;
-import p.ActiveStates.ThinkerConsumer;
 import static p.DoorDefines.FASTDARK;
 import static p.DoorDefines.SLOWDARK;
 import p.RemoveState;
 import p.ThinkerList;
+import p.ThinkerStates;
 import p.UnifiedGameMap;
 import p.mobj_t;
 import static p.mobj_t.MF_SPAWNCEILING;
@@ -298,22 +298,26 @@ public interface ActionsThinkers extends ActionsSectors, ThinkerList {
     // P_RunThinkers
     //
     default void RunThinkers() {
-        thinker_t thinker = getThinkerCap().next;
-        while (thinker != getThinkerCap()) {
-            if (thinker.thinkerFunction == RemoveState.REMOVE) {
+        final ActionFunctions actions = DOOM().actions;
+        final thinker_t thinkercap = getThinkerCap();
+        for (thinker_t thinker = thinkercap.next; thinker != thinkercap; thinker = thinker.next) {
+            final ThinkerStates thinkerFunction = thinker.thinkerFunction;
+            if (thinkerFunction == RemoveState.REMOVE) {
                 // time to remove it
                 thinker.next.prev = thinker.prev;
                 thinker.prev.next = thinker.next;
                 // Z_Free (currentthinker);
-            } else {
-                ActiveStates thinkerFunction = (ActiveStates) thinker.thinkerFunction;
-                if (thinkerFunction.isParamType(MobjConsumer.class)) {
-                    thinkerFunction.fun(MobjConsumer.class).accept(DOOM().actions, (mobj_t) thinker);
-                } else if (thinkerFunction.isParamType(ThinkerConsumer.class)) {
-                    thinkerFunction.fun(ThinkerConsumer.class).accept(DOOM().actions, thinker);
+                if (thinker instanceof mobj_t && ((mobj_t) thinker).player == null) {
+                    recycleMobj((mobj_t) thinker);
                 }
+            } else if (thinkerFunction == ActiveStates.P_MobjThinker) {
+                // Most thinkers are things, so they get a direct call
+                final mobj_t mobj = (mobj_t) thinker;
+                mobj.dropStaleReferences();
+                actions.P_MobjThinker(mobj);
+            } else {
+                ((ActiveStates) thinkerFunction).think(actions, thinker);
             }
-            thinker = thinker.next;
         }
     }
 
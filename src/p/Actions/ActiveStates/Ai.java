@@ -48,7 +48,7 @@ public interface Ai extends Monsters, Sounds {
 
         if (targ != null
                 && eval(targ.flags & MF_SHOOTABLE)) {
-            actor.target = targ;
+            actor.setTarget(targ);
 
             if (eval(actor.flags & MF_AMBUSH)) {
                 seeyou = getEnemies().CheckSight(actor, actor.target);
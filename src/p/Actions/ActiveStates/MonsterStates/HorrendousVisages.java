@@ -136,7 +136,7 @@ public interface HorrendousVisages extends Sounds {
 
         // spawn brain missile
         newmobj = getAttacks().SpawnMissile(mo, targ, mobjtype_t.MT_SPAWNSHOT);
-        newmobj.target = targ;
+        newmobj.setTarget(targ);
         newmobj.reactiontime = ((targ.y - mo.y) / newmobj.momy) / newmobj.mobj_state.tics;
 
         StartSound(null, sounds.sfxenum_t.sfx_bospit);
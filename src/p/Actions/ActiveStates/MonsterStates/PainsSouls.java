@@ -132,7 +132,7 @@ public interface PainsSouls extends ActionTrait {
             return;
         }
 
-        newmobj.target = actor.target;
+        newmobj.setTarget(actor.target);
         A_SkullAttack(newmobj);
     }
 
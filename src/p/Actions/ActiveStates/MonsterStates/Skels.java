@@ -53,7 +53,7 @@ public interface Skels extends ActionTrait {
 
         mo.x += mo.momx;
         mo.y += mo.momy;
-        mo.tracer = actor.target;
+        mo.setTracer(actor.target);
     }
 
     default void A_SkelWhoosh(mobj_t actor) {
@@ -74,17 +74,20 @@ public interface Viles extends ActionTrait {
             yh = ll.getSafeBlockY(att.vileTryY - ll.bmaporgy + MAXRADIUS * 2);
 
             att.vileObj = actor;
+            if (att.vileCheck == null) {
+                att.vileCheck = actionsAttacks::VileCheck;
+            }
             for (bx = xl; bx <= xh; bx++) {
                 for (by = yl; by <= yh; by++) {
                     // Call PIT_VileCheck to check
                     // whether object is a corpse
                     // that can be raised.
-                    if (!BlockThingsIterator(bx, by, actionsAttacks::VileCheck)) {
+                    if (!BlockThingsIterator(bx, by, att.vileCheck)) {
                         // got one!
                         temp = actor.target;
-                        actor.target = att.vileCorpseHit;
+                        actor.setTarget(att.vileCorpseHit);
                         A_FaceTarget(actor);
-                        actor.target = temp;
+                        actor.setTarget(temp);
 
                         actor.SetMobjState(statenum_t.S_VILE_HEAL1);
                         StartSound(att.vileCorpseHit, sounds.sfxenum_t.sfx_slop);
@@ -94,7 +97,7 @@ public interface Viles extends ActionTrait {
                         att.vileCorpseHit.height <<= 2;
                         att.vileCorpseHit.flags = info.flags;
                         att.vileCorpseHit.health = info.spawnhealth;
-                        att.vileCorpseHit.target = null;
+                        att.vileCorpseHit.setTarget(null);
 
                         return;
                     }
@@ -164,9 +167,9 @@ public interface Viles extends ActionTrait {
 
         fog = getEnemies().SpawnMobj(actor.target.x, actor.target.y, actor.target.z, mobjtype_t.MT_FIRE);
 
-        actor.tracer = fog;
-        fog.target = actor;
-        fog.tracer = actor.target;
+        actor.setTracer(fog);
+        fog.setTarget(actor);
+        fog.setTracer(actor.target);
         A_Fire(fog);
     }
 
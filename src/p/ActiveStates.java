@@ -176,9 +176,24 @@ public enum ActiveStates implements ThinkerStates {
     private final ParamClass<?> actionFunction;
     private final Class<? extends ParamClass<?>> paramType;
 
+    /**
+     * What P_RunThinkers does with a thinker in this state, worked out once here,
+     * so the tic loop has no type checks to make per thinker
+     */
+    private final ThinkerConsumer think;
+
     private <T extends ParamClass<?>> ActiveStates(final T actionFunction, final Class<T> paramType) {
         this.actionFunction = actionFunction;
         this.paramType = paramType;
+        if (paramType == MobjConsumer.class) {
+            final MobjConsumer mobjFunction = (MobjConsumer) actionFunction;
+            this.think = (a, t) -> mobjFunction.accept(a, (mobj_t) t);
+        } else if (paramType == ThinkerConsumer.class) {
+            this.think = (ThinkerConsumer) actionFunction;
+        } else {
+            // player sprite actions are no thinkers
+            this.think = (a, t) -> {};
+        }
     }
 
     private static void nop(Object... o) {
@@ -208,6 +223,10 @@ public enum ActiveStates implements ThinkerStates {
     private interface ParamClass<T extends ParamClass<T>> {
     }
 
+    public void think(final ActionFunctions a, final thinker_t thinker) {
+        think.accept(a, thinker);
+    }
+
     public boolean isParamType(final Class<?> paramType) {
         return this.paramType == paramType;
     }
@@ -13,6 +13,7 @@ import boom.mapsubsector_znod_t;
 import static data.Defines.NF_SUBSECTOR;
 import static data.Defines.NF_SUBSECTOR_CLASSIC;
 import static data.Defines.PU_LEVEL;
+import static data.Defines.PU_PURGELEVEL;
 import data.Limits;
 import data.maplinedef_t;
 import data.mapnode_t;
@@ -33,9 +34,15 @@ import doom.SourceCode.P_Setup;
 import static doom.SourceCode.P_Setup.P_LoadThings;
 import static doom.SourceCode.P_Setup.P_SetupLevel;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -44,9 +51,11 @@ import static m.BBox.BOXBOTTOM;
 import static m.BBox.BOXLEFT;
 import static m.BBox.BOXRIGHT;
 import static m.BBox.BOXTOP;
+import m.Settings;
 import m.fixed_t;
 import static m.fixed_t.FRACBITS;
 import static m.fixed_t.FRACUNIT;
+import mochadoom.Engine;
 import mochadoom.Loggers;
 import rr.RendererState;
 import rr.line_t;
@@ -1038,6 +1047,41 @@ public class BoomLevelLoader extends AbstractLevelLoader {
         }
     }
 
+    /**
+     * Makes room for the vertexes ZDoom nodes add after the first orgVerts,
+     * pointing the lines into the new array if there is one
+     *
+     * @return the vertexes, to fill in the new ones
+     */
+    private vertex_t[] P_ExtendVertexes(int orgVerts, int newVerts) {
+        z_orgverts = orgVerts;
+        if (orgVerts + newVerts == numvertexes) {
+            return vertexes;
+        }
+
+        final vertex_t[] newvertarray = new vertex_t[orgVerts + newVerts];
+        // TODO: avoid creating new objects that will be rewritten instantly - Good Sign 2017/05/07
+        Arrays.setAll(newvertarray, ii -> new vertex_t());
+        System.arraycopy(vertexes, 0, newvertarray, 0, orgVerts);
+
+        final Map<vertex_t, Integer> index = new IdentityHashMap<>(numvertexes * 2);
+        for (int i = 0; i < numvertexes; i++) {
+            index.put(vertexes[i], i);
+        }
+        for (int i = 0; i < numlines; i++) {
+            //lines[i].v1 = lines[i].v1 - vertexes + newvertarray;
+            //lines[i].v2 = lines[i].v2 - vertexes + newvertarray;
+            // Find indexes of v1 & v2 inside old vertexes array
+            // (.v1-vertexes) and use that index to re-point inside newvertarray
+            lines[i].v1 = newvertarray[index.get(lines[i].v1)];
+            lines[i].v2 = newvertarray[index.get(lines[i].v2)];
+        }
+        // free(vertexes);
+        vertexes = newvertarray;
+        numvertexes = orgVerts + newVerts;
+        return newvertarray;
+    }
+
     private int CheckZNodesOverflow(int size, int count) {
         size -= count;
 
@@ -1075,39 +1119,16 @@ public class BoomLevelLoader extends AbstractLevelLoader {
         newVerts = data.getInt();
 
         if (!samelevel) {
-            if (orgVerts + newVerts == numvertexes) {
-                newvertarray = vertexes;
-            } else {
-                newvertarray = new vertex_t[orgVerts + newVerts];
-                // TODO: avoid creating new objects that will be rewritten instantly - Good Sign 2017/05/07
-                Arrays.setAll(newvertarray, ii -> new vertex_t());
-                System.arraycopy(vertexes, 0, newvertarray, 0, orgVerts);
-            }
-
             //(sizeof(newvertarray[0].x) + sizeof(newvertarray[0].y))
             len = CheckZNodesOverflow(len, newVerts * vertex_t.sizeOf());
             z_vertex_t tmp = new z_vertex_t();
 
+            newvertarray = P_ExtendVertexes(orgVerts, newVerts);
             for (int i = 0; i < newVerts; i++) {
                 tmp.unpack(data);
                 newvertarray[i + orgVerts].x = tmp.x;
                 newvertarray[i + orgVerts].y = tmp.y;
             }
-
-            // Extra vertexes read in
-            if (vertexes != newvertarray) {
-                for (int i = 0; i < numlines; i++) {
-                    //lines[i].v1 = lines[i].v1 - vertexes + newvertarray;
-                    //lines[i].v2 = lines[i].v2 - vertexes + newvertarray;
-                    // Find indexes of v1 & v2 inside old vertexes array
-                    // (.v1-vertexes) and use that index to re-point inside newvertarray
-                    lines[i].v1 = newvertarray[C2JUtils.indexOf(vertexes, lines[i].v1)];
-                    lines[i].v2 = newvertarray[C2JUtils.indexOf(vertexes, lines[i].v2)];
-                }
-                // free(vertexes);
-                vertexes = newvertarray;
-                numvertexes = orgVerts + newVerts;
-            }
         } else {
             // Skip the reading of all these new vertices and the expensive indexOf searches.
             int size = newVerts * z_vertex_t.sizeOf();
@@ -1190,6 +1211,169 @@ public class BoomLevelLoader extends AbstractLevelLoader {
         DOOM.wadLoader.UnlockLumpNum(lump); // cph - release the data
     }
 
+    //
+    // The level cache keeps the BSP, a built blockmap and the expanded REJECT of big maps
+    // in one file, sections of ints read through a mapping of it. Records are the fields
+    // of the objects as the loaders leave them, with other objects as indexes, so adopting
+    // them is a pass of plain assignments with no lump to decode or check.
+    //
+
+    /** Subsector: firstline, numlines */
+    private static final int GC_SUBSECTOR_SIZE = 2;
+    /** Node: x, y, dx, dy, children, the bbox of each child */
+    private static final int GC_NODE_SIZE = 14;
+    /** Seg: v1, v2, v1x, v1y, v2x, v2y, angle high and low, offset, linedef, sidedef, front and back sector, length bits, miniseg */
+    private static final int GC_SEG_SIZE = 15;
+
+    private void P_AdoptSubsectors(IntBuffer data) {
+        numsubsectors = data.remaining() / GC_SUBSECTOR_SIZE;
+        subsectors = calloc_IfSameLevel(subsectors, numsubsectors, subsector_t::new, subsector_t[]::new);
+        for (int i = 0; i < numsubsectors; i++) {
+            subsectors[i].firstline = data.get();
+            subsectors[i].numlines = data.get();
+        }
+    }
+
+    private void P_AdoptNodes(IntBuffer data) {
+        numnodes = data.remaining() / GC_NODE_SIZE;
+        nodes = calloc_IfSameLevel(nodes, numnodes, node_t::new, node_t[]::new);
+        for (int i = 0; i < numnodes; i++) {
+            final node_t no = nodes[i];
+            no.x = data.get();
+            no.y = data.get();
+            no.dx = data.get();
+            no.dy = data.get();
+            no.children[0] = data.get();
+            no.children[1] = data.get();
+            data.get(no.bbox[0].bbox, 0, 4);
+            data.get(no.bbox[1].bbox, 0, 4);
+        }
+    }
+
+    private void P_AdoptSegs(IntBuffer data) {
+        numsegs = data.remaining() / GC_SEG_SIZE;
+        segs = calloc_IfSameLevel(segs, numsegs, seg_t::new, seg_t[]::new);
+        for (int i = 0; i < numsegs; i++) {
+            final seg_t li = segs[i];
+            li.iSegID = i;
+            li.v1 = vertexes[data.get()];
+            li.v2 = vertexes[data.get()];
+            li.v1x = data.get();
+            li.v1y = data.get();
+            li.v2x = data.get();
+            li.v2y = data.get();
+            li.angle = (long) data.get() << 32 | data.get() & 0xFFFFFFFFL;
+            li.offset = data.get();
+            li.linedef = lines[data.get()];
+            final int sidedef = data.get(), front = data.get(), back = data.get();
+            li.sidedef = sidedef >= 0 ? sides[sidedef] : null;
+            li.frontsector = front >= 0 ? sectors[front] : null;
+            li.backsector = back >= 0 ? sectors[back] : null;
+            li.length = Float.intBitsToFloat(data.get());
+            li.miniseg = data.get() != 0;
+        }
+    }
+
+    /**
+     * The number of vertexes in the lump, then the x and y of each one ZDoom nodes added
+     */
+    private void P_AdoptZVertexes(IntBuffer data) {
+        final int orgVerts = data.get();
+        final int newVerts = data.remaining() / 2;
+        final vertex_t[] newvertarray = P_ExtendVertexes(orgVerts, newVerts);
+        for (int i = 0; i < newVerts; i++) {
+            newvertarray[i + orgVerts].x = data.get();
+            newvertarray[i + orgVerts].y = data.get();
+        }
+    }
+
+    /**
+     * Writes what was loaded to the level cache, before anything moves vertexes
+     */
+    private void P_WriteGeometry(boolean znodes) {
+        final Map<vertex_t, Integer> vertexIndex = new IdentityHashMap<>(numvertexes * 2);
+        for (int i = 0; i < numvertexes; i++) {
+            vertexIndex.put(vertexes[i], i);
+        }
+        final Map<side_t, Integer> sideIndex = new IdentityHashMap<>(numsides * 2);
+        for (int i = 0; i < numsides; i++) {
+            sideIndex.put(sides[i], i);
+        }
+
+        final int[] subs = new int[numsubsectors * GC_SUBSECTOR_SIZE];
+        for (int i = 0; i < numsubsectors; i++) {
+            subs[i * GC_SUBSECTOR_SIZE] = subsectors[i].firstline;
+            subs[i * GC_SUBSECTOR_SIZE + 1] = subsectors[i].numlines;
+        }
+
+        final int[] nods = new int[numnodes * GC_NODE_SIZE];
+        for (int i = 0, n = 0; i < numnodes; i++) {
+            final node_t no = nodes[i];
+            nods[n++] = no.x;
+            nods[n++] = no.y;
+            nods[n++] = no.dx;
+            nods[n++] = no.dy;
+            nods[n++] = no.children[0];
+            nods[n++] = no.children[1];
+            System.arraycopy(no.bbox[0].bbox, 0, nods, n, 4);
+            System.arraycopy(no.bbox[1].bbox, 0, nods, n + 4, 4);
+            n += 8;
+        }
+
+        final int[] sgs = new int[numsegs * GC_SEG_SIZE];
+        for (int i = 0, n = 0; i < numsegs; i++) {
+            final seg_t li = segs[i];
+            final Integer v1 = vertexIndex.get(li.v1), v2 = vertexIndex.get(li.v2);
+            final Integer sidedef = li.sidedef != null ? sideIndex.get(li.sidedef) : Integer.valueOf(-1);
+            if (v1 == null || v2 == null || li.linedef == null || sidedef == null) {
+                // not something the loaders make, so not something to keep
+                return;
+            }
+            sgs[n++] = v1;
+            sgs[n++] = v2;
+            sgs[n++] = li.v1x;
+            sgs[n++] = li.v1y;
+            sgs[n++] = li.v2x;
+            sgs[n++] = li.v2y;
+            sgs[n++] = (int) (li.angle >> 32);
+            sgs[n++] = (int) li.angle;
+            sgs[n++] = li.offset;
+            sgs[n++] = li.linedef.id;
+            sgs[n++] = sidedef;
+            sgs[n++] = li.frontsector != null ? li.frontsector.id : -1;
+            sgs[n++] = li.backsector != null ? li.backsector.id : -1;
+            sgs[n++] = Float.floatToRawIntBits(li.length);
+            sgs[n++] = li.miniseg ? 1 : 0;
+        }
+
+        final LevelCache.Sections.Writer writer = new LevelCache.Sections.Writer()
+                .putInts(GC_SUBSECTORS, subs)
+                .putInts(GC_NODES, nods)
+                .putInts(GC_SEGS, sgs)
+                .putBytes(GC_REJECT, rejectmatrix);
+
+        if (znodes) {
+            final int[] verts = new int[1 + (numvertexes - z_orgverts) * 2];
+            verts[0] = z_orgverts;
+            for (int i = z_orgverts, n = 1; i < numvertexes; i++) {
+                verts[n++] = vertexes[i].x;
+                verts[n++] = vertexes[i].y;
+            }
+            writer.putInts(GC_VERTEXES, verts);
+        }
+
+        if (built_blockmap != null) {
+            writer.putInts(GC_BLOCKMAP, built_blockmap);
+        } else if (map_geometry != null && map_geometry.has(GC_BLOCKMAP)) {
+            final IntBuffer cached = map_geometry.ints(GC_BLOCKMAP);
+            final int[] blockmap = new int[cached.remaining()];
+            cached.get(blockmap);
+            writer.putInts(GC_BLOCKMAP, blockmap);
+        }
+
+        writer.write(mapHash(), GEOMETRY_CACHE_KIND, GEOMETRY_CACHE_VERSION);
+    }
+
     private boolean no_overlapped_sprites;
 
     private int GETXY(mobj_t mobj) {
@@ -1558,14 +1742,30 @@ public class BoomLevelLoader extends AbstractLevelLoader {
     // killough 3/30/98: Rewritten to remove blockmap limit,
     // though current algorithm is brute-force and unoptimal.
     //
+    private boolean P_BlockMapNeedsBuilding(int lump) {
+        return DOOM.cVarManager.bool(CommandVariable.BLOCKMAP)
+                || DOOM.wadLoader.LumpLength(lump) < 8
+                || DOOM.wadLoader.LumpLength(lump) / 2 >= 0x10000; // e6y
+    }
+
     private void P_LoadBlockMap(int lump) throws IOException {
         int count = 0;
 
-        if (DOOM.cVarManager.bool(CommandVariable.BLOCKMAP)
-                || DOOM.wadLoader.LumpLength(lump) < 8
-                || (count = DOOM.wadLoader.LumpLength(lump) / 2) >= 0x10000) // e6y
-        {
-            CreateBlockMap();
+        if (P_BlockMapNeedsBuilding(lump)) {
+            // Built blockmaps are kept in the level cache, as big levels take a while
+            final IntBuffer cached = map_geometry != null ? map_geometry.ints(GC_BLOCKMAP) : null;
+            if (cached != null && cached.remaining() >= 4) {
+                blockmaplump = new int[cached.remaining()];
+                cached.get(blockmaplump);
+                bmaporgx = blockmaplump[0];
+                bmaporgy = blockmaplump[1];
+                bmapwidth = blockmaplump[2];
+                bmapheight = blockmaplump[3];
+            } else {
+                CreateBlockMap();
+                // the loop below makes it into the blockmap in place
+                built_blockmap = blockmaplump.clone();
+            }
         } else {
             // cph - final*, wad lump handling updated
             final char[] wadblockmaplump;
@@ -1843,6 +2043,11 @@ public class BoomLevelLoader extends AbstractLevelLoader {
     private void P_RemoveSlimeTrails() { // killough 10/98
         // Hitlist for vertices
         boolean[] hit = new boolean[numvertexes];
+        // Index of each vertex, where searching the array for every seg took seconds on big levels
+        final Map<vertex_t, Integer> index = new IdentityHashMap<>(numvertexes * 2);
+        for (int i = 0; i < numvertexes; i++) {
+            index.put(vertexes[i], i);
+        }
 
         // Searchlist for
         for (int i = 0; i < numsegs; i++) { // Go through each seg
@@ -1856,9 +2061,9 @@ public class BoomLevelLoader extends AbstractLevelLoader {
             if (l.dx != 0 && l.dy != 0) { // We can ignore orthogonal lines
                 vertex_t v = segs[i].v1;
                 do {
-                    int index = C2JUtils.indexOf(vertexes, v);
-                    if (!hit[index]) { // If we haven't processed vertex
-                        hit[index] = true; // Mark this vertex as processed
+                    final int i_v = index.get(v);
+                    if (!hit[i_v]) { // If we haven't processed vertex
+                        hit[i_v] = true; // Mark this vertex as processed
                         if (v != l.v1 && v != l.v2) { // Exclude endpoints of linedefs
                             // Project the vertex back onto the parent linedef
                             long dx2 = (l.dx >> FRACBITS) * (l.dx >> FRACBITS);
@@ -1928,6 +2133,114 @@ public class BoomLevelLoader extends AbstractLevelLoader {
 
     private static final boolean GL_DOOM = false;
 
+    private static final boolean REJECT_VISIBILITY = Engine.getConfig().equals(Settings.reject_visibility, Boolean.TRUE);
+
+    private static final boolean PARALLEL_SETUP = Engine.getConfig().equals(Settings.parallel_level_setup, Boolean.TRUE);
+
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    /**
+     * A part of SetupLevel that may run on another thread
+     */
+    @FunctionalInterface
+    private interface SetupStep {
+
+        void run() throws IOException;
+    }
+
+    /**
+     * Starts the step on the common fork-join pool,
+     * or just runs it if level setup is serial
+     */
+    private static CompletableFuture<Void> fork(SetupStep step) throws IOException {
+        if (!PARALLEL_SETUP) {
+            step.run();
+            return DONE;
+        }
+
+        return CompletableFuture.runAsync(() -> {
+            try {
+                step.run();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Waits for the step, and throws what it threw
+     */
+    private static void join(CompletableFuture<Void> step) throws IOException {
+        try {
+            step.join();
+        } catch (CompletionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /** Level cache of what SetupLevel builds, up the version when a loader or CreateBlockMap changes */
+    private static final String GEOMETRY_CACHE_KIND = "geometry";
+    private static final int GEOMETRY_CACHE_VERSION = 1;
+
+    /** Levels with less BSP than this load from their lumps as fast as from the cache */
+    private static final int GEOMETRY_CACHE_MIN_BYTES = 1 << 20;
+
+    /** Sections of the level cache */
+    private static final int GC_VERTEXES = 0, GC_SUBSECTORS = 1, GC_NODES = 2, GC_SEGS = 3, GC_BLOCKMAP = 4, GC_REJECT = 5;
+
+    /** Lumps of the level being set up, and their hash once worked out */
+    private int map_lumpnum, map_gl_lumpnum;
+    private String map_hash;
+
+    /** Level cache of the level being set up, if it has one */
+    private LevelCache.Sections map_geometry;
+
+    /** Blockmap made by P_LoadBlockMap for the level being set up, as it's cached */
+    private int[] built_blockmap;
+
+    /** Vertexes in the VERTEXES lump, before those of ZDoom nodes */
+    private int z_orgverts;
+
+    /**
+     * Hash of the lumps the geometry is read from, REJECT and GL nodes included when there are.
+     * Worked out the first time it's asked for in a level.
+     */
+    private String mapHash() {
+        if (map_hash == null) {
+            String hash = LevelCache.hashLumps(DOOM.wadLoader, map_lumpnum + ML_THINGS, map_lumpnum + ML_SECTORS);
+            if (P_CheckLumpsForSameSource(map_lumpnum, map_lumpnum + ML_REJECT)) {
+                hash += LevelCache.hashLumps(DOOM.wadLoader, map_lumpnum + ML_REJECT, map_lumpnum + ML_REJECT);
+            }
+            map_hash = nodesVersion > 0
+                ? hash + LevelCache.hashLumps(DOOM.wadLoader, map_gl_lumpnum + ML_GL_VERTS, map_gl_lumpnum + ML_GL_NODES)
+                : hash;
+        }
+        return map_hash;
+    }
+
+    /**
+     * Big levels, and those that need a blockmap made, are worth a level cache.
+     * GL nodes have no segs loaded yet, so they have none.
+     */
+    private boolean P_UseGeometryCache(int lumpnum) {
+        if (samelevel || nodesVersion > 0) {
+            return false;
+        }
+
+        final int bsp = DOOM.wadLoader.LumpLength(lumpnum + ML_SEGS)
+            + DOOM.wadLoader.LumpLength(lumpnum + ML_SSECTORS)
+            + DOOM.wadLoader.LumpLength(lumpnum + ML_NODES);
+        return bsp >= GEOMETRY_CACHE_MIN_BYTES || P_BlockMapNeedsBuilding(lumpnum + ML_BLOCKMAP);
+    }
+
     //
     // P_CheckLevelFormat
     //
@@ -1986,6 +2299,9 @@ public class BoomLevelLoader extends AbstractLevelLoader {
         DOOM.totallive = DOOM.totalkills = DOOM.totalitems = DOOM.totalsecret = DOOM.wminfo.maxfrags = 0;
         DOOM.wminfo.partime = 180;
 
+        // the previous level's, until this one is packed
+        geometry = null;
+
         for (int i = 0; i < Limits.MAXPLAYERS; i++) {
             DOOM.players[i].killcount = DOOM.players[i].secretcount = DOOM.players[i].itemcount = 0;
             // TODO DM.players[i].resurectedkillcount = 0;//e6y
@@ -2002,7 +2318,9 @@ public class BoomLevelLoader extends AbstractLevelLoader {
         }
 
         Z_FreeTags:
-        ; // Z_FreeTags(PU_LEVEL, PU_PURGELEVEL-1);
+        {
+            DOOM.wadLoader.FreeTags(PU_LEVEL, PU_PURGELEVEL - 1);
+        }
 
         if (rejectlump != -1) { // cph - unlock the reject table
             DOOM.wadLoader.UnlockLumpNum(rejectlump);
@@ -2036,6 +2354,10 @@ public class BoomLevelLoader extends AbstractLevelLoader {
             gl_lumpnum = DOOM.wadLoader.CheckNumForName(gl_lumpname); // figgi
         }
 
+        map_lumpnum = lumpnum;
+        map_gl_lumpnum = gl_lumpnum;
+        map_hash = null;
+
         // e6y
         // Refuse to load a map with incomplete pwad structure.
         // Avoid segfaults on levels without nodes.
@@ -2083,52 +2405,96 @@ public class BoomLevelLoader extends AbstractLevelLoader {
             // free(vertexes);
         }
 
-        if (nodesVersion > 0) {
-            this.P_LoadVertexes2(lumpnum + ML_VERTEXES, gl_lumpnum + ML_GL_VERTS);
-        } else {
-            P_LoadVertexes(lumpnum + ML_VERTEXES);
-        }
+        final boolean znodes = nodesVersion <= 0 && P_CheckForZDoomUncompressedNodes(lumpnum, gl_lumpnum);
+        final boolean deepbsp = nodesVersion <= 0 && !znodes && P_CheckForDeePBSPv4Nodes(lumpnum, gl_lumpnum);
+
+        // A level cache has all of the BSP or none of it, ZDoom vertexes too
+        final boolean cacheGeometry = P_UseGeometryCache(lumpnum);
+        map_geometry = cacheGeometry ? LevelCache.readSections(mapHash(), GEOMETRY_CACHE_KIND, GEOMETRY_CACHE_VERSION) : null;
+        if (map_geometry != null && !(map_geometry.has(GC_SUBSECTORS) && map_geometry.has(GC_NODES)
+                && map_geometry.has(GC_SEGS) && map_geometry.has(GC_REJECT) && (!znodes || map_geometry.has(GC_VERTEXES)))) {
+            map_geometry = null;
+        }
+        final boolean cachedBsp = map_geometry != null;
+        built_blockmap = null;
+
+        // Subsectors and nodes refer to nothing else, so they load
+        // alongside vertexes and sectors. ZDoom nodes come with their segs.
+        final CompletableFuture<Void> bsp = cachedBsp ? fork(() -> {
+            P_AdoptSubsectors(map_geometry.ints(GC_SUBSECTORS));
+            P_AdoptNodes(map_geometry.ints(GC_NODES));
+        }) : znodes ? DONE : fork(() -> {
+            if (nodesVersion > 0) {
+                P_LoadSubsectors(gl_lumpnum + ML_GL_SSECT);
+                P_LoadNodes(gl_lumpnum + ML_GL_NODES);
+            } else if (deepbsp) {
+                P_LoadSubsectors_V4(lumpnum + ML_SSECTORS);
+                P_LoadNodes_V4(lumpnum + ML_NODES);
+            } else {
+                P_LoadSubsectors(lumpnum + ML_SSECTORS);
+                P_LoadNodes(lumpnum + ML_NODES);
+            }
+        });
+
+        final CompletableFuture<Void> vertices = fork(() -> {
+            if (nodesVersion > 0) {
+                this.P_LoadVertexes2(lumpnum + ML_VERTEXES, gl_lumpnum + ML_GL_VERTS);
+            } else {
+                P_LoadVertexes(lumpnum + ML_VERTEXES);
+            }
+        });
 
         P_LoadSectors(lumpnum + ML_SECTORS);
+        join(vertices);
         P_LoadSideDefs(lumpnum + ML_SIDEDEFS);
         P_LoadLineDefs(lumpnum + ML_LINEDEFS);
         P_LoadSideDefs2(lumpnum + ML_SIDEDEFS);
         P_LoadLineDefs2(lumpnum + ML_LINEDEFS);
 
-        // e6y: speedup of level reloading
-        // Do not reload BlockMap for same level,
-        // because in case of big level P_CreateBlockMap eats much time
-        if (!samelevel) {
-            P_LoadBlockMap(lumpnum + ML_BLOCKMAP);
-        } else {
-            // clear out mobj chains
-            if (blocklinks != null && blocklinks.length == bmapwidth * bmapheight) {
-                for (int i = 0; i < bmapwidth * bmapheight; i++) {
-                    blocklinks[i] = null;
-                }
+        // Sides and sectors tell which textures and flats are used,
+        // so they can be read in while the rest of the level is built.
+        final CompletableFuture<Void> textures = DOOM.precache
+                ? fork(DOOM.textureManager::PrecacheLevel) : DONE;
+
+        // The blockmap is made of lines and vertexes, segs of lines and sides,
+        // neither changes what the other reads.
+        final CompletableFuture<Void> blockmap = fork(() -> {
+            // e6y: speedup of level reloading
+            // Do not reload BlockMap for same level,
+            // because in case of big level P_CreateBlockMap eats much time
+            if (!samelevel) {
+                P_LoadBlockMap(lumpnum + ML_BLOCKMAP);
             } else {
-                blocklinks = new mobj_t[bmapwidth * bmapheight];
-                Arrays.setAll(blocklinks, i -> mobj_t.createOn(DOOM));
+                // clear out mobj chains
+                if (blocklinks != null && blocklinks.length == bmapwidth * bmapheight) {
+                    for (int i = 0; i < bmapwidth * bmapheight; i++) {
+                        blocklinks[i] = null;
+                    }
+                } else {
+                    blocklinks = new mobj_t[bmapwidth * bmapheight];
+                    Arrays.setAll(blocklinks, i -> mobj_t.createOn(DOOM));
+                }
             }
-        }
+        });
 
-        if (nodesVersion > 0) {
-            P_LoadSubsectors(gl_lumpnum + ML_GL_SSECT);
-            P_LoadNodes(gl_lumpnum + ML_GL_NODES);
-            // TODO: P_LoadGLSegs(gl_lumpnum + ML_GL_SEGS);
-        } else {
-            if (P_CheckForZDoomUncompressedNodes(lumpnum, gl_lumpnum)) {
-                P_LoadZNodes(lumpnum + ML_NODES, 0);
-            } else if (P_CheckForDeePBSPv4Nodes(lumpnum, gl_lumpnum)) {
-                P_LoadSubsectors_V4(lumpnum + ML_SSECTORS);
-                P_LoadNodes_V4(lumpnum + ML_NODES);
-                P_LoadSegs_V4(lumpnum + ML_SEGS);
-            } else {
-                P_LoadSubsectors(lumpnum + ML_SSECTORS);
-                P_LoadNodes(lumpnum + ML_NODES);
-                P_LoadSegs(lumpnum + ML_SEGS);
+        join(bsp);
+        if (cachedBsp) {
+            if (znodes) {
+                join(blockmap);
+                P_AdoptZVertexes(map_geometry.ints(GC_VERTEXES));
             }
-        }
+            P_AdoptSegs(map_geometry.ints(GC_SEGS));
+        } else if (znodes) {
+            // ZDoom nodes add vertexes, and the blockmap is worked out from all of them
+            join(blockmap);
+            P_LoadZNodes(lumpnum + ML_NODES, 0);
+        } else if (deepbsp) {
+            P_LoadSegs_V4(lumpnum + ML_SEGS);
+        } else if (nodesVersion <= 0) {
+            P_LoadSegs(lumpnum + ML_SEGS);
+        }
+        // TODO: P_LoadGLSegs(gl_lumpnum + ML_GL_SEGS);
+        join(blockmap);
 
         /*
          * if (GL_DOOM){ map_subsectors = calloc_IfSameLevel(map_subsectors,
@@ -2138,7 +2504,22 @@ public class BoomLevelLoader extends AbstractLevelLoader {
         // P_GroupLines modified to return a number the underflow padding needs
         // P_LoadReject(lumpnum, P_GroupLines());
         P_GroupLines();
-        super.LoadReject(lumpnum + ML_REJECT);
+        if (cachedBsp) {
+            final ByteBuffer reject = map_geometry.bytes(GC_REJECT);
+            rejectmatrix = new byte[reject.remaining()];
+            reject.get(rejectmatrix);
+        } else {
+            super.LoadReject(lumpnum + ML_REJECT);
+        }
+        // before the slime trails are taken off the vertexes
+        if (cacheGeometry && (!cachedBsp || built_blockmap != null)) {
+            P_WriteGeometry(znodes);
+        }
+        map_geometry = null;
+        if (REJECT_VISIBILITY) {
+            // cached bits only in demos, no thread working next to the game
+            SectorVisibility.augmentReject(this, mapHash(), !DOOM.demoplayback && !DOOM.demorecording);
+        }
 
         /**
          * TODO: try to fix, since it seems it doesn't work
@@ -2150,6 +2531,7 @@ public class BoomLevelLoader extends AbstractLevelLoader {
         // if (DoomStatus.compatibility_level>=lxdoom_1_compatibility ||
         // Compatibility.prboom_comp[PC.PC_REMOVE_SLIME_TRAILS.ordinal()].state)
         P_RemoveSlimeTrails(); // killough 10/98: remove slime trails from wad
+        geometry = LevelGeometry.pack(this);
 
         // Note: you don't need to clear player queue slots --
         // a much simpler fix is in g_game.c -- killough 10/98
@@ -2214,12 +2596,15 @@ public class BoomLevelLoader extends AbstractLevelLoader {
             /* @SourceCode.Compatible if together */
             R_PrecacheLevel:
             {
-                DOOM.textureManager.PrecacheLevel();
+                join(textures);
 
                 // MAES: thinkers are separate than texture management. Maybe split
                 // sprite management as well?
                 DOOM.sceneRenderer.PreCacheThinkers();
             }
+        } else if (PREFETCH) {
+            DOOM.textureManager.PrefetchLevel();
+            DOOM.sceneRenderer.PrefetchThinkers();
         }
 
         /*
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package p;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mochadoom.Loggers;
+import w.IWadLoader;
+
+/**
+ * Files worked out from a map, kept between runs so they are only worked out once.
+ *
+ * They are named after a hash of the map lumps they were made from, so editing the
+ * map, or loading another map under the same name from a PWAD, just misses the cache.
+ * They live in .mochadoom/cache under the user's home.
+ *
+ * @author Good Sign
+ */
+public final class LevelCache {
+
+    private static final Logger LOGGER = Loggers.getLogger(LevelCache.class.getName());
+
+    private static final Path DIRECTORY = Paths.get(System.getProperty("user.home"), ".mochadoom", "cache");
+
+    /** 'MDLS', heads the files of Sections */
+    private static final int SECTIONS_MAGIC = 0x4D444C53;
+    private static final int SECTIONS_HEADER = 12;
+    private static final int MAX_SECTIONS = 16;
+
+    private LevelCache() {}
+
+    /**
+     * SHA-1 of the lumps from first to last inclusive, in hex
+     */
+    public static String hashLumps(IWadLoader W, int first, int last) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+
+        for (int lump = first; lump <= last; lump++) {
+            final byte[] data = W.CacheLumpNumAsRawBytes(lump, 0);
+            digest.update(data);
+            // so moving bytes from one lump to the next changes the hash
+            digest.update(new byte[]{(byte) (data.length >> 24), (byte) (data.length >> 16), (byte) (data.length >> 8), (byte) data.length});
+            W.UnlockLumpNum(lump);
+        }
+
+        final StringBuilder sb = new StringBuilder(40);
+        for (byte b: digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return the file's contents, or null if it's not cached
+     */
+    public static byte[] read(String hash, String kind) {
+        final Path file = DIRECTORY.resolve(hash + '.' + kind);
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+
+        try {
+            return Files.readAllBytes(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not read %s", file), e);
+            return null;
+        }
+    }
+
+    /**
+     * Maps a file written by a Sections.Writer
+     *
+     * @return its sections, or null if it's not cached, or was written by another version
+     */
+    public static Sections readSections(String hash, String kind, int version) {
+        final Path file = DIRECTORY.resolve(hash + '.' + kind);
+        if (!Files.isReadable(file)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < SECTIONS_HEADER || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            final ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+            final int count = map.getInt(8);
+            if (map.getInt(0) != SECTIONS_MAGIC || map.getInt(4) != version
+                    || count < 0 || SECTIONS_HEADER + 12L * count > size) {
+                return null;
+            }
+
+            final Sections sections = new Sections();
+            for (int i = 0; i < count; i++) {
+                final int entry = SECTIONS_HEADER + 12 * i;
+                final int id = map.getInt(entry), offset = map.getInt(entry + 4), length = map.getInt(entry + 8);
+                if (id < 0 || id >= MAX_SECTIONS || offset < 0 || (offset & 3) != 0
+                        || length < 0 || (long) offset + length > size) {
+                    return null;
+                }
+                final ByteBuffer section = map.duplicate();
+                section.limit(offset + length).position(offset);
+                sections.sections[id] = section.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return sections;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not read %s", file), e);
+            return null;
+        }
+    }
+
+    /**
+     * A file of sections, each found by a small id: a header of magic, version and
+     * number of sections, a table of the id, byte offset and byte length of each,
+     * then the sections, each starting on four bytes, little endian.
+     *
+     * Read back through a mapping of the file, a section is a view of the mapping,
+     * so nothing is copied until the loader takes the values it keeps.
+     */
+    public static final class Sections {
+
+        private final ByteBuffer[] sections = new ByteBuffer[MAX_SECTIONS];
+
+        public boolean has(int id) {
+            return sections[id] != null;
+        }
+
+        /**
+         * @return the section as ints, or null if it's not there
+         */
+        public IntBuffer ints(int id) {
+            return sections[id] != null ? sections[id].duplicate().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer() : null;
+        }
+
+        /**
+         * @return the section as bytes, or null if it's not there
+         */
+        public ByteBuffer bytes(int id) {
+            return sections[id] != null ? sections[id].duplicate() : null;
+        }
+
+        public static final class Writer {
+
+            private final ByteBuffer[] sections = new ByteBuffer[MAX_SECTIONS];
+
+            public Writer putInts(int id, int[] data) {
+                final ByteBuffer buffer = ByteBuffer.allocate(4 * data.length).order(ByteOrder.LITTLE_ENDIAN);
+                buffer.asIntBuffer().put(data);
+                sections[id] = buffer;
+                return this;
+            }
+
+            public Writer putBytes(int id, byte[] data) {
+                sections[id] = ByteBuffer.wrap(data);
+                return this;
+            }
+
+            public void write(String hash, String kind, int version) {
+                int count = 0;
+                long size = 0;
+                for (ByteBuffer section: sections) {
+                    if (section != null) {
+                        ++count;
+                        size += (section.capacity() + 3) & ~3;
+                    }
+                }
+
+                final int table = SECTIONS_HEADER + 12 * count;
+                if (table + size > Integer.MAX_VALUE) {
+                    return;
+                }
+
+                final ByteBuffer file = ByteBuffer.allocate((int) (table + size)).order(ByteOrder.LITTLE_ENDIAN);
+                file.putInt(SECTIONS_MAGIC).putInt(version).putInt(count);
+                for (int id = 0, offset = table; id < MAX_SECTIONS; id++) {
+                    if (sections[id] != null) {
+                        file.putInt(id).putInt(offset).putInt(sections[id].capacity());
+                        offset += (sections[id].capacity() + 3) & ~3;
+                    }
+                }
+                for (ByteBuffer section: sections) {
+                    if (section != null) {
+                        file.put(section.array());
+                        file.position((file.position() + 3) & ~3);
+                    }
+                }
+                LevelCache.write(hash, kind, file.array());
+            }
+        }
+    }
+
+    /**
+     * Written to a temporary file first, so a reader never sees half of one
+     */
+    public static void write(String hash, String kind, byte[] data) {
+        final Path file = DIRECTORY.resolve(hash + '.' + kind);
+        try {
+            Files.createDirectories(DIRECTORY);
+            final Path temp = Files.createTempFile(DIRECTORY, hash, ".tmp");
+            Files.write(temp, data);
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not write %s", file), e);
+        }
+    }
+}
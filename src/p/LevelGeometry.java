@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package p;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import static m.fixed_t.FRACBITS;
+import static m.fixed_t.FixedMul;
+import m.Settings;
+import mochadoom.Engine;
+import rr.line_t;
+import static rr.line_t.ML_TWOSIDED;
+import rr.node_t;
+import rr.seg_t;
+import rr.subsector_t;
+import static utils.C2JUtils.eval;
+
+/**
+ * The parts of a level the BSP and sight walks read, packed into int arrays.
+ *
+ * Nodes, subsectors, segs and lines are objects of their own, all over the heap,
+ * and a walk down the tree of a big map spends more time waiting on memory than
+ * it does deciding sides. Here every record is a run of ints in one array per kind,
+ * in the order of the level's own arrays, so a node's partition, children and boxes
+ * share one cache line and the next seg of a subsector is the next few ints.
+ *
+ * It's a copy made once the level is loaded, so it only holds what doesn't change
+ * during play. Sector heights do, and are still read from the sectors.
+ *
+ * @author Good Sign
+ */
+public final class LevelGeometry {
+
+    /** When off, the walks go through the level's objects as they always did */
+    public static final boolean PACKED = Engine.getConfig().equals(Settings.packed_geometry, Boolean.TRUE);
+
+    private static final boolean OLDDEMO = Engine.getConfig().equals(Settings.line_of_sight, Settings.LOS.Vanilla);
+
+    /** Node: partition x, y, dx, dy, children front and back, then the bbox of each child */
+    public static final int NODE_X = 0, NODE_Y = 1, NODE_DX = 2, NODE_DY = 3,
+            NODE_CHILDREN = 4, NODE_BBOX = 6, NODE_SIZE = 16;
+
+    /** Subsector: first seg and number of segs */
+    public static final int SUB_FIRSTLINE = 0, SUB_NUMLINES = 1, SUB_SIZE = 2;
+
+    /** Seg: its linedef, front and back sector, -1 for none */
+    public static final int SEG_LINE = 0, SEG_FRONT = 1, SEG_BACK = 2, SEG_SIZE = 4;
+
+    /**
+     * Line: v1, v2, 1 if two sided, the validcount of the sight and path walks,
+     * and 1 if it has a back sector
+     */
+    public static final int LINE_V1X = 0, LINE_V1Y = 1, LINE_V2X = 2, LINE_V2Y = 3,
+            LINE_TWOSIDED = 4, LINE_VALIDCOUNT = 5, LINE_BACK = 6, LINE_SIZE = 8;
+
+    public final int[] nodes;
+    public final int[] subsectors;
+    public final int[] segs;
+    public final int[] lines;
+
+    private LevelGeometry(AbstractLevelLoader ll) {
+        nodes = new int[ll.numnodes * NODE_SIZE];
+        for (int i = 0; i < ll.numnodes; i++) {
+            final node_t node = ll.nodes[i];
+            final int n = i * NODE_SIZE;
+            nodes[n + NODE_X] = node.x;
+            nodes[n + NODE_Y] = node.y;
+            nodes[n + NODE_DX] = node.dx;
+            nodes[n + NODE_DY] = node.dy;
+            for (int side = 0; side < 2; side++) {
+                nodes[n + NODE_CHILDREN + side] = node.children[side];
+                System.arraycopy(node.bbox[side].bbox, 0, nodes, n + NODE_BBOX + side * 4, 4);
+            }
+        }
+
+        subsectors = new int[ll.numsubsectors * SUB_SIZE];
+        for (int i = 0; i < ll.numsubsectors; i++) {
+            final subsector_t sub = ll.subsectors[i];
+            subsectors[i * SUB_SIZE + SUB_FIRSTLINE] = sub.firstline;
+            subsectors[i * SUB_SIZE + SUB_NUMLINES] = sub.numlines;
+        }
+
+        // not every loader numbers its lines
+        final Map<line_t, Integer> lineIndex = new IdentityHashMap<>(ll.numlines * 2);
+        for (int i = 0; i < ll.numlines; i++) {
+            lineIndex.put(ll.lines[i], i);
+        }
+
+        segs = new int[ll.numsegs * SEG_SIZE];
+        for (int i = 0; i < ll.numsegs; i++) {
+            final seg_t seg = ll.segs[i];
+            segs[i * SEG_SIZE + SEG_LINE] = lineIndex.get(seg.linedef);
+            segs[i * SEG_SIZE + SEG_FRONT] = seg.frontsector != null ? seg.frontsector.id : -1;
+            segs[i * SEG_SIZE + SEG_BACK] = seg.backsector != null ? seg.backsector.id : -1;
+        }
+
+        lines = new int[ll.numlines * LINE_SIZE];
+        for (int i = 0; i < ll.numlines; i++) {
+            final line_t line = ll.lines[i];
+            final int l = i * LINE_SIZE;
+            lines[l + LINE_V1X] = line.v1x;
+            lines[l + LINE_V1Y] = line.v1y;
+            lines[l + LINE_V2X] = line.v2x;
+            lines[l + LINE_V2Y] = line.v2y;
+            lines[l + LINE_TWOSIDED] = eval(line.flags & ML_TWOSIDED) ? 1 : 0;
+            lines[l + LINE_VALIDCOUNT] = line.validcount;
+            lines[l + LINE_BACK] = line.backsector != null ? 1 : 0;
+        }
+    }
+
+    /**
+     * @return the packed copy of the loaded level, or null when it's turned off
+     */
+    public static LevelGeometry pack(AbstractLevelLoader ll) {
+        return PACKED ? new LevelGeometry(ll) : null;
+    }
+
+    public int child(int node, int side) {
+        return nodes[node * NODE_SIZE + NODE_CHILDREN + side];
+    }
+
+    /**
+     * @return where the bbox of the child on the side starts in nodes, BOXTOP first
+     */
+    public int bboxOffset(int node, int side) {
+        return node * NODE_SIZE + NODE_BBOX + side * 4;
+    }
+
+    /**
+     * R_PointOnSide, the same as node_t.PointOnSide
+     */
+    public int PointOnSide(int node, int x, int y) {
+        final int n = node * NODE_SIZE;
+        final int nx = nodes[n + NODE_X];
+        final int ny = nodes[n + NODE_Y];
+        final int ndx = nodes[n + NODE_DX];
+        final int ndy = nodes[n + NODE_DY];
+
+        if (ndx == 0) {
+            if (x <= nx) {
+                return (ndy > 0) ? 1 : 0;
+            }
+
+            return (ndy < 0) ? 1 : 0;
+        }
+        if (ndy == 0) {
+            if (y <= ny) {
+                return (ndx < 0) ? 1 : 0;
+            }
+
+            return (ndx > 0) ? 1 : 0;
+        }
+
+        final int dx = (x - nx);
+        final int dy = (y - ny);
+
+        // Try to quickly decide by looking at sign bits.
+        if (((ndy ^ ndx ^ dx ^ dy) & 0x80000000) != 0) {
+            if (((ndy ^ dx) & 0x80000000) != 0) {
+                // (left is negative)
+                return 1;
+            }
+            return 0;
+        }
+
+        final int left = FixedMul(ndy >> FRACBITS, dx);
+        final int right = FixedMul(dy, ndx >> FRACBITS);
+
+        // front side, or back side
+        return right < left ? 0 : 1;
+    }
+
+    /**
+     * P_PointOnLineSide, the same as line_t.PointOnLineSide
+     */
+    public boolean PointOnLineSide(int line, int x, int y) {
+        final int l = line * LINE_SIZE;
+        final int v1x = lines[l + LINE_V1X];
+        final int v1y = lines[l + LINE_V1Y];
+        final int ldx = lines[l + LINE_V2X] - v1x;
+        final int ldy = lines[l + LINE_V2Y] - v1y;
+
+        return (ldx == 0) ? x <= v1x ? ldy > 0 : ldy < 0
+                : (ldy == 0) ? y <= v1y ? ldx < 0 : ldx > 0
+                        : FixedMul(y - v1y, ldx >> FRACBITS)
+                        >= FixedMul(ldy >> FRACBITS, x - v1x);
+    }
+
+    /**
+     * P_DivlineSide, the same as node_t.DivlineSide, line_of_sight quirk included
+     */
+    public int DivlineSide(int node, int x, int y) {
+        final int n = node * NODE_SIZE;
+        final int nx = nodes[n + NODE_X];
+        final int ny = nodes[n + NODE_Y];
+        final int ndx = nodes[n + NODE_DX];
+        final int ndy = nodes[n + NODE_DY];
+
+        if (ndx == 0) {
+            return x == nx ? 2 : x <= nx ? eval(ndy > 0) : eval(ndy < 0);
+        }
+        if (ndy == 0) {
+            return (OLDDEMO ? x : y) == ny ? 2 : y <= ny ? eval(ndx < 0) : eval(ndx > 0);
+        }
+
+        final int right = ((y - ny) >> FRACBITS) * (ndx >> FRACBITS);
+        final int left = ((x - nx) >> FRACBITS) * (ndy >> FRACBITS);
+        return right < left ? 0 : right == left ? 2 : 1;
+    }
+}
@@ -4,6 +4,7 @@ import static data.Defines.MAPBLOCKSHIFT;
 import static data.Defines.NF_SUBSECTOR;
 import static data.Defines.NF_SUBSECTOR_CLASSIC;
 import static data.Defines.PU_LEVEL;
+import static data.Defines.PU_PURGELEVEL;
 import static data.Limits.MAXPLAYERS;
 import static data.Limits.MAXRADIUS;
 import data.maplinedef_t;
@@ -694,7 +695,7 @@ public class LevelLoader extends AbstractLevelLoader {
       else
   #endif
              */
-            //  Z_FreeTags (PU_LEVEL, PU_PURGELEVEL-1);
+            DOOM.wadLoader.FreeTags(PU_LEVEL, PU_PURGELEVEL - 1);
             // UNUSED W_Profile ();
             DOOM.actions.InitThinkers();
 
@@ -723,6 +724,7 @@ public class LevelLoader extends AbstractLevelLoader {
                 LOGGER.log(Level.WARNING, "Blockmap missing!");
             }
 
+            this.geometry = null;
             // note: most of this ordering is important
             this.LoadVertexes(lumpnum + ML_VERTEXES);
             this.LoadSectors(lumpnum + ML_SECTORS);
@@ -740,6 +742,7 @@ public class LevelLoader extends AbstractLevelLoader {
             this.LoadReject(lumpnum + ML_REJECT);
 
             this.GroupLines();
+            this.geometry = LevelGeometry.pack(this);
 
             DOOM.bodyqueslot = 0;
             // Reset to "deathmatch starts"
@@ -771,6 +774,9 @@ public class LevelLoader extends AbstractLevelLoader {
                 // MAES: thinkers are separate than texture management. Maybe split sprite management as well?
                 DOOM.sceneRenderer.PreCacheThinkers();
 
+            } else if (PREFETCH) {
+                DOOM.textureManager.PrefetchLevel();
+                DOOM.sceneRenderer.PrefetchThinkers();
             }
 
         } catch (Exception e) {
@@ -0,0 +1,533 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package p;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import static m.fixed_t.FRACUNIT;
+import mochadoom.Loggers;
+import rr.line_t;
+import rr.sector_t;
+import rr.seg_t;
+import rr.subsector_t;
+
+/**
+ * Works out which sectors can never see each other, to add them to REJECT.
+ *
+ * Plenty of PWADs ship an empty REJECT, and then every sight check walks the BSP.
+ * Sight from one sector to another has to go through a chain of two-sided lines,
+ * the portals, and a straight line has to pass through every one of them. Following
+ * the portals out of each sector, the next one is clipped to the part that a line
+ * through the first portal and the last (clipped) one can still reach, like vis
+ * does for Quake. Sectors that no chain reaches get the REJECT bit.
+ *
+ * Every shortcut errs on the side of seeing: heights are ignored, since doors and
+ * lifts move; ends of portals touching each other don't clip; sectors meeting at a
+ * vertex only see each other through it. A sector that isn't closed, or shares a
+ * subsector with another one, could leak sight where there is no line, so it and
+ * everything connected to it see each other. Same when a sector takes too long.
+ * So a bit is only set where the BSP walk would say no anyway, and the game plays,
+ * and demos play back, the same as before. Only faster.
+ *
+ * The bits are worked out on a background thread and kept in the level cache.
+ * They are only ORed into REJECT when a level is set up, from the cache, so the
+ * REJECT of a level being played never changes under the game.
+ *
+ * @author Good Sign
+ */
+public final class SectorVisibility {
+
+    private static final Logger LOGGER = Loggers.getLogger(SectorVisibility.class.getName());
+
+    private static final String KIND = "reject";
+    private static final int MAGIC = 0x4D44_5256; // "MDRV"
+    private static final int VERSION = 1;
+
+    /**
+     * Portal visits from one sector, before giving up on it
+     */
+    private static final int MAX_STEPS = 100000;
+    private static final int MAX_DEPTH = 512;
+
+    /**
+     * How far, in map units, a clip may be off and still keep a point
+     */
+    private static final double SLACK = 1.0;
+    private static final double EPSILON = 1e-9;
+
+    private static final ExecutorService BUILDER = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, "Sector visibility");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    private final int numsectors;
+
+    /**
+     * x1, y1, x2, y2 in map units, and the sectors on each side
+     */
+    private final double[][] portals;
+    private final int[] front, back;
+    private final int[][] sectorPortals;
+
+    private final boolean[] unsafe;
+    private final int[] component, componentSize;
+
+    private final byte[] visible;
+    private final boolean[] onStack;
+    private final double[][] clipped = new double[MAX_DEPTH + 1][4];
+    private int steps, rowVisible;
+
+    /**
+     * To be called once REJECT is loaded. Adds the cached bits if there are any,
+     * otherwise works them out in the background for the next time the level is
+     * set up, unless told not to build.
+     */
+    public static void augmentReject(AbstractLevelLoader ll, String hash, boolean build) {
+        final byte[] reject = ll.rejectmatrix;
+        final int numsectors = ll.numsectors;
+        final byte[] cached = load(hash, numsectors, reject.length);
+        if (cached != null) {
+            LOGGER.log(Level.FINE, String.format("REJECT: %d cached bits added", or(reject, cached)));
+            return;
+        }
+
+        if (!build) {
+            return;
+        }
+
+        final SectorVisibility visibility = new SectorVisibility(ll);
+        BUILDER.execute(() -> {
+            final long start = System.nanoTime();
+            final byte[] bits = visibility.build();
+            save(hash, numsectors, bits);
+            LOGGER.log(Level.INFO, String.format("REJECT: %d bits found for %d sectors in %.1f ms, added from the next load",
+                count(bits), numsectors, (System.nanoTime() - start) / 1e6));
+        });
+    }
+
+    /**
+     * Takes what it needs from the level on the calling thread, so the level can go on
+     */
+    SectorVisibility(AbstractLevelLoader ll) {
+        this.numsectors = ll.numsectors;
+        this.unsafe = new boolean[numsectors];
+        this.component = new int[numsectors];
+        this.componentSize = new int[numsectors];
+        this.visible = new byte[(int) (((long) numsectors * numsectors + 7) >> 3)];
+
+        final List<double[]> portalList = new ArrayList<>();
+        final List<int[]> sidesList = new ArrayList<>();
+        final Map<Long, List<line_t>> byVertex = new HashMap<>();
+
+        for (int i = 0; i < ll.numlines; i++) {
+            final line_t line = ll.lines[i];
+            byVertex.computeIfAbsent(vertexKey(line.v1x, line.v1y), k -> new ArrayList<>()).add(line);
+            byVertex.computeIfAbsent(vertexKey(line.v2x, line.v2y), k -> new ArrayList<>()).add(line);
+            if (line.backsector != null && line.frontsector != null && line.backsector != line.frontsector) {
+                portalList.add(new double[]{
+                    (double) line.v1x / FRACUNIT, (double) line.v1y / FRACUNIT,
+                    (double) line.v2x / FRACUNIT, (double) line.v2y / FRACUNIT});
+                sidesList.add(new int[]{line.frontsector.id, line.backsector.id});
+            }
+        }
+
+        // Sectors meeting only at a vertex see through it
+        final Set<Long> covered = new HashSet<>();
+        final Set<Integer> atVertex = new HashSet<>();
+        byVertex.forEach((key, lines) -> {
+            covered.clear();
+            atVertex.clear();
+            for (line_t line: lines) {
+                if (line.frontsector != null) {
+                    atVertex.add(line.frontsector.id);
+                }
+                if (line.backsector != null) {
+                    atVertex.add(line.backsector.id);
+                    if (line.frontsector != null) {
+                        covered.add(pairKey(line.frontsector.id, line.backsector.id));
+                    }
+                }
+            }
+            final Integer[] ids = atVertex.toArray(new Integer[0]);
+            final double x = (double) (int) (key >> 32) / FRACUNIT, y = (double) key.intValue() / FRACUNIT;
+            for (int a = 0; a < ids.length; a++) {
+                for (int b = a + 1; b < ids.length; b++) {
+                    if (!covered.contains(pairKey(ids[a], ids[b]))) {
+                        portalList.add(new double[]{x, y, x, y});
+                        sidesList.add(new int[]{ids[a], ids[b]});
+                    }
+                }
+            }
+        });
+
+        this.portals = portalList.toArray(new double[0][]);
+        this.front = new int[portals.length];
+        this.back = new int[portals.length];
+        this.onStack = new boolean[portals.length];
+
+        final int[] count = new int[numsectors];
+        for (int p = 0; p < portals.length; p++) {
+            front[p] = sidesList.get(p)[0];
+            back[p] = sidesList.get(p)[1];
+            ++count[front[p]];
+            ++count[back[p]];
+        }
+        this.sectorPortals = new int[numsectors][];
+        for (int s = 0; s < numsectors; s++) {
+            sectorPortals[s] = new int[count[s]];
+            count[s] = 0;
+        }
+        for (int p = 0; p < portals.length; p++) {
+            sectorPortals[front[p]][count[front[p]]++] = p;
+            sectorPortals[back[p]][count[back[p]]++] = p;
+        }
+
+        findUnsafe(ll);
+        findComponents();
+    }
+
+    /**
+     * A closed sector has an even number of its lines at each of its vertices.
+     * A subsector with segs of another sector mixes them up for the BSP walk.
+     */
+    private void findUnsafe(AbstractLevelLoader ll) {
+        final Set<Long> odd = new HashSet<>();
+        for (int s = 0; s < numsectors; s++) {
+            final sector_t sector = ll.sectors[s];
+            odd.clear();
+            for (int i = 0; i < sector.linecount; i++) {
+                final line_t line = sector.lines[i];
+                // both sides in the sector, so it's not a boundary
+                if (line.frontsector == line.backsector) {
+                    continue;
+                }
+                toggle(odd, vertexKey(line.v1x, line.v1y));
+                toggle(odd, vertexKey(line.v2x, line.v2y));
+            }
+            unsafe[s] = !odd.isEmpty();
+        }
+
+        for (int i = 0; i < ll.numsubsectors; i++) {
+            final subsector_t sub = ll.subsectors[i];
+            for (int j = 0; j < sub.numlines; j++) {
+                final seg_t seg = ll.segs[sub.firstline + j];
+                if (seg.sidedef != null && seg.sidedef.sector != sub.sector) {
+                    unsafe[sub.sector.id] = true;
+                    unsafe[seg.sidedef.sector.id] = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sectors connected by portals, with all the unsafe ones thrown together
+     */
+    private void findComponents() {
+        for (int s = 0; s < numsectors; s++) {
+            component[s] = s;
+        }
+        for (int p = 0; p < portals.length; p++) {
+            union(front[p], back[p]);
+        }
+        int firstUnsafe = -1;
+        for (int s = 0; s < numsectors; s++) {
+            if (unsafe[s]) {
+                if (firstUnsafe < 0) {
+                    firstUnsafe = s;
+                } else {
+                    union(firstUnsafe, s);
+                }
+            }
+        }
+        for (int s = 0; s < numsectors; s++) {
+            component[s] = find(s);
+            ++componentSize[component[s]];
+        }
+    }
+
+    byte[] build() {
+        for (int s = 0; s < numsectors; s++) {
+            Arrays.fill(onStack, false);
+            rowVisible = 0;
+            steps = 0;
+            setVisible(s, s);
+            if (!searchFrom(s)) {
+                // no clue, so everything it could possibly reach
+                for (int t = 0; t < numsectors; t++) {
+                    if (component[t] == component[s]) {
+                        setVisible(s, t);
+                    }
+                }
+            }
+        }
+
+        final byte[] bits = new byte[visible.length];
+        for (int a = 0; a < numsectors; a++) {
+            for (int b = 0; b < numsectors; b++) {
+                if (!isVisible(a, b) && !isVisible(b, a)) {
+                    final int pnum = a * numsectors + b;
+                    bits[pnum >> 3] |= 1 << (pnum & 7);
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * @return false if it has to be given up
+     */
+    private boolean searchFrom(int s) {
+        if (unsafe[s]) {
+            return false;
+        }
+
+        for (int p: sectorPortals[s]) {
+            final int t = other(p, s);
+            if (unsafe[t]) {
+                return false;
+            }
+            setVisible(s, t);
+            onStack[p] = true;
+
+            // anything on the portal after the first one can be lined up with it
+            for (int q: sectorPortals[t]) {
+                if (onStack[q]) {
+                    continue;
+                }
+                final int u = other(q, t);
+                if (unsafe[u]) {
+                    return false;
+                }
+                setVisible(s, u);
+                if (rowVisible == componentSize[component[s]]) {
+                    return true;
+                }
+                onStack[q] = true;
+                if (!flow(s, portals[p], portals[q], u, 0)) {
+                    return false;
+                }
+                onStack[q] = false;
+            }
+            onStack[p] = false;
+        }
+        return true;
+    }
+
+    private boolean flow(int s, double[] source, double[] pass, int sector, int depth) {
+        if (++steps > MAX_STEPS || depth > MAX_DEPTH) {
+            return false;
+        } else if (rowVisible == componentSize[component[s]]) {
+            return true;
+        }
+
+        final double[] target = clipped[depth];
+        for (int r: sectorPortals[sector]) {
+            if (onStack[r] || !clip(source, pass, portals[r], target)) {
+                continue;
+            }
+            final int v = other(r, sector);
+            if (unsafe[v]) {
+                return false;
+            }
+            setVisible(s, v);
+            if (rowVisible == componentSize[component[s]]) {
+                return true;
+            }
+            onStack[r] = true;
+            if (!flow(s, source, target, v, depth + 1)) {
+                return false;
+            }
+            onStack[r] = false;
+        }
+        return true;
+    }
+
+    /**
+     * Clips the target portal to the side of each separating line between source and pass
+     * that holds the pass. A line through a point on each of them stays on that side
+     * past the pass, so this never loses a point a straight line could cross.
+     *
+     * @return false if nothing is left
+     */
+    static boolean clip(double[] source, double[] pass, double[] target, double[] out) {
+        System.arraycopy(target, 0, out, 0, 4);
+        // a line through the shared point can go any way
+        if (touching(source, pass)) {
+            return true;
+        }
+
+        for (int i = 0; i < 4; i += 2) {
+            for (int j = 0; j < 4; j += 2) {
+                final double ax = source[i], ay = source[i + 1];
+                final double dx = pass[j] - ax, dy = pass[j + 1] - ay;
+                final double length = Math.hypot(dx, dy);
+                if (length < SLACK) {
+                    continue;
+                }
+
+                final double fs = cross(dx, dy, source[2 - i] - ax, source[3 - i] - ay) / length;
+                final double fp = cross(dx, dy, pass[2 - j] - ax, pass[3 - j] - ay) / length;
+                // it separates if source and pass are on either side, or on it,
+                // which can be both ways if they are all in line
+                if (fs > -EPSILON && fp < EPSILON && !clipSide(ax, ay, dx, dy, length, 1, out)) {
+                    return false;
+                }
+                if (fs < EPSILON && fp > -EPSILON && !clipSide(ax, ay, dx, dy, length, -1, out)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Keeps what is on the side of the line through a along d where sign * cross is not positive
+     */
+    private static boolean clipSide(double ax, double ay, double dx, double dy, double length, int sign, double[] out) {
+        final double g0 = sign * cross(dx, dy, out[0] - ax, out[1] - ay) / length - SLACK;
+        final double g1 = sign * cross(dx, dy, out[2] - ax, out[3] - ay) / length - SLACK;
+        if (g0 > 0 && g1 > 0) {
+            return false;
+        } else if (g0 > 0) {
+            final double t = g0 / (g0 - g1);
+            out[0] += t * (out[2] - out[0]);
+            out[1] += t * (out[3] - out[1]);
+        } else if (g1 > 0) {
+            final double t = g1 / (g1 - g0);
+            out[2] += t * (out[0] - out[2]);
+            out[3] += t * (out[1] - out[3]);
+        }
+        return true;
+    }
+
+    private static boolean touching(double[] a, double[] b) {
+        final double a0 = cross(a[2] - a[0], a[3] - a[1], b[0] - a[0], b[1] - a[1]);
+        final double a1 = cross(a[2] - a[0], a[3] - a[1], b[2] - a[0], b[3] - a[1]);
+        final double b0 = cross(b[2] - b[0], b[3] - b[1], a[0] - b[0], a[1] - b[1]);
+        final double b1 = cross(b[2] - b[0], b[3] - b[1], a[2] - b[0], a[3] - b[1]);
+        if (a0 * a1 < 0 && b0 * b1 < 0) {
+            return true;
+        }
+        return distance(b[0], b[1], a) < SLACK || distance(b[2], b[3], a) < SLACK
+            || distance(a[0], a[1], b) < SLACK || distance(a[2], a[3], b) < SLACK;
+    }
+
+    private static double distance(double x, double y, double[] segment) {
+        final double dx = segment[2] - segment[0], dy = segment[3] - segment[1];
+        final double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? ((x - segment[0]) * dx + (y - segment[1]) * dy) / lengthSquared : 0;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - segment[0] - t * dx, y - segment[1] - t * dy);
+    }
+
+    private static double cross(double dx, double dy, double x, double y) {
+        return dx * y - dy * x;
+    }
+
+    private int other(int portal, int sector) {
+        return front[portal] == sector ? back[portal] : front[portal];
+    }
+
+    private void setVisible(int a, int b) {
+        final int pnum = a * numsectors + b;
+        final int bit = 1 << (pnum & 7);
+        if ((visible[pnum >> 3] & bit) == 0) {
+            visible[pnum >> 3] |= bit;
+            ++rowVisible;
+        }
+    }
+
+    private boolean isVisible(int a, int b) {
+        final int pnum = a * numsectors + b;
+        return (visible[pnum >> 3] & (1 << (pnum & 7))) != 0;
+    }
+
+    private int find(int s) {
+        while (component[s] != s) {
+            s = component[s] = component[component[s]];
+        }
+        return s;
+    }
+
+    private void union(int a, int b) {
+        component[find(a)] = find(b);
+    }
+
+    private static void toggle(Set<Long> set, long key) {
+        if (!set.remove(key)) {
+            set.add(key);
+        }
+    }
+
+    private static long vertexKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFFFFFFL);
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    /**
+     * @return how many bits were not set before
+     */
+    private static int or(byte[] reject, byte[] bits) {
+        int added = 0;
+        for (int i = 0; i < reject.length && i < bits.length; i++) {
+            added += Integer.bitCount(bits[i] & ~reject[i] & 0xFF);
+            reject[i] |= bits[i];
+        }
+        return added;
+    }
+
+    private static int count(byte[] bits) {
+        int count = 0;
+        for (byte b: bits) {
+            count += Integer.bitCount(b & 0xFF);
+        }
+        return count;
+    }
+
+    private static byte[] load(String hash, int numsectors, int length) {
+        final byte[] data = LevelCache.read(hash, KIND);
+        if (data == null || data.length != 12 + length) {
+            return null;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION || buffer.getInt() != numsectors) {
+            return null;
+        }
+        return Arrays.copyOfRange(data, 12, data.length);
+    }
+
+    private static void save(String hash, int numsectors, byte[] bits) {
+        final ByteBuffer buffer = ByteBuffer.allocate(12 + bits.length);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(numsectors).put(bits);
+        LevelCache.write(hash, KIND, buffer.array());
+    }
+}
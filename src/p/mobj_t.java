@@ -204,6 +204,23 @@ public class mobj_t extends thinker_t implements ISoundOrigin, Interceptable,
     /** Thing being chased/attacked for tracers. */
     public mobj_t tracer; // MAES: was a pointer
 
+    /**
+     * Bumped each time pooling.MobjPool hands this mobj_t out again. Together with the
+     * generations target and tracer had when they were set, it tells whether they still
+     * are the things that were meant, or have been recycled into others since.
+     */
+    public int generation;
+    private int targetGeneration, tracerGeneration;
+
+    /**
+     * Where the thing was before the last tic, for rr.FrameInterpolation to draw it
+     * in between. Only good if interptic is the tic they were saved on.
+     */
+    @fixed_t
+    public int prevx, prevy, prevz;
+    public long prevangle;
+    public int interptic = -1;
+
     // // MF_ flags for mobjs.
     // Call P_SpecialThing when touched.
     public static final int MF_SPECIAL = 1;
@@ -427,6 +444,67 @@ public class mobj_t extends thinker_t implements ISoundOrigin, Interceptable,
     /** Unique thing id, used during sync debugging */
     public int thingnum;
 
+    public void setTarget(mobj_t target) {
+        this.target = target;
+        this.targetGeneration = target != null ? target.generation : 0;
+    }
+
+    public void setTracer(mobj_t tracer) {
+        this.tracer = tracer;
+        this.tracerGeneration = tracer != null ? tracer.generation : 0;
+    }
+
+    /**
+     * Forgets the target and tracer if they have been recycled since they were set.
+     * Without the mobj_t pool, generations never change and this does nothing.
+     */
+    public void dropStaleReferences() {
+        if (target != null && target.generation != targetGeneration) {
+            target = null;
+        }
+        if (tracer != null && tracer.generation != tracerGeneration) {
+            tracer = null;
+        }
+    }
+
+    /**
+     * Makes a removed mobj_t as good as a new one, for pooling.MobjPool.
+     * Only the generation survives, and moves on.
+     */
+    public void recycle() {
+        prev = next = null;
+        thinkerFunction = ActiveStates.NOP;
+        id = previd = nextid = functionid = 0;
+        x = y = z = 0;
+        snext = sprev = bnext = bprev = null;
+        angle = 0;
+        mobj_sprite = null;
+        mobj_frame = 0;
+        subsector = null;
+        floorz = ceilingz = 0;
+        radius = height = 0;
+        momx = momy = momz = 0;
+        validcount = 0;
+        type = null;
+        info = null;
+        mobj_tics = 0;
+        mobj_state = null;
+        flags = 0;
+        health = 0;
+        movedir = movecount = 0;
+        setTarget(null);
+        p_target = 0;
+        reactiontime = threshold = 0;
+        player = null;
+        lastlook = 0;
+        // The old one may still be in the item respawn queue
+        spawnpoint = new mapthing_t();
+        setTracer(null);
+        eflags = stateid = playerid = p_tracer = thingnum = 0;
+        interptic = -1;
+        ++generation;
+    }
+
     public void clear() {
         fastclear.rewind();
         try {
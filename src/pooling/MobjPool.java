@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pooling;
+
+import p.mobj_t;
+
+/**
+ * A freelist of mobj_t, fed by P_RunThinkers as it unlinks removed things, and drawn
+ * from by P_SpawnMobj. Puffs, blood, fog and projectiles then stop costing a fresh
+ * object apiece. Only touched by the game thread, so there is no locking.
+ *
+ * A removed mobj_t may still be the target or tracer of something else. It's left alone
+ * while it waits here, so those see the dead thing just like without the pool. Once it's
+ * handed out again, its generation moves on, and mobj_t.dropStaleReferences lets the
+ * holders find out they're pointing to something else by now.
+ *
+ * That last part is where the pool can change the game: a stale reference is forgotten,
+ * rather than still pointing to the dead thing. Hence it's opt-in, see -poolmobjs.
+ *
+ * @author Good Sign
+ */
+public final class MobjPool {
+
+    private final mobj_t[] free;
+    private int count;
+
+    public MobjPool(int capacity) {
+        this.free = new mobj_t[capacity];
+    }
+
+    /**
+     * @return a recycled mobj_t, as good as a new one, or null if the pool is empty
+     */
+    public mobj_t checkOut() {
+        if (count == 0) {
+            return null;
+        }
+
+        final mobj_t mobj = free[--count];
+        free[count] = null;
+        mobj.recycle();
+        return mobj;
+    }
+
+    /**
+     * Takes a mobj_t that is no longer in the thinker list. When the pool is full,
+     * it's left to the garbage collector instead.
+     */
+    public void checkIn(mobj_t mobj) {
+        if (count < free.length) {
+            free[count++] = mobj;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pooling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+
+/**
+ * A ring of references, each with the System.nanoTime() it was offered at,
+ * passed from any number of producer threads to exactly one consumer thread
+ * without locks.
+ *
+ * Unlike SpscRing, the slots don't hold objects filled in place: several producers
+ * may be writing at once, so each offers a reference it won't change afterwards.
+ * A producer takes the next position by moving the tail, writes the slot and
+ * then publishes it through the slot's own sequence, so a producer that stalls
+ * between the two holds up the consumer only at that slot, never other producers.
+ *
+ * Every slot's sequence tells whose turn it is: equal to a position, the slot is free
+ * for the producer that takes that position, one past it, it holds that position's
+ * reference for the consumer. The consumer frees it for the next round by adding
+ * the size of the ring. Sequences are written with release semantics and read with
+ * acquire, so what was written into a slot is seen by whoever sees its sequence.
+ *
+ * When the ring is full, offer returns false and the reference is not kept.
+ *
+ * @author Good Sign
+ */
+public final class MpscRing<T> {
+
+    private final T[] items;
+    private final long[] stamps;
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    /** Next position to read, moved only by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    /** Next position to write, taken by producers */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public MpscRing(int capacity, IntFunction<T[]> arrayConstructor) {
+        final int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.items = arrayConstructor.apply(size);
+        this.stamps = new long[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Any thread
+     *
+     * @return false if the ring is full
+     */
+    public boolean offer(T item, long stamp) {
+        long t = tail.get();
+        for (;;) {
+            final int slot = (int) t & mask;
+            final long lag = sequences.get(slot) - t;
+            if (lag == 0) {
+                if (tail.compareAndSet(t, t + 1)) {
+                    items[slot] = item;
+                    stamps[slot] = stamp;
+                    sequences.lazySet(slot, t + 1);
+                    return true;
+                }
+                t = tail.get();
+            } else if (lag < 0) {
+                // the consumer has not freed this slot from the last round
+                return false;
+            } else {
+                // another producer took this position first
+                t = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return the oldest published reference, or null if there is none
+     */
+    public T peek() {
+        final long h = head.get();
+        final int slot = (int) h & mask;
+        if (sequences.get(slot) != h + 1) {
+            return null;
+        }
+        return items[slot];
+    }
+
+    /**
+     * Consumer only: the time the peeked reference was offered at
+     */
+    public long peekStamp() {
+        return stamps[(int) head.get() & mask];
+    }
+
+    /**
+     * Consumer only: frees the peeked slot for producers
+     */
+    public void release() {
+        final long h = head.get();
+        final int slot = (int) h & mask;
+        items[slot] = null;
+        sequences.lazySet(slot, h + items.length);
+        head.lazySet(h + 1);
+    }
+
+    public int capacity() {
+        return items.length;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package pooling;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * A ring of objects made once, passed from exactly one producer thread
+ * to exactly one consumer thread without locks or allocation.
+ *
+ * The producer claims the next free slot, fills it in place and publishes it.
+ * The consumer peeks at the oldest published slot, reads it in place and
+ * releases it, after which the producer may claim it again. Neither side ever
+ * waits: claim and peek just return null when the ring is full or empty,
+ * and what to do then is up to the caller.
+ *
+ * Each index is only written by its own side, and with release semantics,
+ * so whatever was written into a slot before publish or release is seen
+ * by the other side once it sees the index move.
+ *
+ * @author Good Sign
+ */
+public final class SpscRing<T> {
+
+    private final T[] slots;
+    private final int mask;
+
+    /** Next slot to read, moved only by the consumer */
+    private final AtomicLong head = new AtomicLong();
+    /** Next slot to write, moved only by the producer */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity rounded up to a power of two
+     */
+    public SpscRing(int capacity, IntFunction<T[]> arrayConstructor, Supplier<T> slotConstructor) {
+        final int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.slots = arrayConstructor.apply(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = slotConstructor.get();
+        }
+    }
+
+    /**
+     * Producer only
+     *
+     * @return the slot to fill in next, or null if the ring is full
+     */
+    public T claim() {
+        final long t = tail.get();
+        if (t - head.get() == slots.length) {
+            return null;
+        }
+        return slots[(int) t & mask];
+    }
+
+    /**
+     * Producer only: hands the claimed slot over to the consumer
+     */
+    public void publish() {
+        tail.lazySet(tail.get() + 1);
+    }
+
+    /**
+     * Consumer only
+     *
+     * @return the oldest published slot, or null if there is none
+     */
+    public T peek() {
+        final long h = head.get();
+        if (h == tail.get()) {
+            return null;
+        }
+        return slots[(int) h & mask];
+    }
+
+    /**
+     * Consumer only: gives the peeked slot back to the producer
+     */
+    public void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    public int capacity() {
+        return slots.length;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rr;
+
+import static data.Limits.MAXPLAYERS;
+import static data.Tables.BITS32;
+import doom.DoomMain;
+import doom.player_t;
+import doom.thinker_t;
+import static m.fixed_t.FRACBITS;
+import static m.fixed_t.FRACUNIT;
+import static m.fixed_t.FixedMul;
+import m.Settings;
+import mochadoom.Engine;
+import static p.ActiveStates.P_MobjThinker;
+import p.mobj_t;
+
+/**
+ * Draws frames in between tics, with the world where it would be by then.
+ *
+ * The game still runs at 35 tics. Before each tic of a level, where things, views
+ * and sector planes are is saved, and a frame drawn before the next tic shows them
+ * that part of the way from there to where the tic put them. So what's on screen is
+ * one tic behind, but moves every frame instead of every tic.
+ *
+ * Nothing the game reads is changed for good: sector heights are swapped for the
+ * in between ones only while the view is rendered, and put back right after,
+ * so demos and net games go the same as when every frame is a tic.
+ *
+ * @author Good Sign
+ */
+public final class FrameInterpolation {
+
+    /** Whether frames are drawn between tics at all */
+    public static final boolean UNCAPPED = Engine.getConfig().equals(Settings.uncapped_framerate, Boolean.TRUE);
+
+    /** Whether sector planes and things move between tics, or only the view */
+    private static final boolean WORLD = Engine.getConfig().equals(Settings.interpolate_world, Boolean.TRUE);
+
+    /** More than this in one tic is a teleport, and is not drawn on the way */
+    private static final int TELEPORT = 64 * FRACUNIT;
+
+    private final DoomMain<?, ?> DOOM;
+
+    /** How far from the saved positions to the current ones to draw, FRACUNIT for all the way */
+    private int frac = FRACUNIT;
+    /** The gametic the positions were saved on, and the time that tic was run at */
+    private int savedTic = -1;
+    private long savedTime;
+
+    private final int[] prevviewz = new int[MAXPLAYERS];
+
+    private sector_t[] sectors;
+    private int numsectors;
+    private int[] prevfloor, prevceiling;
+    /** The sectors whose heights are swapped while the view is rendered, and their real heights */
+    private int[] swapped, realfloor, realceiling;
+    private int numswapped;
+
+    public FrameInterpolation(DoomMain<?, ?> DOOM) {
+        this.DOOM = DOOM;
+    }
+
+    /**
+     * @return whether the game loop should draw a frame instead of waiting for the next tic
+     */
+    public boolean isUncapped() {
+        return UNCAPPED && !DOOM.netgame && !DOOM.singletics;
+    }
+
+    /**
+     * Called before a tic of a level moves anything
+     */
+    public void SaveTic() {
+        if (!isUncapped()) {
+            return;
+        }
+
+        savedTic = DOOM.gametic;
+        savedTime = DOOM.ticker.GetFracTime() >> FRACBITS;
+
+        final thinker_t cap = DOOM.actions.getThinkerCap();
+        for (thinker_t th = cap.next; th != cap; th = th.next) {
+            if (th.thinkerFunction == P_MobjThinker) {
+                final mobj_t mo = (mobj_t) th;
+                mo.prevx = mo.x;
+                mo.prevy = mo.y;
+                mo.prevz = mo.z;
+                mo.prevangle = mo.angle;
+                mo.interptic = savedTic;
+            }
+        }
+
+        for (int i = 0; i < MAXPLAYERS; i++) {
+            prevviewz[i] = DOOM.players[i].viewz;
+        }
+
+        if (WORLD) {
+            saveSectors();
+        }
+    }
+
+    /**
+     * Works out how far into the tic the frame is, and moves the sector planes there.
+     * Call right before the view is rendered.
+     */
+    public void BeginFrame() {
+        frac = FRACUNIT;
+        if (!isUncapped() || savedTic != DOOM.gametic - 1) {
+            return;
+        }
+
+        final long now = DOOM.ticker.GetFracTime();
+        if (now < 0) {
+            return;
+        }
+        frac = (int) Math.max(0, Math.min(FRACUNIT, now - (savedTime << FRACBITS)));
+
+        if (WORLD && frac < FRACUNIT && sectors == DOOM.levelLoader.sectors) {
+            swapSectors();
+        }
+    }
+
+    /**
+     * Puts the sector planes back where the game has them. Call right after the view is rendered.
+     */
+    public void EndFrame() {
+        for (int i = 0; i < numswapped; i++) {
+            final sector_t sec = sectors[swapped[i]];
+            sec.floorheight = realfloor[i];
+            sec.ceilingheight = realceiling[i];
+        }
+        numswapped = 0;
+        frac = FRACUNIT;
+    }
+
+    public int x(mobj_t mo) {
+        return moving(mo) ? lerp(mo.prevx, mo.x) : mo.x;
+    }
+
+    public int y(mobj_t mo) {
+        return moving(mo) ? lerp(mo.prevy, mo.y) : mo.y;
+    }
+
+    public int z(mobj_t mo) {
+        return moving(mo) ? lerp(mo.prevz, mo.z) : mo.z;
+    }
+
+    /**
+     * The shorter way round from the saved angle to the current one
+     */
+    public long angle(mobj_t mo) {
+        if (!moving(mo)) {
+            return mo.angle;
+        }
+        final int delta = (int) (mo.angle - mo.prevangle);
+        return (mo.prevangle + FixedMul(delta, frac)) & BITS32;
+    }
+
+    public int viewz(player_t player) {
+        for (int i = 0; i < MAXPLAYERS; i++) {
+            if (DOOM.players[i] == player) {
+                return player.mo != null && moving(player.mo) ? lerp(prevviewz[i], player.viewz) : player.viewz;
+            }
+        }
+        return player.viewz;
+    }
+
+    /**
+     * Only the view moves in between when the world doesn't, and nothing
+     * that was not there before the tic, or jumped too far during it
+     */
+    private boolean moving(mobj_t mo) {
+        return frac < FRACUNIT && mo.interptic == savedTic
+                && (WORLD || mo == DOOM.players[DOOM.displayplayer].mo)
+                && Math.abs(mo.x - mo.prevx) < TELEPORT && Math.abs(mo.y - mo.prevy) < TELEPORT;
+    }
+
+    private int lerp(int from, int to) {
+        return from + FixedMul(to - from, frac);
+    }
+
+    private void saveSectors() {
+        final sector_t[] current = DOOM.levelLoader.sectors;
+        if (current == null) {
+            sectors = null;
+            return;
+        }
+
+        numsectors = Math.min(DOOM.levelLoader.numsectors, current.length);
+        if (sectors != current) {
+            sectors = current;
+            prevfloor = new int[current.length];
+            prevceiling = new int[current.length];
+            swapped = new int[current.length];
+            realfloor = new int[current.length];
+            realceiling = new int[current.length];
+        }
+
+        for (int i = 0; i < numsectors; i++) {
+            prevfloor[i] = current[i].floorheight;
+            prevceiling[i] = current[i].ceilingheight;
+        }
+    }
+
+    private void swapSectors() {
+        numswapped = 0;
+        for (int i = 0; i < numsectors; i++) {
+            final sector_t sec = sectors[i];
+            if (sec.floorheight != prevfloor[i] || sec.ceilingheight != prevceiling[i]) {
+                swapped[numswapped] = i;
+                realfloor[numswapped] = sec.floorheight;
+                realceiling[numswapped] = sec.ceilingheight;
+                ++numswapped;
+                sec.floorheight = lerp(prevfloor[i], sec.floorheight);
+                sec.ceilingheight = lerp(prevceiling[i], sec.ceilingheight);
+            }
+        }
+    }
+}
@@ -35,6 +35,7 @@ import i.IDoomSystem;
 import java.awt.Rectangle;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,6 +53,7 @@ import static m.fixed_t.FixedMul;
 import mochadoom.Engine;
 import mochadoom.Loggers;
 import static p.ActiveStates.P_MobjThinker;
+import p.LevelGeometry;
 import p.mobj_t;
 import rr.drawfuns.ColFuncs;
 import rr.drawfuns.ColVars;
@@ -61,6 +63,7 @@ import rr.drawfuns.SpanVars;
 import static rr.line_t.ML_DONTPEGBOTTOM;
 import static rr.line_t.ML_DONTPEGTOP;
 import static rr.line_t.ML_MAPPED;
+import timing.FrameProfiler.Phase;
 import utils.C2JUtils;
 import static utils.GenericCopy.malloc;
 import static v.DoomGraphicSystem.V_NOSCALEOFFSET;
@@ -165,10 +168,11 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
      */
     public void SetupFrame(player_t player) {
         view.player = player;
-        view.x = player.mo.x;
-        view.y = player.mo.y;
+        // between tics, where the view would be by now
+        view.x = DOOM.interpolation.x(player.mo);
+        view.y = DOOM.interpolation.y(player.mo);
         // viewangle = addAngles(player.mo.angle , viewangleoffset);
-        view.angle = player.mo.angle & BITS32;
+        view.angle = DOOM.interpolation.angle(player.mo) & BITS32;
         // With 32 colormaps, a bump of 1 or 2 is normal.
         // With more than 32, it should be obviously higher.
 
@@ -179,7 +183,7 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
 
         colormaps.extralight = player.extralight << bumplight;
 
-        view.z = player.viewz;
+        view.z = DOOM.interpolation.viewz(player);
         view.lookdir = player.lookdir;
         int tempCentery;
 
@@ -296,6 +300,16 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
             solidsegs = malloc(cliprange_t::new, cliprange_t[]::new, MAXSEGS + 1);
         }
 
+        /**
+         * Segs are emitted from within the BSP traversal, so they get their
+         * own profiler phase, otherwise they would be charged to the BSP.
+         */
+        private void StoreWallRange(int first, int last) {
+            DOOM.profiler.begin(Phase.SEGS);
+            MySegs.StoreWallRange(first, last);
+            DOOM.profiler.end(Phase.SEGS);
+        }
+
         /**
          * R_ClipSolidWallSegment Does handle solid walls, single sided LineDefs
          * (middle texture) that entirely block the view VERTICALLY. Handles
@@ -328,7 +342,7 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
                     // ... then the post is entirely visible (above start),
                     // so insert a new clippost. Calling this function
                     // tells the renderer that there is an obstruction.
-                    MySegs.StoreWallRange(first, last);
+                    StoreWallRange(first, last);
 
                     // Newend should have a value of 2 if we are at the
                     // beginning of a new frame.
@@ -364,7 +378,7 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
                 // There is a fragment above *start. This can occur if it a
                 // post does start before another, but its lower edge overlaps
                 // (partial, upper occlusion)
-                MySegs.StoreWallRange(first, solidsegs[start].first - 1);
+                StoreWallRange(first, solidsegs[start].first - 1);
                 // Now adjust the clip size.
                 solidsegs[start].first = first;
             }
@@ -378,7 +392,7 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
             next = start;
             while (last >= solidsegs[(next + 1)].first - 1) {
                 // There is a fragment between two posts.
-                MySegs.StoreWallRange(solidsegs[next].last + 1,
+                StoreWallRange(solidsegs[next].last + 1,
                         solidsegs[next + 1].first - 1);
                 next++;
 
@@ -410,7 +424,7 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
             }
 
             // There is a fragment after *next.
-            MySegs.StoreWallRange(solidsegs[next].last + 1, last);
+            StoreWallRange(solidsegs[next].last + 1, last);
             // Adjust the clip size.
             solidsegs[start].last = last;
 
@@ -461,12 +475,12 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
             if (first < solidsegs[start].first) {
                 if (last < solidsegs[start].first - 1) {
                     // Post is entirely visible (above start).
-                    MySegs.StoreWallRange(first, last);
+                    StoreWallRange(first, last);
                     return;
                 }
 
                 // There is a fragment above *start.
-                MySegs.StoreWallRange(first, solidsegs[start].first - 1);
+                StoreWallRange(first, solidsegs[start].first - 1);
             }
 
             // Bottom contained in start?
@@ -478,7 +492,7 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
             // if (startptr>=MAXSEGS-2) return;
             while (last >= solidsegs[start + 1].first - 1) {
                 // There is a fragment between two posts.
-                MySegs.StoreWallRange(solidsegs[start].last + 1,
+                StoreWallRange(solidsegs[start].last + 1,
                         solidsegs[start + 1].first - 1);
                 start++;
                 // if (startptr>=MAXSEGS-2) return;
@@ -490,7 +504,7 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
             }
 
             // There is a fragment after *next.
-            MySegs.StoreWallRange(solidsegs[start].last + 1, last);
+            StoreWallRange(solidsegs[start].last + 1, last);
         }
 
         /**
@@ -673,6 +687,17 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
          * @return
          */
         public boolean CheckBBox(int[] bspcoord) {
+            return CheckBBox(bspcoord, 0);
+        }
+
+        /**
+         * @param bspcoord
+         * (fixed_t* as bbox), at offset in the array
+         * @param offset
+         * where BOXTOP is
+         * @return
+         */
+        public boolean CheckBBox(int[] bspcoord, int offset) {
             int boxx;
             int boxy;
             int boxpos;
@@ -696,17 +721,17 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
 
             // Find the corners of the box
             // that define the edges from current viewpoint.
-            if (view.x <= bspcoord[BOXLEFT]) {
+            if (view.x <= bspcoord[offset + BOXLEFT]) {
                 boxx = 0;
-            } else if (view.x < bspcoord[BOXRIGHT]) {
+            } else if (view.x < bspcoord[offset + BOXRIGHT]) {
                 boxx = 1;
             } else {
                 boxx = 2;
             }
 
-            if (view.y >= bspcoord[BOXTOP]) {
+            if (view.y >= bspcoord[offset + BOXTOP]) {
                 boxy = 0;
-            } else if (view.y > bspcoord[BOXBOTTOM]) {
+            } else if (view.y > bspcoord[offset + BOXBOTTOM]) {
                 boxy = 1;
             } else {
                 boxy = 2;
@@ -717,10 +742,10 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
                 return true;
             }
 
-            x1 = bspcoord[checkcoord[boxpos][0]];
-            y1 = bspcoord[checkcoord[boxpos][1]];
-            x2 = bspcoord[checkcoord[boxpos][2]];
-            y2 = bspcoord[checkcoord[boxpos][3]];
+            x1 = bspcoord[offset + checkcoord[boxpos][0]];
+            y1 = bspcoord[offset + checkcoord[boxpos][1]];
+            x2 = bspcoord[offset + checkcoord[boxpos][2]];
+            y2 = bspcoord[offset + checkcoord[boxpos][3]];
 
             // check clip list for an open space
             angle1 = view.PointToAngle(x1, y1) - view.angle;
@@ -872,6 +897,12 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
                 LOGGER.log(Level.FINE, String.format("Processing BSP Node %d", bspnum));
             }
 
+            final LevelGeometry geometry = DOOM.levelLoader.geometry;
+            if (geometry != null) {
+                RenderBSPNode(geometry, bspnum);
+                return;
+            }
+
             node_t bsp;
             int side;
 
@@ -918,6 +949,32 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
             }
         }
 
+        /**
+         * RenderBSPNode over the packed geometry of the level, the same walk
+         * without going through the node objects
+         */
+        private void RenderBSPNode(LevelGeometry geometry, int bspnum) {
+            while (!C2JUtils.flags(bspnum, NF_SUBSECTOR)) {
+                // Decide which side the view point is on.
+                final int side = geometry.PointOnSide(bspnum, view.x, view.y);
+
+                // Recursively divide front space.
+                RenderBSPNode(geometry, geometry.child(bspnum, side));
+
+                // Possibly divide back space.
+                if (!CheckBBox(geometry.nodes, geometry.bboxOffset(bspnum, side ^ 1))) {
+                    return;
+                }
+                bspnum = geometry.child(bspnum, side ^ 1);
+            }
+
+            if (bspnum == -1) {
+                Subsector(0);
+            } else {
+                Subsector(bspnum & (~NF_SUBSECTOR));
+            }
+        }
+
     }
 
     protected abstract class SegDrawer implements ISegDrawer {
@@ -2861,20 +2918,13 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
     public void PreCacheThinkers() {
 
         boolean[] spritepresent;
-        thinker_t th;
         spriteframe_t sf;
         int lump;
 
         final spritedef_t[] sprites = DOOM.spriteManager.getSprites();
         final int numsprites = DOOM.spriteManager.getNumSprites();
 
-        spritepresent = new boolean[numsprites];
-
-        for (th = DOOM.actions.getThinkerCap().next; th != DOOM.actions.getThinkerCap(); th = th.next) {
-            if (th.thinkerFunction == P_MobjThinker) {
-                spritepresent[((mobj_t) th).mobj_sprite.ordinal()] = true;
-            }
-        }
+        spritepresent = spritesPresent();
 
         spritememory = 0;
         for (int i = 0; i < numsprites; i++) {
@@ -2893,6 +2943,50 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
         }
     }
 
+    /**
+     * Rotations often share a lump, so each one is only asked for once.
+     */
+    @Override
+    public void PrefetchThinkers() {
+        final spritedef_t[] sprites = DOOM.spriteManager.getSprites();
+        final int numsprites = DOOM.spriteManager.getNumSprites();
+        final int firstlump = DOOM.spriteManager.getFirstSpriteLump();
+        final boolean[] spritepresent = spritesPresent();
+        final BitSet asked = new BitSet();
+
+        for (int i = 0; i < numsprites; i++) {
+            if (!spritepresent[i]) {
+                continue;
+            }
+
+            for (int j = 0; j < sprites[i].numframes; j++) {
+                final spriteframe_t sf = sprites[i].spriteframes[j];
+                for (int k = 0; k < 8; k++) {
+                    // a rotation with no lump is -1, which a BitSet won't take
+                    if (sf.lump[k] >= 0 && !asked.get(sf.lump[k])) {
+                        asked.set(sf.lump[k]);
+                        DOOM.wadLoader.CacheLumpNumAsync(firstlump + sf.lump[k], PU_CACHE, patch_t.class);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return which sprites the things spawned on the level are drawn with
+     */
+    private boolean[] spritesPresent() {
+        final boolean[] spritepresent = new boolean[DOOM.spriteManager.getNumSprites()];
+
+        for (thinker_t th = DOOM.actions.getThinkerCap().next; th != DOOM.actions.getThinkerCap(); th = th.next) {
+            if (th.thinkerFunction == P_MobjThinker) {
+                spritepresent[((mobj_t) th).mobj_sprite.ordinal()] = true;
+            }
+        }
+
+        return spritepresent;
+    }
+
     /**
      * R_InitTranslationTables Creates the translation tables to map the green
      * color ramp to gray, brown, red. Assumes a given structure of the PLAYPAL.
@@ -3091,19 +3185,25 @@ public abstract class RendererState<T, V> implements SceneRenderer<T, V>, ILimit
         DOOM.gameNetworking.NetUpdate();
 
         // The head node is the last node output.
+        DOOM.profiler.begin(Phase.BSP);
         MyBSP.RenderBSPNode(DOOM.levelLoader.numnodes - 1);
+        DOOM.profiler.end(Phase.BSP);
 
         // Check for new console commands.
         DOOM.gameNetworking.NetUpdate();
 
         // FIXME: "Warped floor" fixed, now to fix same-height visplane
         // bleeding.
+        DOOM.profiler.begin(Phase.PLANES);
         MyPlanes.DrawPlanes();
+        DOOM.profiler.end(Phase.PLANES);
 
         // Check for new console commands.
         DOOM.gameNetworking.NetUpdate();
 
+        DOOM.profiler.begin(Phase.MASKED);
         MyThings.DrawMasked();
+        DOOM.profiler.end(Phase.MASKED);
 
         colfunc.main = colfunc.base;
 
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rr;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The tutti-frutti-safe blocks of single-patch textures, shared by all renderer threads.
+ *
+ * Looking a block up takes no lock: blocks are kept in an array by lump, read with
+ * acquire semantics, so a thread that sees a block sees it whole. Only putting a block in,
+ * which follows making it from the WAD, is synchronized. Past maxBytes, blocks are dropped
+ * by a CLOCK sweep, so one looked up since the hand last passed it gets another round.
+ * A thread still drawing from a dropped block keeps it, since blocks never change.
+ *
+ * The table only grows with the number of lumps, and is emptied when a level is precached.
+ *
+ * @author Good Sign
+ */
+public final class RogueColumnCache {
+
+    private final long maxBytes;
+
+    /** Swapped for a bigger one under the lock, read without it */
+    private volatile Table table = new Table(0);
+    private long bytes;
+    private int hand;
+
+    public final LongAdder hits = new LongAdder(), misses = new LongAdder();
+    /** Written under the lock */
+    public long evictions;
+
+    public RogueColumnCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Any thread
+     *
+     * @return the block of the lump, or null if it has to be made
+     */
+    public byte[][] get(int lump) {
+        final Table t = table;
+        if (lump < t.blocks.length()) {
+            final byte[][] block = t.blocks.get(lump);
+            if (block != null) {
+                // a hint only, a lost write costs the block a round
+                t.referenced[lump] = true;
+                hits.increment();
+                return block;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Puts the block in, unless another thread put one in first
+     *
+     * @return the block now in cache for the lump
+     */
+    public synchronized byte[][] put(int lump, byte[][] block) {
+        Table t = table;
+        if (lump >= t.blocks.length()) {
+            t = table = t.grow(Math.max(lump + 1, t.blocks.length() * 2));
+        }
+
+        final byte[][] present = t.blocks.get(lump);
+        if (present != null) {
+            return present;
+        }
+
+        bytes += sizeOf(block);
+        t.referenced[lump] = true;
+        t.blocks.set(lump, block);
+        evict(t, lump);
+        return block;
+    }
+
+    public synchronized void clear() {
+        table = new Table(table.blocks.length());
+        bytes = 0;
+        hand = 0;
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Drops blocks until back under budget, except the one just put in
+     */
+    private void evict(Table t, int keep) {
+        final int length = t.blocks.length();
+        while (bytes > maxBytes) {
+            boolean found = false;
+            // two turns clear every referenced bit, so a third finds nothing only if nothing else is left
+            for (int n = 0; n < length * 2 && !found; n++) {
+                final int lump = hand;
+                hand = hand + 1 < length ? hand + 1 : 0;
+                final byte[][] block = t.blocks.get(lump);
+                if (block == null || lump == keep) {
+                    continue;
+                }
+                if (t.referenced[lump]) {
+                    t.referenced[lump] = false;
+                    continue;
+                }
+                t.blocks.set(lump, null);
+                bytes -= sizeOf(block);
+                ++evictions;
+                found = true;
+            }
+            if (!found) {
+                return;
+            }
+        }
+    }
+
+    private static long sizeOf(byte[][] block) {
+        return block.length == 0 ? 0 : (long) block.length * block[0].length;
+    }
+
+    private static final class Table {
+
+        final AtomicReferenceArray<byte[][]> blocks;
+        final boolean[] referenced;
+
+        Table(int length) {
+            blocks = new AtomicReferenceArray<>(length);
+            referenced = new boolean[length];
+        }
+
+        Table grow(int length) {
+            final Table bigger = new Table(length);
+            for (int i = 0; i < blocks.length(); i++) {
+                bigger.blocks.set(i, blocks.get(i));
+                bigger.referenced[i] = referenced[i];
+            }
+            return bigger;
+        }
+    }
+}
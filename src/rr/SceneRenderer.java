@@ -45,6 +45,11 @@ public interface SceneRenderer<T, V> {
 
     public void PreCacheThinkers();
 
+    /**
+     * Starts reading what PreCacheThinkers would, in the background, and returns at once.
+     */
+    public void PrefetchThinkers();
+
     public int getValidCount();
 
     public void increaseValidCount(int amount);
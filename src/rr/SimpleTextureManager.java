@@ -10,12 +10,15 @@ import doom.SourceCode.R_Data;
 import static doom.SourceCode.R_Data.R_PrecacheLevel;
 import i.IDoomSystem;
 import java.io.IOException;
+import java.lang.invoke.VarHandle;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static m.fixed_t.FRACBITS;
@@ -107,13 +110,13 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
         this.W = DM.wadLoader;
         this.I = DM.doomSystem;
         this.LL = DM.levelLoader;
-        FlatPatchCache = new Hashtable<>();
+        FlatPatchCache = new ConcurrentHashMap<>();
     }
 
     /** Hash table used for matching flat <i>lump</i> to flat <i>num</i> */
     Hashtable<Integer, Integer> FlatCache;
 
-    Hashtable<Integer, patch_t> FlatPatchCache;
+    Map<Integer, patch_t> FlatPatchCache;
 
     /**
      * R_CheckTextureNumForName Check whether texture is available. Filter out
@@ -142,7 +145,7 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
     }
 
     /** Hash table used for fast texture lookup */
-    Hashtable<String, Integer> TextureCache;
+    Map<String, Integer> TextureCache;
 
     /**
      * R_TextureNumForName
@@ -202,7 +205,7 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
 
         textures = new texture_t[numtextures];
         // MAES: Texture hashtable.
-        TextureCache = new Hashtable<>(numtextures);
+        TextureCache = new HashMap<>(numtextures);
 
         texturecolumnlump = new short[numtextures][];
         texturecolumnofs = new char[numtextures][];
@@ -330,8 +333,9 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
     private patch_t retrievePatchSafe(int lump) {
 
         // If this is a known troublesome lump, get it from the cache.
-        if (FlatPatchCache.containsKey(lump)) {
-            return FlatPatchCache.get(lump);
+        final patch_t cached = FlatPatchCache.get(lump);
+        if (cached != null) {
+            return cached;
         }
 
         lumpinfo_t info = W.GetLumpInfo(lump);
@@ -490,10 +494,11 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
 
         texture = textures[texnum];
 
-        // BOth allocate the composite texture, and assign it to block.
+        // Allocate the composite texture. It's only put in texturecomposite once filled in,
+        // as other renderer threads read it from there without locking.
         // texturecompositesize indicates a size in BYTES. We need a number of columns, though.
         // Now block is divided into columns. We need to allocate enough data for each column
-        block = texturecomposite[texnum] = new byte[texture.width][texture.height];
+        block = new byte[texture.width][texture.height];
 
         // Lump where a certain column will be read from (actually, a patch)
         collump = texturecolumnlump[texnum];
@@ -540,6 +545,10 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
             }
 
         }
+
+        // whoever sees the block sees it filled in
+        VarHandle.releaseFence();
+        texturecomposite[texnum] = block;
     }
 
     /**
@@ -627,7 +636,10 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
         }
 
         // Patch drawn on cache, synthesize patch_t using it.
-        this.patchcomposite[texnum] = MultiPatchSynthesizer.synthesize(this.CheckTextureNameForNum(texnum), block, pixmap, texture.width, texture.height);
+        final patch_t synthesized = MultiPatchSynthesizer.synthesize(this.CheckTextureNameForNum(texnum), block, pixmap, texture.width, texture.height);
+        // masked threads read it without locking, so it goes in whole
+        VarHandle.releaseFence();
+        this.patchcomposite[texnum] = synthesized;
     }
 
     /**
@@ -873,6 +885,7 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
     @R_Data.C(R_PrecacheLevel)
     public void PrecacheLevel() throws IOException {
 
+        this.resetRogueCache();
         this.preCacheFlats();
         this.preCacheTextures();
 
@@ -916,14 +929,9 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
         }
 
         // Precache flats.
-        flatpresent = new boolean[numflats];
+        flatpresent = flatsPresent();
         flats = new flat_t[numflats];
 
-        for (int i = 0; i < LL.numsectors; i++) {
-            flatpresent[LL.sectors[i].floorpic] = true;
-            flatpresent[LL.sectors[i].ceilingpic] = true;
-        }
-
         flatmemory = 0;
 
         for (int i = 0; i < numflats; i++) {
@@ -941,21 +949,7 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
         int lump;
 
         // Precache textures.
-        texturepresent = new boolean[numtextures];
-
-        for (int i = 0; i < LL.numsides; i++) {
-            texturepresent[LL.sides[i].toptexture] = true;
-            texturepresent[LL.sides[i].midtexture] = true;
-            texturepresent[LL.sides[i].bottomtexture] = true;
-        }
-
-        // Sky texture is always present.
-        // Note that F_SKY1 is the name used to
-        //  indicate a sky floor/ceiling as a flat,
-        //  while the sky texture is stored like
-        //  a wall texture, with an episode dependend
-        //  name.
-        texturepresent[skytexture] = true;
+        texturepresent = texturesPresent();
 
         texturememory = 0;
         for (int i = 0; i < numtextures; i++) {
@@ -973,6 +967,67 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
         }
     }
 
+    /**
+     * Only fills the WAD's lump cache, at the lumps the flats are drawn from:
+     * the flats array and composites are left to the game thread,
+     * which picks the lumps up from there when it gets to them.
+     */
+    @Override
+    public void PrefetchLevel() {
+        final boolean[] flatpresent = flatsPresent();
+        for (int i = 0; i < numflats; i++) {
+            if (flatpresent[i]) {
+                W.CacheLumpNumAsync(flatstorage[i], PU_CACHE, flat_t.class);
+            }
+        }
+
+        final boolean[] texturepresent = texturesPresent();
+        for (int i = 0; i < numtextures; i++) {
+            if (texturepresent[i]) {
+                for (int j = 0; j < textures[i].patchcount; j++) {
+                    W.CacheLumpNumAsync(textures[i].patches[j].patch, PU_CACHE, patch_t.class);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return which flats the sectors of the level have on their floors and ceilings
+     */
+    private boolean[] flatsPresent() {
+        final boolean[] flatpresent = new boolean[numflats];
+
+        for (int i = 0; i < LL.numsectors; i++) {
+            flatpresent[LL.sectors[i].floorpic] = true;
+            flatpresent[LL.sectors[i].ceilingpic] = true;
+        }
+
+        return flatpresent;
+    }
+
+    /**
+     * @return which textures the sides of the level have, and the sky
+     */
+    private boolean[] texturesPresent() {
+        final boolean[] texturepresent = new boolean[numtextures];
+
+        for (int i = 0; i < LL.numsides; i++) {
+            texturepresent[LL.sides[i].toptexture] = true;
+            texturepresent[LL.sides[i].midtexture] = true;
+            texturepresent[LL.sides[i].bottomtexture] = true;
+        }
+
+        // Sky texture is always present.
+        // Note that F_SKY1 is the name used to
+        //  indicate a sky floor/ceiling as a flat,
+        //  while the sky texture is stored like
+        //  a wall texture, with an episode dependend
+        //  name.
+        texturepresent[skytexture] = true;
+
+        return texturepresent;
+    }
+
     /**
      * R_FlatNumForName
      * Retrieval, get a flat number for a flat name.
@@ -1107,26 +1162,27 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
     }
 
     /** Generates a "cached" masked column against a black background.
-     *  Synchronized so concurrency issues won't cause random glitching and
-     *  errors.
+     *  All threads look up one bounded cache of those without locking,
+     *  so only making a new block, which reads the WAD, has to take a lock.
      *
      * @param lump
      * @param column
      * @return raw, 0-pointed column data.
      */
-    public synchronized byte[] getRogueColumn(int lump, int column) {
-
-        // If previously requested, speed up gathering.
-        //if (lastrogue==lump)
-        //	return rogue[column];
-        // Not contained? Generate.
-        if (!roguePatches.containsKey(lump)) {
-            roguePatches.put(lump, generateRoguePatch(lump));
+    @Override
+    public byte[] getRogueColumn(int lump, int column) {
+        byte[][] rogue = rogueCache.get(lump);
+
+        // Not contained? Generate, unless another thread just did.
+        if (rogue == null) {
+            synchronized (this) {
+                rogue = rogueCache.get(lump);
+                if (rogue == null) {
+                    rogue = rogueCache.put(lump, generateRoguePatch(lump));
+                }
+            }
         }
 
-        lastrogue = lump;
-        rogue = roguePatches.get(lump);
-
         return rogue[column];
     }
 
@@ -1152,10 +1208,25 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
         return block;
     }
 
-    int lastrogue = -1;
-    byte[][] rogue;
+    /**
+     * Logs how the rogue column cache did over the last level, and empties it for the next one
+     */
+    private void resetRogueCache() {
+        final long hits = rogueCache.hits.sumThenReset(), misses = rogueCache.misses.sumThenReset();
+        if (hits + misses > 0) {
+            LOGGER.log(Level.FINE, String.format("Rogue columns: %d hits, %d misses, %d evictions, %d KB",
+                hits, misses, rogueCache.evictions, rogueCache.getBytes() >> 10));
+        }
+        rogueCache.evictions = 0;
+        rogueCache.clear();
+    }
 
-    HashMap<Integer, byte[][]> roguePatches = new HashMap<>();
+    /**
+     * A single-patch texture is rarely bigger than 64K, so this keeps several hundred
+     */
+    private static final long ROGUE_CACHE_BYTES = 16 << 20;
+
+    private final RogueColumnCache rogueCache = new RogueColumnCache(ROGUE_CACHE_BYTES);
 
     class TextureDirectoryEntry implements Comparable<TextureDirectoryEntry> {
 
@@ -1214,11 +1285,12 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
         // It's always 0 for this kind of access.
         // Speed-increasing trick: speed up repeated accesses to the same
         // texture or patch, if they come from the same lump
-        if (tex == smp_lasttex[id] && lump == smp_lastlump[id]) {
-            if (composite) {
-                return smp_lastpatch[id].columns[col];
+        final SmpColumnState last = smpState[id];
+        if (tex == last.tex && lump == last.lump) {
+            if (last.composite) {
+                return last.patch.columns[col];
             } else {
-                return smp_lastpatch[id].columns[ofs];
+                return last.patch.columns[ofs];
             }
         }
 
@@ -1229,38 +1301,50 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
             // That is, to the ONE column exactly.{
             // If the caller needs access to a raw column, we must point 3 bytes
             // "ahead".
-            smp_lastpatch[id] = W.CachePatchNum(lump);
-            smp_lasttex[id] = tex;
-            smp_lastlump[id] = lump;
-            smp_composite[id] = false;
+            last.patch = W.CachePatchNum(lump);
+            last.tex = tex;
+            last.lump = lump;
+            last.composite = false;
             // If the column was a disk lump, use ofs.
-            return smp_lastpatch[id].columns[ofs];
+            return last.patch.columns[ofs];
         }
 
         // Problem. Composite texture requested as if it was masked
-        // but it doesn't yet exist. Create it.
+        // but it doesn't yet exist. Create it, unless another masked thread just did.
         if (getMaskedComposite(tex) == null) {
-            LOGGER.log(Level.WARNING, String.format("Forced generation of composite %s",
-                    CheckTextureNameForNum(tex)));
-            GenerateMaskedComposite(tex);
-            LOGGER.log(Level.WARNING, String.format("Composite patch %s %d",
-                    getMaskedComposite(tex).name, getMaskedComposite(tex).columns.length));
+            synchronized (this) {
+                if (getMaskedComposite(tex) == null) {
+                    LOGGER.log(Level.WARNING, String.format("Forced generation of composite %s",
+                            CheckTextureNameForNum(tex)));
+                    GenerateMaskedComposite(tex);
+                    LOGGER.log(Level.WARNING, String.format("Composite patch %s %d",
+                            getMaskedComposite(tex).name, getMaskedComposite(tex).columns.length));
+                }
+            }
         }
 
         // Last resort.
-        smp_lastpatch[id] = getMaskedComposite(tex);
-        smp_lasttex[id] = tex;
-        smp_composite[id] = true;
-        smp_lastlump[id] = 0;
+        last.patch = getMaskedComposite(tex);
+        last.tex = tex;
+        last.composite = true;
+        last.lump = 0;
 
-        return lastpatch.columns[col];
+        return last.patch.columns[col];
     }
 
-    // False: disk-mirrored patch. True: improper "transparent composite".
-    protected boolean[] smp_composite;// = false;
-    protected int[] smp_lasttex;// = -1;
-    protected int[] smp_lastlump;// = -1;
-    protected patch_t[] smp_lastpatch;// = null;
+    /**
+     * What one masked thread looked at last. Each thread has its own object, rather than
+     * a slot in arrays shared by all, so the threads don't keep writing to the same cache lines.
+     */
+    protected static final class SmpColumnState {
+        // False: disk-mirrored patch. True: improper "transparent composite".
+        boolean composite = false;
+        int tex = -1;
+        int lump = -1;
+        patch_t patch = null;
+    }
+
+    protected SmpColumnState[] smpState;
 
 ///////////////////////// TEXTURE MANAGEMENT /////////////////////////
     /**
@@ -1429,9 +1513,14 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
             return getRogueColumn(lump, ofs);
         }
 
-        // Texture should be composite, but it doesn't yet exist. Create it.
+        // Texture should be composite, but it doesn't yet exist. Create it,
+        // unless another renderer thread just did: only this is locked, not finding it.
         if (getTextureComposite(tex) == null) {
-            GenerateComposite(tex);
+            synchronized (this) {
+                if (getTextureComposite(tex) == null) {
+                    GenerateComposite(tex);
+                }
+            }
         }
 
         return getTextureComposite(tex, col);
@@ -1439,10 +1528,10 @@ public class SimpleTextureManager implements TextureManager<byte[]> {
 
     @Override
     public void setSMPVars(int num_threads) {
-        smp_composite = new boolean[num_threads];// = false;
-        smp_lasttex = new int[num_threads];// = -1;
-        smp_lastlump = new int[num_threads];// = -1;
-        smp_lastpatch = new patch_t[num_threads];// = null;
+        smpState = new SmpColumnState[num_threads];
+        for (int i = 0; i < num_threads; i++) {
+            smpState[i] = new SmpColumnState();
+        }
     }
 
 }
\ No newline at end of file
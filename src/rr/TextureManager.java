@@ -32,6 +32,12 @@ public interface TextureManager<T> extends IGetColumn<T>, IGetCachedColumn<T>, I
     @R_Data.C(R_PrecacheLevel)
     void PrecacheLevel() throws IOException;
 
+    /**
+     * Starts reading what PrecacheLevel would, in the background, and returns at once.
+     * For when the level isn't precached, so the graphics are not read mid-frame.
+     */
+    void PrefetchLevel();
+
     void GenerateComposite(int tex);
 
     int getTextureheight(int texnum);
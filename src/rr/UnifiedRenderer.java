@@ -1,10 +1,13 @@
 package rr;
 
+import doom.CommandVariable;
 import doom.DoomMain;
+import doom.player_t;
 import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import mochadoom.Loggers;
+import rr.drawfuns.DrawVarsCapture;
 import rr.drawfuns.R_DrawColumnBoom;
 import rr.drawfuns.R_DrawColumnBoomLow;
 import rr.drawfuns.R_DrawColumnBoomOpt;
@@ -21,11 +24,39 @@ public abstract class UnifiedRenderer<T, V> extends RendererState<T, V> {
 
     private static final Logger LOGGER = Loggers.getLogger(UnifiedRenderer.class.getName());
 
+    /**
+     * Set up with -capturedrawvars, records what the wall column and span functions get
+     */
+    private DrawVarsCapture drawVarsCapture;
+
     public UnifiedRenderer(DoomMain<T, V> DOOM) {
         super(DOOM);
         this.MySegs = new Segs(this);
     }
 
+    @Override
+    protected void R_InitDrawingFunctions() {
+        DOOM.cVarManager.with(CommandVariable.CAPTUREDRAWVARS, 0, (String fileName) -> {
+            drawVarsCapture = new DrawVarsCapture(fileName, DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(),
+                    DrawVarsCapture.DEFAULT_FRAMES);
+            DrawColumn = drawVarsCapture.wrap(DrawColumn);
+            DrawColumnLow = drawVarsCapture.wrap(DrawColumnLow);
+            DrawSpan = drawVarsCapture.wrap(DrawSpan);
+            DrawSpanLow = drawVarsCapture.wrap(DrawSpanLow);
+            LOGGER.log(Level.INFO, String.format("Capturing column and span vars of %d frames to %s",
+                    DrawVarsCapture.DEFAULT_FRAMES, fileName));
+        });
+        super.R_InitDrawingFunctions();
+    }
+
+    @Override
+    public void RenderPlayerView(player_t player) {
+        super.RenderPlayerView(player);
+        if (drawVarsCapture != null) {
+            drawVarsCapture.endFrame();
+        }
+    }
+
     /**
      * A very simple Seg (Wall) drawer, which just completes abstract SegDrawer by calling the final column functions.
      *
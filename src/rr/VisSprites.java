@@ -119,9 +119,15 @@ public final class VisSprites<V>
         long ang;
         int iscale;
 
+        // where the thing would be by now, between tics; AbstractThings only draws
+        // the vissprites made here, already in screen terms, so this is the one place for it
+        final int thingx = rendererState.DOOM.interpolation.x(thing);
+        final int thingy = rendererState.DOOM.interpolation.y(thing);
+        final int thingz = rendererState.DOOM.interpolation.z(thing);
+
         // transform the origin point
-        tr_x = thing.x - rendererState.view.x;
-        tr_y = thing.y - rendererState.view.y;
+        tr_x = thingx - rendererState.view.x;
+        tr_y = thingy - rendererState.view.y;
 
         gxt = FixedMul(tr_x, rendererState.view.cos);
         gyt = -FixedMul(tr_y, rendererState.view.sin);
@@ -162,7 +168,7 @@ public final class VisSprites<V>
 
         if (sprframe.rotate != 0) {
             // choose a different rotation based on player view
-            ang = rendererState.view.PointToAngle(thing.x, thing.y);
+            ang = rendererState.view.PointToAngle(thingx, thingy);
             rot = (int) ((ang - thing.angle + (ANG45 * 9) / 2) & BITS32) >>> 29;
             lump = sprframe.lump[rot];
             flip = (boolean) (sprframe.flip[rot] != 0);
@@ -193,10 +199,10 @@ public final class VisSprites<V>
         vis = NewVisSprite();
         vis.mobjflags = thing.flags;
         vis.scale = xscale << rendererState.view.detailshift;
-        vis.gx = thing.x;
-        vis.gy = thing.y;
-        vis.gz = thing.z;
-        vis.gzt = thing.z + spritetopoffset[lump];
+        vis.gx = thingx;
+        vis.gy = thingy;
+        vis.gz = thingz;
+        vis.gzt = thingz + spritetopoffset[lump];
         vis.texturemid = vis.gzt - rendererState.view.z;
         vis.x1 = x1 < 0 ? 0 : x1;
         vis.x2 = x2 >= rendererState.view.width ? rendererState.view.width - 1 : x2;
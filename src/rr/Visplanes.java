@@ -82,6 +82,10 @@ public class Visplanes {
         return baseyscale;
     }
 
+    public int[] getYSlope() {
+        return yslope;
+    }
+
     public int getSkyScale() {
         return skyscale;
     }
@@ -127,33 +131,31 @@ public class Visplanes {
      */
     public final int FindPlane(int height, int picnum, int lightlevel) {
         // System.out.println("\tChecking for visplane merging...");
-        int check = 0; // visplane_t*
-        visplane_t chk = null;
+        int check; // visplane_t*
+        visplane_t chk;
 
         if (picnum == TexMan.getSkyFlatNum()) {
             height = 0; // all skys map together
             lightlevel = 0;
         }
 
-        chk = visplanes[0];
-
-        // Find visplane with the desired attributes
-        for (check = 0; check < lastvisplane; check++) {
-
+        // Find visplane with the desired attributes. The hash only knows the first
+        // one made with them, which is the one the linear search used to find.
+        int slot = planeHash(height, picnum, lightlevel) & hashMask;
+        while (hashStamp[slot] == hashFrame) {
+            check = hashPlane[slot];
             chk = visplanes[check];
             if (height == chk.height && picnum == chk.picnum
                     && lightlevel == chk.lightlevel) {
                 // Found a visplane with the desired specs.
-                break;
+                return check;
             }
-        }
-
-        if (check < lastvisplane) {
-            return check;
+            slot = (slot + 1) & hashMask;
         }
 
         // This should return the next available visplane and resize if needed,
         // no need to hack with lastvisplane++
+        check = lastvisplane;
         chk = allocate();
         // Add a visplane
         chk.height = height;
@@ -164,9 +166,63 @@ public class Visplanes {
         // memset (chk.top,0xff,sizeof(chk.top));
         chk.clearTop();
 
+        hashStamp[slot] = hashFrame;
+        hashPlane[slot] = check;
+        if (++hashCount * 2 > hashPlane.length) {
+            growPlaneHash();
+        }
+
         return check;
     }
 
+    /**
+     * Open addressed table of the visplanes made by FindPlane in this frame, by
+     * height, picnum and lightlevel. A slot is in use when its stamp is the current
+     * frame, so ClearPlanes empties it just by moving on to the next frame.
+     */
+    private int[] hashPlane = new int[Integer.highestOneBit(Limits.MAXVISPLANES) * 4];
+    private int[] hashStamp = new int[hashPlane.length];
+    private int hashMask = hashPlane.length - 1;
+    private int hashFrame = 1;
+    private int hashCount;
+
+    private static int planeHash(int height, int picnum, int lightlevel) {
+        // heights are mostly whole units, so get the fraction bits out of the way
+        final int h = (height >> 16 ^ height) * 0x9E3779B1 + picnum * 0x85EBCA6B + lightlevel * 0xC2B2AE35;
+        return h ^ (h >>> 15);
+    }
+
+    private void clearPlaneHash() {
+        hashCount = 0;
+        if (++hashFrame == 0) {
+            // wrapped around after four billion frames, stamps must really be cleared
+            Arrays.fill(hashStamp, 0);
+            hashFrame = 1;
+        }
+    }
+
+    /**
+     * Only when the visplane count outgrows the table. Reinserts in visplane order,
+     * so each key still leads to its first plane.
+     */
+    private void growPlaneHash() {
+        final int[] oldPlane = hashPlane, oldStamp = hashStamp;
+        hashPlane = new int[oldPlane.length * 2];
+        hashStamp = new int[oldStamp.length * 2];
+        hashMask = hashPlane.length - 1;
+        for (int i = 0; i < oldPlane.length; i++) {
+            if (oldStamp[i] == hashFrame) {
+                final visplane_t pl = visplanes[oldPlane[i]];
+                int slot = planeHash(pl.height, pl.picnum, pl.lightlevel) & hashMask;
+                while (hashStamp[slot] == hashFrame) {
+                    slot = (slot + 1) & hashMask;
+                }
+                hashStamp[slot] = hashFrame;
+                hashPlane[slot] = oldPlane[i];
+            }
+        }
+    }
+
     /**
      * R_ClearPlanes At begining of frame.
      *
@@ -181,6 +237,7 @@ public class Visplanes {
          */
         // Point to #1 in visplane list? OK... ?!
         lastvisplane = 0;
+        clearPlaneHash();
 
         // We point back to the first opening of the list openings[0],
         // again.
@@ -316,77 +373,4 @@ public class Visplanes {
         // System.out.println("New plane created: "+pl);
         return lastvisplane - 1;
     }
-
-    /*
-
-       /**
-     * A hashtable used to retrieve planes with particular attributes faster
-     * -hopefully-. The planes are still stored in the visplane array for
-     * convenience, but we can search them in the hashtable too -as a bonus, we
-     * can reuse previously created planes that match newer ones-.
-     */
- /*
-    Hashtable<visplane_t, Integer> planehash = new Hashtable<visplane_t, Integer>(
-            128);
-    visplane_t check = new visplane_t();
-     */
-
- /*
-    protected final int FindPlane2(int height, int picnum, int lightlevel) {
-        // System.out.println("\tChecking for visplane merging...");
-        // int check=0; // visplane_t*
-        visplane_t chk = null;
-        Integer checknum;
-
-        if (picnum == TexMan.getSkyFlatNum()) {
-            height = 0; // all skys map together
-            lightlevel = 0;
-        }
-
-        // Try and find this.
-        check.lightlevel = lightlevel;
-        check.picnum = picnum;
-        check.height = height;
-        check.updateHashCode();
-        checknum = planehash.get(check);
-
-        // Something found, get it.
-
-        if (!(checknum == null)) {
-
-            // Visplane exists and is within those allocated in the current tic.
-            if (checknum < lastvisplane) {
-                return checknum;
-            }
-
-            // Found a visplane, but we can't add anymore.
-            // Resize right away. This shouldn't take too long.
-            if (lastvisplane == MAXVISPLANES) {
-                // I.Error ("R_FindPlane: no more visplanes");
-                ResizeVisplanes();
-            }
-        }
-
-        // We found a visplane (possibly one allocated on a previous tic)
-        // but we can't link directly to it, we need to copy its data
-        // around.
-
-        checknum = new Integer(Math.max(0, lastvisplane));
-
-        chk = visplanes[checknum];
-        // Add a visplane
-        lastvisplane++;
-        chk.height = height;
-        chk.picnum = picnum;
-        chk.lightlevel = lightlevel;
-        chk.minx = vs.getScreenWidth();
-        chk.maxx = -1;
-        chk.updateHashCode();
-        planehash.put(chk, checknum);
-        // memset (chk.top,0xff,sizeof(chk.top));
-        chk.clearTop();
-
-        return checknum;
-    }
-     */
-}
\ No newline at end of file
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rr.drawfuns;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mochadoom.Loggers;
+
+/**
+ * Records the ColVars and SpanVars that reach the wall column and span functions
+ * during real frames, so the kernels can be benchmarked (see the jmh source set)
+ * with the geometry they actually get in a level, instead of made up numbers.
+ *
+ * Only the numbers are recorded. Texture and flat contents, colormaps and the screen
+ * are not: they don't change the amount of work done, and the benchmark fills them
+ * with noise of the right size. Colormaps are numbered in order of first appearance.
+ *
+ * Trace layout, big endian ints:
+ * magic, version, viewwidth, viewheight,
+ * column count, then per column: x, yl, yh, iscale, texturemid, texheight, centery, source_ofs, source length, colormap
+ * span count, then per span: y, x1, x2, xfrac, yfrac, xstep, ystep, colormap
+ *
+ * @author Good Sign
+ */
+public class DrawVarsCapture {
+
+    private static final Logger LOGGER = Loggers.getLogger(DrawVarsCapture.class.getName());
+
+    public static final int MAGIC = 0x4D44_4456; // "MDDV"
+    public static final int VERSION = 1;
+    public static final int COLUMN_FIELDS = 10;
+    public static final int SPAN_FIELDS = 8;
+
+    /**
+     * Four seconds of demo is plenty: it's hundreds of thousands of columns at the higher resolutions
+     */
+    public static final int DEFAULT_FRAMES = 140;
+
+    private final String fileName;
+    private final int viewWidth, viewHeight;
+    private int framesLeft;
+
+    private final ByteArrayOutputStream columnBytes = new ByteArrayOutputStream(1 << 20);
+    private final ByteArrayOutputStream spanBytes = new ByteArrayOutputStream(1 << 20);
+    private final DataOutputStream columns = new DataOutputStream(columnBytes);
+    private final DataOutputStream spans = new DataOutputStream(spanBytes);
+    private int columnCount, spanCount;
+
+    private final Map<Object, Integer> colormapIds = new IdentityHashMap<>();
+
+    public DrawVarsCapture(String fileName, int viewWidth, int viewHeight, int frames) {
+        this.fileName = fileName;
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+        this.framesLeft = frames;
+    }
+
+    public boolean isRecording() {
+        return framesLeft > 0;
+    }
+
+    /**
+     * To be called once the view has been rendered. Writes the trace out after the last frame.
+     */
+    public void endFrame() {
+        if (framesLeft > 0 && --framesLeft == 0) {
+            write();
+        }
+    }
+
+    public <T, V> DoomColumnFunction<T, V> wrap(DoomColumnFunction<T, V> function) {
+        return new Column<>(function);
+    }
+
+    public <T, V> DoomSpanFunction<T, V> wrap(DoomSpanFunction<T, V> function) {
+        return new Span<>(function);
+    }
+
+    private int colormapId(Object colormap) {
+        return colormapIds.computeIfAbsent(colormap, c -> colormapIds.size());
+    }
+
+    private void record(ColVars<?, ?> dcvars) {
+        if (framesLeft <= 0) {
+            return;
+        }
+
+        try {
+            columns.writeInt(dcvars.dc_x);
+            columns.writeInt(dcvars.dc_yl);
+            columns.writeInt(dcvars.dc_yh);
+            columns.writeInt(dcvars.dc_iscale);
+            columns.writeInt(dcvars.dc_texturemid);
+            columns.writeInt(dcvars.dc_texheight);
+            columns.writeInt(dcvars.centery);
+            columns.writeInt(dcvars.dc_source_ofs);
+            columns.writeInt(dcvars.dc_source != null ? Array.getLength(dcvars.dc_source) : 0);
+            columns.writeInt(colormapId(dcvars.dc_colormap));
+            ++columnCount;
+        } catch (IOException e) {
+            // can't happen on a byte array
+        }
+    }
+
+    private void record(SpanVars<?, ?> dsvars) {
+        if (framesLeft <= 0) {
+            return;
+        }
+
+        try {
+            spans.writeInt(dsvars.ds_y);
+            spans.writeInt(dsvars.ds_x1);
+            spans.writeInt(dsvars.ds_x2);
+            spans.writeInt(dsvars.ds_xfrac);
+            spans.writeInt(dsvars.ds_yfrac);
+            spans.writeInt(dsvars.ds_xstep);
+            spans.writeInt(dsvars.ds_ystep);
+            spans.writeInt(colormapId(dsvars.ds_colormap));
+            ++spanCount;
+        } catch (IOException e) {
+            // can't happen on a byte array
+        }
+    }
+
+    private void write() {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(viewWidth);
+            out.writeInt(viewHeight);
+            out.writeInt(columnCount);
+            columnBytes.writeTo(out);
+            out.writeInt(spanCount);
+            spanBytes.writeTo(out);
+            LOGGER.log(Level.INFO, String.format("Captured %d columns and %d spans to %s", columnCount, spanCount, fileName));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, String.format("Could not write draw vars capture %s", fileName), e);
+        }
+        columnBytes.reset();
+        spanBytes.reset();
+        colormapIds.clear();
+    }
+
+    /**
+     * A trace read back: the records are kept flat, COLUMN_FIELDS or SPAN_FIELDS ints apiece
+     */
+    public static final class Trace {
+
+        public final int viewWidth, viewHeight;
+        public final int[] columns;
+        public final int[] spans;
+
+        public Trace(int viewWidth, int viewHeight, int[] columns, int[] spans) {
+            this.viewWidth = viewWidth;
+            this.viewHeight = viewHeight;
+            this.columns = columns;
+            this.spans = spans;
+        }
+
+        public int columnCount() {
+            return columns.length / COLUMN_FIELDS;
+        }
+
+        public int spanCount() {
+            return spans.length / SPAN_FIELDS;
+        }
+    }
+
+    public static Trace read(String fileName) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(String.format("%s is not a draw vars capture", fileName));
+            }
+            final int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException(String.format("%s has unsupported version %d", fileName, version));
+            }
+            final int width = in.readInt();
+            final int height = in.readInt();
+            final int[] columns = new int[in.readInt() * COLUMN_FIELDS];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = in.readInt();
+            }
+            final int[] spans = new int[in.readInt() * SPAN_FIELDS];
+            for (int i = 0; i < spans.length; i++) {
+                spans[i] = in.readInt();
+            }
+            return new Trace(width, height, columns, spans);
+        }
+    }
+
+    private final class Column<T, V> extends DoomColumnFunction<T, V> {
+
+        private final DoomColumnFunction<T, V> function;
+
+        Column(DoomColumnFunction<T, V> function) {
+            super(function.SCREENWIDTH, function.SCREENHEIGHT, function.ylookup, function.columnofs,
+                    function.dcvars, function.screen, function.I, function.blurryTable);
+            this.function = function;
+            this.flags = function.flags;
+        }
+
+        @Override
+        public void invoke() {
+            record(dcvars);
+            function.invoke(dcvars);
+        }
+    }
+
+    private final class Span<T, V> extends DoomSpanFunction<T, V> {
+
+        private final DoomSpanFunction<T, V> function;
+
+        Span(DoomSpanFunction<T, V> function) {
+            super(function.SCREENWIDTH, function.SCREENHEIGHT, function.ylookup, function.columnofs,
+                    function.dsvars, function.screen, function.I);
+            this.function = function;
+        }
+
+        @Override
+        public void invoke() {
+            record(dsvars);
+            function.invoke(dsvars);
+        }
+    }
+}
@@ -23,8 +23,13 @@ public class flat_t
     public void unpack(ByteBuffer buf)
             throws IOException {
 
-        //buf.get(this.data);
-        this.data = buf.array();
+        // Lumps may come as read-only slices of a mapped wad, which have no array to share
+        if (buf.hasArray() && buf.arrayOffset() == 0 && buf.capacity() == buf.array().length) {
+            this.data = buf.array();
+        } else {
+            this.data = new byte[buf.remaining()];
+            buf.get(this.data);
+        }
 
     }
 
@@ -3,9 +3,12 @@ package rr.parallel;
 import doom.DoomMain;
 import doom.player_t;
 import java.io.IOException;
+import java.util.concurrent.BrokenBarrierException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import mochadoom.Loggers;
+import rr.PlaneDrawer;
+import rr.SceneRenderer;
 import rr.SimpleThings;
 import rr.drawfuns.ColVars;
 import rr.drawfuns.R_DrawColumnBoom;
@@ -19,6 +22,8 @@ import rr.drawfuns.R_DrawSpanUnrolled;
 import rr.drawfuns.R_DrawTLColumn;
 import rr.drawfuns.R_DrawTranslatedColumn;
 import rr.drawfuns.R_DrawTranslatedColumnLow;
+import rr.visplane_t;
+import timing.FrameProfiler.Phase;
 
 /**
  * This is Mocha Doom's famous parallel software renderer. It builds on the
@@ -47,10 +52,15 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
         RWIs = tmp;
 
         this.MyThings = new SimpleThings<>(DM.vs, this);
-        //this.MyPlanes = new Planes(this);// new ParallelPlanes<T, V>(DM.R);
-
+        this.MyPlanes = new StealingPlanes(DM, this);
+        this.planeScheduler = new VisplaneScheduler(NUMFLOORTHREADS, DM.vs.getScreenHeight());
     }
 
+    /**
+     * Splits the visplanes among the floor threads
+     */
+    protected final VisplaneScheduler planeScheduler;
+
     /**
      * Default constructor, 1 seg, 1 span and two masked threads.
      *
@@ -91,26 +101,38 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
         DOOM.gameNetworking.NetUpdate();
 
         // The head node is the last node output.
+        DOOM.profiler.begin(Phase.BSP);
         MyBSP.RenderBSPNode(DOOM.levelLoader.numnodes - 1);
+        DOOM.profiler.end(Phase.BSP);
 
         // System.out.printf("Submitted %d RWIs\n",RWIcount);
+        DOOM.profiler.begin(Phase.SEGS);
         MySegs.CompleteRendering();
+        DOOM.profiler.end(Phase.SEGS);
 
         // Check for new console commands.
         DOOM.gameNetworking.NetUpdate();
 
         // "Warped floor" fixed, same-height visplane merging fixed.
+        DOOM.profiler.begin(Phase.PLANES);
         MyPlanes.DrawPlanes();
+        DOOM.profiler.end(Phase.PLANES);
 
         // Check for new console commands.
         DOOM.gameNetworking.NetUpdate();
 
+        DOOM.profiler.begin(Phase.SEGS);
         MySegs.sync();
+        DOOM.profiler.end(Phase.SEGS);
+        DOOM.profiler.begin(Phase.PLANES);
         MyPlanes.sync();
+        DOOM.profiler.end(Phase.PLANES);
 
 //            drawsegsbarrier.await();
 //            visplanebarrier.await();
+        DOOM.profiler.begin(Phase.MASKED);
         MyThings.DrawMasked();
+        DOOM.profiler.end(Phase.MASKED);
 
         // RenderRMIPipeline();
         /*
@@ -207,6 +229,18 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
             }
         }
 
+        @Override
+        protected void InitPlaneWorkers() {
+            vpw = new Runnable[NUMFLOORTHREADS];
+            for (int i = 0; i < NUMFLOORTHREADS; i++) {
+                final VisplaneWorker<byte[], byte[]> w = new VisplaneWorker.Indexed(
+                        DOOM, this, i, columnofs, ylookup, screen, planeScheduler, visplanebarrier
+                );
+                vpw[i] = w;
+                detailaware.add(w);
+            }
+        }
+
         @Override
         public RenderWallExecutor<byte[], byte[]>[] InitRWIExecutors(
                 int num, ColVars<byte[], byte[]>[] RWI) {
@@ -237,6 +271,8 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
             }
         }
 
+        InitPlaneWorkers();
+
         // CATCH: this must be executed AFTER screen is set, and
         // AFTER we initialize the RWI themselves,
         // before V is set (right?)
@@ -246,7 +282,6 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
         // Using masked sprites
         // RMIExec = new RenderMaskedExecutor[NUMMASKEDTHREADS];
         // Using
-        //vpw = new Runnable[NUMFLOORTHREADS];
         //maskedworkers = new MaskedWorker.Indexed[NUMMASKEDTHREADS];
         // RWIcount = 0;
         // InitRWISubsystem();
@@ -258,12 +293,60 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
 
     }
 
-    /*
-     * private void InitPlaneWorkers(){ for (int i = 0; i < NUMFLOORTHREADS;
-     * i++) { vpw[i] = new VisplaneWorker2(i,SCREENWIDTH, SCREENHEIGHT,
-     * columnofs, ylookup, screen, visplanebarrier, NUMFLOORTHREADS);
-     * //vpw[i].id = i; detailaware.add((IDetailAware) vpw[i]); } }
+    /**
+     * One VisplaneWorker per floor thread, all fed by planeScheduler.
+     * Must be executed AFTER screen is set.
      */
+    protected abstract void InitPlaneWorkers();
+
+    /**
+     * R_DrawPlanes, on the floor threads. The visplanes are split and handed out by
+     * the VisplaneScheduler, then the workers run alongside the wall threads until
+     * sync() waits for them.
+     */
+    protected final class StealingPlanes extends PlaneDrawer<T, V> {
+
+        StealingPlanes(DoomMain<T, V> DOOM, SceneRenderer<T, V> R) {
+            super(DOOM, R);
+        }
+
+        @Override
+        public void DrawPlanes() {
+            if (RANGECHECK) {
+                rangeCheckErrors();
+            }
+
+            // Load flats and build the sky composite here, rather than have the workers race for them
+            final int skyflatnum = TexMan.getSkyFlatNum();
+            for (int pl = 0; pl < vpvars.lastvisplane; pl++) {
+                final visplane_t pln = vpvars.visplanes[pl];
+                if (pln.minx > pln.maxx) {
+                    continue;
+                }
+
+                if (pln.picnum == skyflatnum) {
+                    TexMan.GetCachedColumn(TexMan.getSkyTexture(), 0);
+                } else {
+                    TexMan.getSafeFlat(pln.picnum);
+                }
+            }
+
+            planeScheduler.prepare(vpvars, skyflatnum);
+
+            for (int i = 0; i < NUMFLOORTHREADS; i++) {
+                tp.execute(vpw[i]);
+            }
+        }
+
+        @Override
+        public void sync() {
+            try {
+                visplanebarrier.await();
+            } catch (InterruptedException | BrokenBarrierException e) {
+                LOGGER.log(Level.SEVERE, "DrawPlanes sync failure", e);
+            }
+        }
+    }
  /*
          * TODO: relay to dependent objects. super.initScaling();
          * ColVars<byte[],byte[]> fake = new ColVars<byte[],byte[]>(); RWI =
@@ -353,6 +436,18 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
             super.R_InitDrawingFunctions();
         }
 
+        @Override
+        protected void InitPlaneWorkers() {
+            vpw = new Runnable[NUMFLOORTHREADS];
+            for (int i = 0; i < NUMFLOORTHREADS; i++) {
+                final VisplaneWorker<byte[], short[]> w = new VisplaneWorker.HiColor(
+                        DOOM, this, i, columnofs, ylookup, screen, planeScheduler, visplanebarrier
+                );
+                vpw[i] = w;
+                detailaware.add(w);
+            }
+        }
+
         @Override
         public RenderWallExecutor<byte[], short[]>[] InitRWIExecutors(
                 int num, ColVars<byte[], short[]>[] RWI) {
@@ -449,6 +544,18 @@ public abstract class ParallelRenderer<T, V> extends AbstractParallelRenderer<T,
             }
         }
 
+        @Override
+        protected void InitPlaneWorkers() {
+            vpw = new Runnable[NUMFLOORTHREADS];
+            for (int i = 0; i < NUMFLOORTHREADS; i++) {
+                final VisplaneWorker<byte[], int[]> w = new VisplaneWorker.TrueColor(
+                        DOOM, this, i, columnofs, ylookup, screen, planeScheduler, visplanebarrier
+                );
+                vpw[i] = w;
+                detailaware.add(w);
+            }
+        }
+
         @Override
         public RenderWallExecutor<byte[], int[]>[] InitRWIExecutors(
                 int num, ColVars<byte[], int[]>[] RWI) {
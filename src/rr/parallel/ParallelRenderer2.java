@@ -21,6 +21,7 @@ import rr.drawfuns.R_DrawSpanUnrolled;
 import rr.drawfuns.R_DrawTLColumn;
 import rr.drawfuns.R_DrawTranslatedColumn;
 import rr.drawfuns.R_DrawTranslatedColumnLow;
+import timing.FrameProfiler.Phase;
 import static utils.GenericCopy.malloc;
 
 /** This is a second attempt at building a seg-focused parallel renderer, instead of
@@ -110,7 +111,9 @@ public abstract class ParallelRenderer2<T, V> extends AbstractParallelRenderer<T
         DOOM.gameNetworking.NetUpdate();
 
         // The head node is the last node output.
+        DOOM.profiler.begin(Phase.BSP);
         MyBSP.RenderBSPNode(DOOM.levelLoader.numnodes - 1);
+        DOOM.profiler.end(Phase.BSP);
 
         // RenderRMIPipeline();
         /*
@@ -120,12 +123,15 @@ public abstract class ParallelRenderer2<T, V> extends AbstractParallelRenderer<T
         ((ParallelSegs2<T, V>) MySegs).RenderRSIPipeline();
         // System.out.printf("Submitted %d RSIs\n",RSIcount);
 
+        DOOM.profiler.begin(Phase.SEGS);
         MySegs.CompleteRendering();
+        DOOM.profiler.end(Phase.SEGS);
 
         // Check for new console commands.
         DOOM.gameNetworking.NetUpdate();
 
         // "Warped floor" fixed, same-height visplane merging fixed.
+        DOOM.profiler.begin(Phase.PLANES);
         MyPlanes.DrawPlanes();
 
         try {
@@ -133,16 +139,23 @@ public abstract class ParallelRenderer2<T, V> extends AbstractParallelRenderer<T
         } catch (InterruptedException | BrokenBarrierException e) {
             LOGGER.log(Level.SEVERE, "RenderPlayerView failure", e);
         }
+        DOOM.profiler.end(Phase.PLANES);
 
         // Check for new console commands.
         DOOM.gameNetworking.NetUpdate();
 
+        DOOM.profiler.begin(Phase.SEGS);
         MySegs.sync();
+        DOOM.profiler.end(Phase.SEGS);
+        DOOM.profiler.begin(Phase.PLANES);
         MyPlanes.sync();
+        DOOM.profiler.end(Phase.PLANES);
 
 //            drawsegsbarrier.await();
 //            visplanebarrier.await();
+        DOOM.profiler.begin(Phase.MASKED);
         MyThings.DrawMasked();
+        DOOM.profiler.end(Phase.MASKED);
     }
 
     abstract protected void InitRSISubsystem();
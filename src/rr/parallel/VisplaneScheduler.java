@@ -0,0 +1,289 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package rr.parallel;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import rr.Visplanes;
+import rr.visplane_t;
+
+/**
+ * Splits the visplanes of a frame into tasks of about the same pixel area, and hands
+ * them out to the VisplaneWorkers by work stealing.
+ *
+ * Flats are split into bands of rows. A band still sweeps every column of its plane,
+ * but only opens and closes spans on its own rows, so each row gets exactly the spans
+ * it would get if the plane was drawn whole, and the picture doesn't change.
+ * Skies are drawn column by column, so they are split into column ranges.
+ *
+ * Each worker starts with a run of tasks worth 1/n of the frame's area. It takes them
+ * from the front; when it runs dry, it steals from the back of the others' runs.
+ * A run is a head and tail packed in one long, so both ends are claimed by CAS and
+ * nothing is locked or allocated per frame.
+ *
+ * @author Good Sign
+ */
+public final class VisplaneScheduler {
+
+    /**
+     * Enough tasks per thread to even out the estimates, few enough to keep the per band
+     * column sweep cheap.
+     */
+    private static final int TASKS_PER_THREAD = 4;
+
+    /**
+     * Below this many pixels, a plane is not worth splitting
+     */
+    private static final int MIN_TASK_AREA = 2048;
+
+    private final int numThreads;
+    private final AtomicLongArray runs;
+
+    /**
+     * Row coverage of the plane being split, as a difference array
+     */
+    private final int[] rows;
+
+    private int[] planeArea = new int[256];
+    private int[] taskPlane = new int[256];
+    private int[] taskFrom = new int[256];
+    private int[] taskTo = new int[256];
+    private int[] taskArea = new int[256];
+    private int numTasks;
+
+    public VisplaneScheduler(int numThreads, int screenHeight) {
+        this.numThreads = numThreads;
+        this.runs = new AtomicLongArray(numThreads);
+        this.rows = new int[screenHeight + 2];
+    }
+
+    /**
+     * To be called on the renderer thread, once the BSP is done and before the workers
+     * are started. Also puts the sentinels at both ends of each flat, like R_DrawPlanes.
+     */
+    public void prepare(Visplanes vpvars, int skyFlatNum) {
+        final int lastvisplane = vpvars.lastvisplane;
+        if (planeArea.length < lastvisplane) {
+            planeArea = new int[Math.max(lastvisplane, planeArea.length * 2)];
+        }
+
+        long totalArea = 0;
+        for (int pl = 0; pl < lastvisplane; pl++) {
+            final visplane_t pln = vpvars.visplanes[pl];
+            if (pln.minx > pln.maxx) {
+                planeArea[pl] = 0;
+                continue;
+            }
+
+            if (pln.picnum != skyFlatNum) {
+                pln.setTop(pln.maxx + 1, visplane_t.SENTINEL);
+                pln.setTop(pln.minx - 1, visplane_t.SENTINEL);
+            }
+
+            int area = 0;
+            for (int x = pln.minx; x <= pln.maxx; x++) {
+                final int t = pln.getTop(x), b = pln.getBottom(x);
+                if (t <= b) {
+                    area += b - t + 1;
+                }
+            }
+            planeArea[pl] = area;
+            totalArea += area;
+        }
+
+        // With a single worker, there is nobody to share with
+        final long grain = numThreads > 1
+                ? Math.max(MIN_TASK_AREA, totalArea / (numThreads * TASKS_PER_THREAD))
+                : Long.MAX_VALUE;
+
+        numTasks = 0;
+        for (int pl = 0; pl < lastvisplane; pl++) {
+            final int area = planeArea[pl];
+            if (area == 0) {
+                continue;
+            }
+
+            final visplane_t pln = vpvars.visplanes[pl];
+            final boolean sky = pln.picnum == skyFlatNum;
+            if (area > grain) {
+                final int pieces = (int) ((area + grain - 1) / grain);
+                if (sky) {
+                    splitColumns(pl, pln, area, pieces);
+                } else {
+                    splitRows(pl, pln, area, pieces);
+                }
+            } else if (sky) {
+                addTask(pl, pln.minx, pln.maxx, area);
+            } else {
+                addTask(pl, 0, Integer.MAX_VALUE, area);
+            }
+        }
+
+        deal(totalArea);
+    }
+
+    private void splitColumns(int pl, visplane_t pln, int area, int pieces) {
+        final int share = (area + pieces - 1) / pieces;
+        int from = pln.minx, acc = 0;
+        for (int x = pln.minx; x <= pln.maxx; x++) {
+            final int t = pln.getTop(x), b = pln.getBottom(x);
+            if (t <= b) {
+                acc += b - t + 1;
+            }
+            if (acc >= share || x == pln.maxx) {
+                if (acc > 0) {
+                    addTask(pl, from, x, acc);
+                }
+                from = x + 1;
+                acc = 0;
+            }
+        }
+    }
+
+    private void splitRows(int pl, visplane_t pln, int area, int pieces) {
+        int minRow = Integer.MAX_VALUE, maxRow = -1;
+        for (int x = pln.minx; x <= pln.maxx; x++) {
+            final int t = pln.getTop(x), b = pln.getBottom(x);
+            if (t <= b) {
+                ++rows[t];
+                --rows[b + 1];
+                minRow = Math.min(minRow, t);
+                maxRow = Math.max(maxRow, b);
+            }
+        }
+
+        final int share = (area + pieces - 1) / pieces;
+        int from = minRow, acc = 0, coverage = 0;
+        for (int y = minRow; y <= maxRow; y++) {
+            coverage += rows[y];
+            acc += coverage;
+            if (acc >= share || y == maxRow) {
+                if (acc > 0) {
+                    addTask(pl, from, y, acc);
+                }
+                from = y + 1;
+                acc = 0;
+            }
+        }
+        Arrays.fill(rows, minRow, maxRow + 2, 0);
+    }
+
+    private void addTask(int plane, int from, int to, int area) {
+        if (numTasks == taskPlane.length) {
+            final int newSize = numTasks * 2;
+            taskPlane = Arrays.copyOf(taskPlane, newSize);
+            taskFrom = Arrays.copyOf(taskFrom, newSize);
+            taskTo = Arrays.copyOf(taskTo, newSize);
+            taskArea = Arrays.copyOf(taskArea, newSize);
+        }
+        taskPlane[numTasks] = plane;
+        taskFrom[numTasks] = from;
+        taskTo[numTasks] = to;
+        taskArea[numTasks] = area;
+        ++numTasks;
+    }
+
+    /**
+     * Gives each worker a consecutive run of tasks, cut where the running area crosses
+     * the next 1/n of the total
+     */
+    private void deal(long totalArea) {
+        int task = 0;
+        long acc = 0;
+        for (int id = 0; id < numThreads; id++) {
+            final int head = task;
+            final long limit = totalArea * (id + 1) / numThreads;
+            while (task < numTasks && (id == numThreads - 1 || acc + taskArea[task] / 2 <= limit)) {
+                acc += taskArea[task++];
+            }
+            runs.set(id, pack(head, task));
+        }
+    }
+
+    /**
+     * Next task for a worker: its own first, then stolen from the others.
+     *
+     * @return task index, or -1 when everything has been handed out
+     */
+    public int nextTask(int id) {
+        int task = takeFirst(id);
+        for (int i = 1; task < 0 && i < numThreads; i++) {
+            task = takeLast((id + i) % numThreads);
+        }
+        return task;
+    }
+
+    private int takeFirst(int id) {
+        for (;;) {
+            final long run = runs.get(id);
+            final int head = head(run), tail = tail(run);
+            if (head >= tail) {
+                return -1;
+            }
+            if (runs.compareAndSet(id, run, pack(head + 1, tail))) {
+                return head;
+            }
+        }
+    }
+
+    private int takeLast(int id) {
+        for (;;) {
+            final long run = runs.get(id);
+            final int head = head(run), tail = tail(run);
+            if (head >= tail) {
+                return -1;
+            }
+            if (runs.compareAndSet(id, run, pack(head, tail - 1))) {
+                return tail - 1;
+            }
+        }
+    }
+
+    public int getPlane(int task) {
+        return taskPlane[task];
+    }
+
+    /**
+     * First row of a flat band, or first column of a sky range
+     */
+    public int getFrom(int task) {
+        return taskFrom[task];
+    }
+
+    /**
+     * Last row of a flat band, or last column of a sky range, inclusive
+     */
+    public int getTo(int task) {
+        return taskTo[task];
+    }
+
+    public int getNumTasks() {
+        return numTasks;
+    }
+
+    private static long pack(int head, int tail) {
+        return ((long) head << 32) | (tail & 0xFFFFFFFFL);
+    }
+
+    private static int head(long run) {
+        return (int) (run >>> 32);
+    }
+
+    private static int tail(long run) {
+        return (int) run;
+    }
+}
@@ -1,13 +1,19 @@
 package rr.parallel;
 
 import static data.Defines.ANGLETOSKYSHIFT;
+import static data.Tables.ANGLETOFINESHIFT;
+import static data.Tables.BITS32;
 import static data.Tables.addAngles;
+import static data.Tables.finecosine;
+import static data.Tables.finesine;
 import doom.DoomMain;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import static m.fixed_t.FRACBITS;
+import static m.fixed_t.FixedMul;
+import m.Settings;
 import mochadoom.Loggers;
 import rr.IDetailAware;
 import rr.PlaneDrawer;
@@ -23,11 +29,14 @@ import rr.drawfuns.SpanVars;
 import rr.visplane_t;
 import v.graphics.Palettes;
 
-/** Visplane worker which shares work in an equal-visplane number strategy
- *  with other workers. Might be unbalanced if one worker gets too large
- *  visplanes and others get smaller ones. Balancing strategy is applied in
- *  run(), otherwise it's practically similar to a PlaneDrwer.
+/** Visplane worker which takes its work from a VisplaneScheduler: bands of
+ *  rows of flats and column ranges of skies, of roughly equal pixel area,
+ *  stealing from the other workers once its own share is done. This way one
+ *  huge sky or floor no longer leaves the other threads idle at the barrier.
  *
+ *  Everything it touches while drawing is its own: span and column vars,
+ *  drawing functions, spanstart and the distance cache, so it draws exactly
+ *  what the serial R_DrawPlanes would.
  *
  * @author velktron
  *
@@ -38,15 +47,22 @@ public abstract class VisplaneWorker<T, V> extends PlaneDrawer<T, V> implements
 
     // Private to each thread.
     protected final int id;
-    protected final int NUMFLOORTHREADS;
     protected final CyclicBarrier barrier;
+    protected final VisplaneScheduler scheduler;
+    protected final DoomMain<T, V> DOOM;
 
     protected int vpw_planeheight;
     protected V[] vpw_planezlight;
     protected int vpw_basexscale, vpw_baseyscale;
 
-    protected SpanVars<T, V> vpw_dsvars;
-    protected ColVars<T, V> vpw_dcvars;
+    /** Row band of the flat being drawn. Spans outside of it belong to other tasks */
+    protected int vpw_bandtop, vpw_bandbottom;
+
+    /** Same as the shared one in Visplanes, but it can't be shared between threads */
+    protected final int[] vpw_cachedheight;
+
+    protected final SpanVars<T, V> vpw_dsvars;
+    protected final ColVars<T, V> vpw_dcvars;
 
     // OBVIOUSLY each thread must have its own span functions.
     protected DoomSpanFunction<T, V> vpw_spanfunc;
@@ -56,32 +72,59 @@ public abstract class VisplaneWorker<T, V> extends PlaneDrawer<T, V> implements
     protected DoomColumnFunction<T, V> vpw_skyfunchi;
     protected DoomColumnFunction<T, V> vpw_skyfunclow;
 
-    public VisplaneWorker(DoomMain<T, V> DOOM, int id, int SCREENWIDTH, int SCREENHEIGHT, SceneRenderer<T, V> R, CyclicBarrier visplanebarrier, int NUMFLOORTHREADS) {
+    public VisplaneWorker(DoomMain<T, V> DOOM, SceneRenderer<T, V> R, int id, VisplaneScheduler scheduler, CyclicBarrier visplanebarrier) {
         super(DOOM, R);
+        this.DOOM = DOOM;
         this.barrier = visplanebarrier;
         this.id = id;
-        this.NUMFLOORTHREADS = NUMFLOORTHREADS;
+        this.scheduler = scheduler;
+        this.vpw_dsvars = new SpanVars<>();
+        this.vpw_dcvars = new ColVars<>();
+        this.vpw_cachedheight = new int[vs.getScreenHeight()];
+        // Filled in by ExecuteSetViewSize, for the renderer's own plane drawer.
+        this.distscale = R.getPlaneDrawer().getDistScale();
+    }
+
+    public static final class Indexed extends VisplaneWorker<byte[], byte[]> {
+
+        public Indexed(DoomMain<byte[], byte[]> DOOM, SceneRenderer<byte[], byte[]> R, int id,
+                int[] columnofs, int[] ylookup, byte[] screen,
+                VisplaneScheduler scheduler, CyclicBarrier visplanebarrier) {
+            super(DOOM, R, id, scheduler, visplanebarrier);
+            vpw_spanfunc = vpw_spanfunchi = new R_DrawSpanUnrolled.Indexed(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dsvars, screen, I);
+            vpw_spanfunclow = new R_DrawSpanLow.Indexed(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dsvars, screen, I);
+            vpw_skyfunc = vpw_skyfunchi = new R_DrawColumnBoomOpt.Indexed(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dcvars, screen, I);
+            vpw_skyfunclow = new R_DrawColumnBoomOptLow.Indexed(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dcvars, screen, I);
+        }
     }
 
     public static final class HiColor extends VisplaneWorker<byte[], short[]> {
 
-        public HiColor(DoomMain<byte[], short[]> DOOM, int id, int SCREENWIDTH, int SCREENHEIGHT, SceneRenderer<byte[], short[]> R,
+        public HiColor(DoomMain<byte[], short[]> DOOM, SceneRenderer<byte[], short[]> R, int id,
                 int[] columnofs, int[] ylookup, short[] screen,
-                CyclicBarrier visplanebarrier, int NUMFLOORTHREADS) {
-            super(DOOM, id, SCREENWIDTH, SCREENHEIGHT, R, visplanebarrier, NUMFLOORTHREADS);
-            // Alias to those of Planes.
+                VisplaneScheduler scheduler, CyclicBarrier visplanebarrier) {
+            super(DOOM, R, id, scheduler, visplanebarrier);
+            vpw_spanfunc = vpw_spanfunchi = new R_DrawSpanUnrolled.HiColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dsvars, screen, I);
+            vpw_spanfunclow = new R_DrawSpanLow.HiColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dsvars, screen, I);
+            vpw_skyfunc = vpw_skyfunchi = new R_DrawColumnBoomOpt.HiColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dcvars, screen, I);
+            vpw_skyfunclow = new R_DrawColumnBoomOptLow.HiColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dcvars, screen, I);
+        }
+    }
 
-            vpw_dsvars = new SpanVars<>();
-            vpw_dcvars = new ColVars<>();
-            vpw_spanfunc = vpw_spanfunchi = new R_DrawSpanUnrolled.HiColor(SCREENWIDTH, SCREENHEIGHT, ylookup, columnofs, vpw_dsvars, screen, I);
-            vpw_spanfunclow = new R_DrawSpanLow.HiColor(SCREENWIDTH, SCREENHEIGHT, ylookup, columnofs, vpw_dsvars, screen, I);
-            vpw_skyfunc = vpw_skyfunchi = new R_DrawColumnBoomOpt.HiColor(SCREENWIDTH, SCREENHEIGHT, ylookup, columnofs, vpw_dcvars, screen, I);
-            vpw_skyfunclow = new R_DrawColumnBoomOptLow.HiColor(SCREENWIDTH, SCREENHEIGHT, ylookup, columnofs, vpw_dcvars, screen, I);
+    public static final class TrueColor extends VisplaneWorker<byte[], int[]> {
 
+        public TrueColor(DoomMain<byte[], int[]> DOOM, SceneRenderer<byte[], int[]> R, int id,
+                int[] columnofs, int[] ylookup, int[] screen,
+                VisplaneScheduler scheduler, CyclicBarrier visplanebarrier) {
+            super(DOOM, R, id, scheduler, visplanebarrier);
+            vpw_spanfunc = vpw_spanfunchi = new R_DrawSpanUnrolled.TrueColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dsvars, screen, I);
+            vpw_spanfunclow = new R_DrawSpanLow.TrueColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dsvars, screen, I);
+            vpw_skyfunc = vpw_skyfunchi = new R_DrawColumnBoomOpt.TrueColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dcvars, screen, I);
+            vpw_skyfunclow = new R_DrawColumnBoomOptLow.TrueColor(DOOM.vs.getScreenWidth(), DOOM.vs.getScreenHeight(), ylookup, columnofs, vpw_dcvars, screen, I);
         }
-
     }
 
+    @Override
     public void setDetail(int detailshift) {
         if (detailshift == 0) {
             vpw_spanfunc = vpw_spanfunchi;
@@ -94,95 +137,158 @@ public abstract class VisplaneWorker<T, V> extends PlaneDrawer<T, V> implements
 
     @Override
     public void run() {
-        visplane_t pln = null; //visplane_t
-        // These must override the global ones
-        int light;
-        int x;
-        int stop;
-        int angle;
-
         // Now it's a good moment to set them.
         vpw_basexscale = vpvars.getBaseXScale();
         vpw_baseyscale = vpvars.getBaseYScale();
+        System.arraycopy(vpvars.BLANKCACHEDHEIGHT, 0, vpw_cachedheight, 0, vpw_cachedheight.length);
 
-        // TODO: find a better way to split work. As it is, it's very uneven
-        // and merged visplanes in particular are utterly dire.
-        for (int pl = this.id; pl < vpvars.lastvisplane; pl += NUMFLOORTHREADS) {
-            pln = vpvars.visplanes[pl];
-            // System.out.println(id +" : "+ pl);
+        final int skyflatnum = TexMan.getSkyFlatNum();
+        for (int task = scheduler.nextTask(id); task >= 0; task = scheduler.nextTask(id)) {
+            final visplane_t pln = vpvars.visplanes[scheduler.getPlane(task)];
 
-            if (pln.minx > pln.maxx) {
-                continue;
+            if (pln.picnum == skyflatnum) {
+                DrawSky(pln, scheduler.getFrom(task), scheduler.getTo(task));
+            } else {
+                DrawFlat(pln, scheduler.getFrom(task), scheduler.getTo(task));
             }
+        }
 
-            // sky flat
-            if (pln.picnum == TexMan.getSkyFlatNum()) {
-                // Cache skytexture stuff here. They aren't going to change while
-                // being drawn, after all, are they?
-                int skytexture = TexMan.getSkyTexture();
-                // MAES: these must be updated to keep up with screen size changes.
-                vpw_dcvars.viewheight = view.height;
-                vpw_dcvars.centery = view.centery;
-                vpw_dcvars.dc_texheight = TexMan.getTextureheight(skytexture) >> FRACBITS;
-                vpw_dcvars.dc_iscale = vpvars.getSkyScale() >> view.detailshift;
-
-                vpw_dcvars.dc_colormap = colormap.colormaps[Palettes.COLORMAP_FIXED];
-                vpw_dcvars.dc_texturemid = TexMan.getSkyTextureMid();
-                for (x = pln.minx; x <= pln.maxx; x++) {
-
-                    vpw_dcvars.dc_yl = pln.getTop(x);
-                    vpw_dcvars.dc_yh = pln.getBottom(x);
-
-                    if (vpw_dcvars.dc_yl <= vpw_dcvars.dc_yh) {
-                        angle = (int) (addAngles(view.angle, view.xtoviewangle[x]) >>> ANGLETOSKYSHIFT);
-                        vpw_dcvars.dc_x = x;
-                        // Optimized: texheight is going to be the same during normal skies drawing...right?
-                        vpw_dcvars.dc_source = TexMan.GetCachedColumn(TexMan.getSkyTexture(), angle);
-                        vpw_skyfunc.invoke();
-                    }
-                }
-                continue;
-            }
+        // We're done, wait.
+        try {
+            barrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            LOGGER.log(Level.SEVERE, "VisplaneWorker run failure", e);
+        }
+    }
 
-            // regular flat
-            vpw_dsvars.ds_source = TexMan.getSafeFlat(pln.picnum);
+    /**
+     * Columns minx to maxx of a sky plane
+     */
+    protected void DrawSky(visplane_t pln, int minx, int maxx) {
+        // Cache skytexture stuff here. They aren't going to change while
+        // being drawn, after all, are they?
+        final int skytexture = TexMan.getSkyTexture();
+        int angle;
 
-            vpw_planeheight = Math.abs(pln.height - view.z);
-            light = (pln.lightlevel >>> colormap.lightSegShift()) + colormap.extralight;
+        // MAES: these must be updated to keep up with screen size changes.
+        vpw_dcvars.viewheight = view.height;
+        vpw_dcvars.centery = view.centery;
+        vpw_dcvars.dc_texheight = TexMan.getTextureheight(skytexture) >> FRACBITS;
+        vpw_dcvars.dc_iscale = vpvars.getSkyScale() >> view.detailshift;
 
-            if (light >= colormap.lightLevels()) {
-                light = colormap.lightLevels() - 1;
-            }
+        // Same as R_DrawPlanes, see Settings.fix_sky_palette
+        if (DOOM.CM.equals(Settings.fix_sky_palette, Boolean.TRUE) && colormap.fixedcolormap != null) {
+            vpw_dcvars.dc_colormap = colormap.fixedcolormap;
+        } else {
+            vpw_dcvars.dc_colormap = colormap.colormaps[Palettes.COLORMAP_FIXED];
+        }
+        vpw_dcvars.dc_texturemid = TexMan.getSkyTextureMid();
 
-            if (light < 0) {
-                light = 0;
-            }
+        for (int x = minx; x <= maxx; x++) {
+            vpw_dcvars.dc_yl = pln.getTop(x);
+            vpw_dcvars.dc_yh = pln.getBottom(x);
 
-            vpw_planezlight = colormap.zlight[light];
+            if (vpw_dcvars.dc_yl <= vpw_dcvars.dc_yh) {
+                angle = (int) (addAngles(view.angle, view.xtoviewangle[x]) >>> ANGLETOSKYSHIFT);
+                vpw_dcvars.dc_x = x;
+                vpw_dcvars.dc_source = TexMan.GetCachedColumn(skytexture, angle);
+                vpw_skyfunc.invoke();
+            }
+        }
+    }
 
-            // We set those values at the border of a plane's top to a "sentinel" value...ok.
-            pln.setTop(pln.maxx + 1, (char) 0xffff);
-            pln.setTop(pln.minx - 1, (char) 0xffff);
+    /**
+     * Rows top to bottom of a flat. The sentinels at both ends have already been set
+     * by the scheduler.
+     */
+    protected void DrawFlat(visplane_t pln, int top, int bottom) {
+        int light;
 
-            stop = pln.maxx + 1;
+        vpw_dsvars.ds_source = TexMan.getSafeFlat(pln.picnum);
+        vpw_planeheight = Math.abs(pln.height - view.z);
+        light = (pln.lightlevel >> colormap.lightSegShift()) + colormap.extralight;
 
-            for (x = pln.minx; x <= stop; x++) {
-                MakeSpans(x, pln.getTop(x - 1),
-                        pln.getBottom(x - 1),
-                        pln.getTop(x),
-                        pln.getBottom(x));
-            }
+        if (light >= colormap.lightLevels()) {
+            light = colormap.lightLevels() - 1;
+        }
 
+        if (light < 0) {
+            light = 0;
         }
-        // We're done, wait.
 
-        try {
-            barrier.await();
-        } catch (InterruptedException | BrokenBarrierException e) {
-            LOGGER.log(Level.SEVERE, "VisplaneWorker run failure", e);
+        vpw_planezlight = colormap.zlight[light];
+        vpw_bandtop = top;
+        vpw_bandbottom = bottom;
+
+        final int stop = pln.maxx + 1;
+        for (int x = pln.minx; x <= stop; x++) {
+            MakeSpans(x, pln.getTop(x - 1), pln.getBottom(x - 1), pln.getTop(x), pln.getBottom(x));
         }
-        // TODO Auto-generated catch block
+    }
 
+    /**
+     * R_MakeSpans, restricted to the rows of the band being drawn. Clipping both
+     * columns to the band keeps the same spans on the rows inside it, and leaves
+     * those outside alone.
+     */
+    @Override
+    protected final void MakeSpans(int x, int t1, int b1, int t2, int b2) {
+        super.MakeSpans(x,
+                Math.max(t1, vpw_bandtop), Math.min(b1, vpw_bandbottom),
+                Math.max(t2, vpw_bandtop), Math.min(b2, vpw_bandbottom));
     }
 
-}
\ No newline at end of file
+    /**
+     * R_MapPlane
+     *
+     * Same as the serial one, but on the worker's own vars, functions and cache.
+     */
+    @Override
+    public void MapPlane(int y, int x1, int x2) {
+        // MAES: angle_t
+        int angle;
+        // fixed_t
+        int distance;
+        int length;
+        int index;
+
+        if (RANGECHECK) {
+            rangeCheck(x1, x2, y);
+        }
+
+        if (vpw_planeheight != vpw_cachedheight[y]) {
+            vpw_cachedheight[y] = vpw_planeheight;
+            distance = cacheddistance[y] = FixedMul(vpw_planeheight, vpvars.getYSlope()[y]);
+            vpw_dsvars.ds_xstep = cachedxstep[y] = FixedMul(distance, vpw_basexscale);
+            vpw_dsvars.ds_ystep = cachedystep[y] = FixedMul(distance, vpw_baseyscale);
+        } else {
+            distance = cacheddistance[y];
+            vpw_dsvars.ds_xstep = cachedxstep[y];
+            vpw_dsvars.ds_ystep = cachedystep[y];
+        }
+
+        length = FixedMul(distance, distscale[x1]);
+        angle = (int) (((view.angle + view.xtoviewangle[x1]) & BITS32) >>> ANGLETOFINESHIFT);
+        vpw_dsvars.ds_xfrac = view.x + FixedMul(finecosine[angle], length);
+        vpw_dsvars.ds_yfrac = -view.y - FixedMul(finesine[angle], length);
+
+        if (colormap.fixedcolormap != null) {
+            vpw_dsvars.ds_colormap = colormap.fixedcolormap;
+        } else {
+            index = distance >>> colormap.lightZShift();
+
+            if (index >= colormap.maxLightZ()) {
+                index = colormap.maxLightZ() - 1;
+            }
+
+            vpw_dsvars.ds_colormap = vpw_planezlight[index];
+        }
+
+        vpw_dsvars.ds_y = y;
+        vpw_dsvars.ds_x1 = x1;
+        vpw_dsvars.ds_x2 = x2;
+
+        // high or low detail
+        vpw_spanfunc.invoke();
+    }
+}
@@ -4,6 +4,8 @@ import data.sfxinfo_t;
 import data.sounds;
 import static data.sounds.S_sfx;
 import doom.DoomMain;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import mochadoom.Loggers;
@@ -360,6 +362,37 @@ public abstract class AbstractSoundDriver implements ISoundDriver {
         }
     }
 
+    /**
+     * Unsigned 8-bit to signed 16-bit, the way the volume tables did it at full volume.
+     * Linked sounds share the samples of the one they link to.
+     *
+     * Call after initSound8.
+     */
+    protected final short[][] expandSounds8() {
+        final short[][] expandedSounds = new short[NUMSFX][];
+        final Map<byte[], short[]> expanded = new IdentityHashMap<>();
+        for (int i = 1; i < NUMSFX; i++) {
+            final byte[] data = S_sfx[i].data;
+            if (data != null) {
+                expandedSounds[i] = expanded.computeIfAbsent(data, d -> {
+                    final short[] samples = new short[d.length];
+                    for (int j = 0; j < d.length; j++) {
+                        samples[j] = (short) (((d[j] & 0xFF) - 128) << 8);
+                    }
+                    return samples;
+                });
+            }
+        }
+        return expandedSounds;
+    }
+
+    /**
+     * Volume 0..127 as a 1.15 fixed point multiplier, for the 16-bit samples
+     */
+    protected static int gain(int vol) {
+        return (vol << 15) / 127;
+    }
+
     /**
      * This is only the common part of InitSound that caches sound data in
      * 16-bit, stereo format (used by Audiolines). INTO sfxenum_t.
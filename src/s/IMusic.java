@@ -3,6 +3,8 @@ package s;
 //
 import doom.CVarManager;
 import doom.CommandVariable;
+import doom.DoomMain;
+import java.util.Optional;
 
 //  MUSIC I/O
 //
@@ -40,8 +42,12 @@ public interface IMusic {
     /** See above (register), then think backwards */
     void UnRegisterSong(int handle);
 
-    public static IMusic chooseModule(CVarManager CVM) {
-        if (CVM.bool(CommandVariable.NOMUSIC) || CVM.bool(CommandVariable.NOSOUND)) {
+    public static IMusic chooseModule(DoomMain<?, ?> DM, CVarManager CVM) {
+        final Optional<String> renderAudio = CVM.get(CommandVariable.RENDERAUDIO, String.class, 0);
+        if (renderAudio.isPresent()) {
+            // out.wav gets its music in out.mid
+            return new OfflineMusicModule(DM, renderAudio.get().replaceFirst("(\\.[^./\\\\]*)?$", ".mid"));
+        } else if (CVM.bool(CommandVariable.NOMUSIC) || CVM.bool(CommandVariable.NOSOUND)) {
             return new DummyMusic();
         } else {
             return new DavidMusicModule();
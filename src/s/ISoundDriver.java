@@ -5,6 +5,7 @@ import data.sounds.sfxenum_t;
 import doom.CVarManager;
 import doom.CommandVariable;
 import doom.DoomMain;
+import java.util.Optional;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import mochadoom.Loggers;
@@ -80,7 +81,10 @@ public interface ISoundDriver {
 
     public static ISoundDriver chooseModule(DoomMain<?, ?> DM, CVarManager CVM) {
         final ISoundDriver driver;
-        if (CVM.bool(CommandVariable.NOSFX) || CVM.bool(CommandVariable.NOSOUND)) {
+        final Optional<String> renderAudio = CVM.get(CommandVariable.RENDERAUDIO, String.class, 0);
+        if (renderAudio.isPresent()) {
+            driver = new OfflineSoundDriver(DM, DM.numChannels, renderAudio.get());
+        } else if (CVM.bool(CommandVariable.NOSFX) || CVM.bool(CommandVariable.NOSOUND)) {
             driver = new DummySFX();
         } else {
             // Switch between possible sound drivers.
@@ -0,0 +1,309 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package s;
+
+import static data.Defines.TICRATE;
+import doom.DoomMain;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MetaMessage;
+import javax.sound.midi.MidiEvent;
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequence;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.SysexMessage;
+import javax.sound.midi.Track;
+import mochadoom.Loggers;
+
+/**
+ * Plays the music of a -renderaudio run into a MIDI file, next to the sound effects' WAV.
+ *
+ * The JDK has no public way to run its synthesizer slower or faster than real time,
+ * so instead of audio, the module writes out what the synthesizer would have been sent
+ * and when: songs converted by MusReader, looped, paused and stopped on the game's clock,
+ * with volume changes scaled by the same VolumeScalingReceiver DavidMusicModule uses.
+ * The file starts at game tic 0 like the WAV does, so any offline synthesizer can
+ * render it to the same timeline, e.g. fluidsynth -F music.wav soundfont.sf2 out.mid
+ *
+ * @author Good Sign
+ */
+public class OfflineMusicModule implements IMusic {
+
+    private static final Logger LOGGER = Loggers.getLogger(OfflineMusicModule.class.getName());
+
+    /** Ticks per second of the file: a tic is 12 ticks, a MUS tick is 3 */
+    private static final int RESOLUTION = 420;
+    /** A quarter note per second, so a quarter note is RESOLUTION ticks */
+    private static final int TEMPO = 1000000;
+
+    private final DoomMain<?, ?> DM;
+    private final String fileName;
+
+    private final Sequence output;
+    private final Track track;
+    private final VolumeScalingReceiver receiver;
+
+    /** Events of the registered song, in file ticks from its start */
+    private long[] songTicks = new long[0];
+    private MidiMessage[] songMessages = new MidiMessage[0];
+    private long songLength;
+
+    private boolean playing, looping;
+    /** File tick the current loop of the song started at */
+    private long loopStart;
+    /** Next event of the song to send */
+    private int next;
+    private long pausedAt = -1;
+
+    /** File tick of what the receiver is sent */
+    private long now;
+    private boolean finished;
+
+    public OfflineMusicModule(DoomMain<?, ?> DM, String fileName) {
+        this.DM = DM;
+        this.fileName = fileName;
+        try {
+            this.output = new Sequence(Sequence.PPQ, RESOLUTION);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+        this.track = output.createTrack();
+        this.receiver = new VolumeScalingReceiver(new Recorder());
+    }
+
+    @Override
+    public void InitMusic() {
+        try {
+            final MetaMessage tempo = new MetaMessage();
+            tempo.setMessage(0x51, new byte[]{(byte) (TEMPO >> 16), (byte) (TEMPO >> 8), (byte) TEMPO}, 3);
+            track.add(new MidiEvent(tempo, 0));
+            // GM System On, as DavidMusicModule sends it
+            final byte[] gmOn = {(byte) 0xf0, (byte) 0x7e, (byte) 0x7f, (byte) 9, (byte) 1, (byte) 0xf7};
+            receiver.send(new SysexMessage(gmOn, gmOn.length), -1);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::ShutdownMusic, "Music render shutdown"));
+        LOGGER.log(Level.INFO, String.format("Rendering music to %s", fileName));
+    }
+
+    @Override
+    public synchronized void ShutdownMusic() {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        advance(clock());
+        allNotesOff();
+        try {
+            MidiSystem.write(output, 0, new File(fileName));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, String.format("Could not write %s", fileName), e);
+        }
+    }
+
+    @Override
+    public synchronized void SetMusicVolume(int volume) {
+        advance(clock());
+        receiver.setGlobalVolume(volume / 127f);
+    }
+
+    @Override
+    public synchronized void PauseSong(int handle) {
+        if (playing) {
+            pausedAt = clock();
+            advance(pausedAt);
+            playing = false;
+            allNotesOff();
+        }
+    }
+
+    @Override
+    public synchronized void ResumeSong(int handle) {
+        if (!playing && pausedAt >= 0 && songMessages.length > 0) {
+            loopStart += clock() - pausedAt;
+            pausedAt = -1;
+            playing = true;
+        }
+    }
+
+    @Override
+    public synchronized int RegisterSong(byte[] data) {
+        StopSong(0);
+        try {
+            Sequence sequence;
+            try {
+                sequence = MidiSystem.getSequence(new ByteArrayInputStream(data));
+            } catch (InvalidMidiDataException ex) {
+                sequence = MusReader.getSequence(new ByteArrayInputStream(data));
+            }
+            load(sequence);
+        } catch (IOException | InvalidMidiDataException e) {
+            LOGGER.log(Level.SEVERE, "RegisterSong failure", e);
+            return -1;
+        }
+        return 0;
+    }
+
+    @Override
+    public synchronized void PlaySong(int handle, boolean looping) {
+        StopSong(handle);
+        this.looping = looping;
+        this.loopStart = clock();
+        this.next = 0;
+        this.pausedAt = -1;
+        this.playing = true;
+        this.now = loopStart;
+        // pitch bend range of 2 semitones, as DavidMusicModule sets it
+        for (int chan = 0; chan < 16; chan++) {
+            controlChange(chan, 101, 0);
+            controlChange(chan, 100, 0);
+            controlChange(chan, 6, 2);
+        }
+    }
+
+    @Override
+    public synchronized void StopSong(int handle) {
+        if (playing) {
+            advance(clock());
+            playing = false;
+            allNotesOff();
+        }
+        pausedAt = -1;
+    }
+
+    @Override
+    public synchronized void UnRegisterSong(int handle) {
+        StopSong(handle);
+        songTicks = new long[0];
+        songMessages = new MidiMessage[0];
+        songLength = 0;
+    }
+
+    /**
+     * The game's clock in file ticks
+     */
+    private long clock() {
+        return (long) DM.gametic * RESOLUTION / TICRATE;
+    }
+
+    /**
+     * Sends the song's events up to, not including, the tick
+     */
+    private void advance(long tick) {
+        while (playing) {
+            while (next < songTicks.length && loopStart + songTicks[next] < tick) {
+                now = loopStart + songTicks[next];
+                receiver.send(songMessages[next++], -1);
+            }
+
+            if (next < songTicks.length || !looping || songLength <= 0 || loopStart + songLength > tick) {
+                break;
+            }
+
+            loopStart += songLength;
+            next = 0;
+        }
+        now = tick;
+    }
+
+    private void allNotesOff() {
+        for (int chan = 0; chan < 16; chan++) {
+            controlChange(chan, 123, 0);
+        }
+    }
+
+    private void controlChange(int chan, int control, int value) {
+        try {
+            receiver.send(new ShortMessage(ShortMessage.CONTROL_CHANGE, chan, control, value), -1);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Flattens the tracks of the song in time order, and turns its ticks into file ticks
+     */
+    private void load(Sequence sequence) {
+        final List<MidiEvent> events = new ArrayList<>();
+        for (Track t: sequence.getTracks()) {
+            for (int i = 0; i < t.size(); i++) {
+                events.add(t.get(i));
+            }
+        }
+        // stable, so events at the same tick keep their order
+        events.sort(Comparator.comparingLong(MidiEvent::getTick));
+
+        final List<MidiMessage> messages = new ArrayList<>();
+        final List<Long> ticks = new ArrayList<>();
+        final boolean ppq = sequence.getDivisionType() == Sequence.PPQ;
+        final double ticksPerSecond = ppq ? 0 : sequence.getDivisionType() * sequence.getResolution();
+        // for PPQ, microseconds are summed up tempo change by tempo change
+        long tempo = 500000, lastTick = 0;
+        double micros = 0;
+        for (MidiEvent e: events) {
+            if (ppq) {
+                micros += (double) (e.getTick() - lastTick) * tempo / sequence.getResolution();
+                lastTick = e.getTick();
+            } else {
+                micros = e.getTick() * 1e6 / ticksPerSecond;
+            }
+
+            final MidiMessage m = e.getMessage();
+            if (m instanceof MetaMessage) {
+                final MetaMessage meta = (MetaMessage) m;
+                if (meta.getType() == 0x51 && meta.getData().length == 3) {
+                    final byte[] d = meta.getData();
+                    tempo = ((d[0] & 0xFF) << 16) | ((d[1] & 0xFF) << 8) | (d[2] & 0xFF);
+                }
+                // the file has its own tempo and end
+                continue;
+            }
+
+            messages.add(m);
+            ticks.add(Math.round(micros * RESOLUTION / 1e6));
+        }
+
+        songMessages = messages.toArray(new MidiMessage[0]);
+        songTicks = ticks.stream().mapToLong(Long::longValue).toArray();
+        songLength = Math.round(micros * RESOLUTION / 1e6);
+    }
+
+    /**
+     * Puts whatever it is sent into the file, at the current tick
+     */
+    private class Recorder implements Receiver {
+
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            track.add(new MidiEvent(message, now));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
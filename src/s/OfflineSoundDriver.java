@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package s;
+
+import static data.Defines.TICRATE;
+import data.sounds.sfxenum_t;
+import doom.DoomMain;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mochadoom.Loggers;
+
+/**
+ * Mixes sound effects into a WAV file instead of an audio line, for -renderaudio.
+ *
+ * There is no mixer thread and no wall clock: every UpdateSound mixes exactly as many
+ * samples as the game tics run since the last one are worth, 630 per tic at 22050 Hz.
+ * A demo renders as fast as the game runs it, and the same demo always gives the same
+ * file, byte for byte, since mixing is all integer and driven only by the game.
+ *
+ * The mix itself is the one of SuperDoomSoundDriver: 16-bit samples times a gain
+ * per channel, clamped once per sample.
+ *
+ * @author Good Sign
+ */
+public class OfflineSoundDriver extends AbstractSoundDriver {
+
+    private static final Logger LOGGER = Loggers.getLogger(OfflineSoundDriver.class.getName());
+
+    private static final int HEADER_SIZE = 44;
+
+    private final String fileName;
+    private FileChannel out;
+
+    /** Samples written so far, per side */
+    private long samples;
+
+    private short[][] cachedSounds;
+
+    private final short[][] channels;
+    private final int[] p_channels;
+    private final int[] channelsend;
+    private final int[] channelstep;
+    private final int[] channelstepremainder;
+    private final int[] channelleftgain;
+    private final int[] channelrightgain;
+
+    private final int[] mixleft = new int[SAMPLECOUNT];
+    private final int[] mixright = new int[SAMPLECOUNT];
+    private final ByteBuffer chunk = ByteBuffer.allocate(MIXBUFFERSIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+    public OfflineSoundDriver(DoomMain<?, ?> DM, int numChannels, String fileName) {
+        super(DM, numChannels);
+        this.fileName = fileName;
+        this.channels = new short[numChannels][];
+        this.p_channels = new int[numChannels];
+        this.channelsend = new int[numChannels];
+        this.channelstep = new int[numChannels];
+        this.channelstepremainder = new int[numChannels];
+        this.channelleftgain = new int[numChannels];
+        this.channelrightgain = new int[numChannels];
+    }
+
+    @Override
+    public boolean InitSound() {
+        try {
+            out = FileChannel.open(Paths.get(fileName), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            // sizes are filled in at ShutdownSound
+            out.write(header(0));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, String.format("Could not create %s", fileName), e);
+            return false;
+        }
+
+        super.initSound8();
+        cachedSounds = expandSounds8();
+
+        // The game quits through System.exit, which is the only reliable place to finish the file
+        Runtime.getRuntime().addShutdownHook(new Thread(this::ShutdownSound, "Audio render shutdown"));
+
+        LOGGER.log(Level.INFO, String.format("I_InitSound: rendering sound to %s", fileName));
+        return true;
+    }
+
+    /**
+     * Mixes and writes the samples of the tics run since the last call
+     */
+    @Override
+    public synchronized void UpdateSound() {
+        if (out == null) {
+            return;
+        }
+
+        final long target = (long) DM.gametic * SAMPLERATE / TICRATE;
+        try {
+            while (samples < target) {
+                final int count = (int) Math.min(SAMPLECOUNT, target - samples);
+                Arrays.fill(mixleft, 0, count, 0);
+                Arrays.fill(mixright, 0, count, 0);
+                for (int chan = 0; chan < numChannels; chan++) {
+                    if (channels[chan] != null) {
+                        mixChannel(chan, count);
+                    }
+                }
+
+                chunk.clear();
+                for (int i = 0; i < count; i++) {
+                    chunk.putShort((short) Math.max(-0x8000, Math.min(0x7fff, mixleft[i])));
+                    chunk.putShort((short) Math.max(-0x8000, Math.min(0x7fff, mixright[i])));
+                }
+                chunk.flip();
+                while (chunk.hasRemaining()) {
+                    out.write(chunk);
+                }
+                samples += count;
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, String.format("Could not write %s", fileName), e);
+            closeQuietly();
+        }
+    }
+
+    private void mixChannel(int chan, int count) {
+        final short[] data = channels[chan];
+        final int leftgain = channelleftgain[chan];
+        final int rightgain = channelrightgain[chan];
+        final int end = Math.min(channelsend[chan], data.length);
+        final int step = channelstep[chan];
+        int pointer = p_channels[chan];
+        int remainder = channelstepremainder[chan];
+
+        for (int i = 0; i < count && pointer < end; i++) {
+            final int sample = data[pointer];
+            mixleft[i] += (sample * leftgain) >> 15;
+            mixright[i] += (sample * rightgain) >> 15;
+            remainder += step;
+            pointer += remainder >> 16;
+            remainder &= 0xFFFF;
+        }
+
+        if (pointer >= end) {
+            channels[chan] = null;
+            pointer = 0;
+        }
+        p_channels[chan] = pointer;
+        channelstepremainder[chan] = remainder;
+    }
+
+    /**
+     * Everything was written by UpdateSound already
+     */
+    @Override
+    public void SubmitSound() {
+    }
+
+    /**
+     * Fills in the sizes of the header and closes the file. Safe to call more than once.
+     */
+    @Override
+    public synchronized void ShutdownSound() {
+        if (out == null) {
+            return;
+        }
+
+        try {
+            out.write(header(samples * BUFMUL), 0);
+            LOGGER.log(Level.INFO, String.format("Rendered %d samples (%d tics) to %s",
+                    samples, samples * TICRATE / SAMPLERATE, fileName));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, String.format("Could not finish %s", fileName), e);
+        }
+        closeQuietly();
+    }
+
+    private void closeQuietly() {
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not close %s", fileName), e);
+        }
+        out = null;
+    }
+
+    /**
+     * RIFF header of 16-bit stereo PCM
+     */
+    private static ByteBuffer header(long dataSize) {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(new byte[]{'R', 'I', 'F', 'F'}).putInt((int) (dataSize + HEADER_SIZE - 8));
+        header.put(new byte[]{'W', 'A', 'V', 'E'});
+        header.put(new byte[]{'f', 'm', 't', ' '}).putInt(16);
+        header.putShort((short) 1); // PCM
+        header.putShort((short) 2);
+        header.putInt(SAMPLERATE);
+        header.putInt(SAMPLERATE * BUFMUL);
+        header.putShort((short) BUFMUL);
+        header.putShort((short) SAMPLESIZE);
+        header.put(new byte[]{'d', 'a', 't', 'a'}).putInt((int) dataSize);
+        header.flip();
+        return header;
+    }
+
+    @Override
+    public void SetChannels(int numChannels) {
+        Arrays.fill(channels, null);
+        generateStepTable(128);
+    }
+
+    @Override
+    protected synchronized int addsfx(int sfxid, int volume, int step, int seperation) {
+        int slot = -1;
+
+        // Chainsaw, pistol and moving floors cut themselves off.
+        if ((sfxid >= sfxenum_t.sfx_sawup.ordinal() && sfxid <= sfxenum_t.sfx_sawhit.ordinal())
+                || sfxid == sfxenum_t.sfx_stnmov.ordinal()
+                || sfxid == sfxenum_t.sfx_pistol.ordinal()) {
+            for (int i = 0; i < numChannels; i++) {
+                if (channels[i] != null && channelids[i] == sfxid) {
+                    slot = i;
+                    break;
+                }
+            }
+        }
+
+        // Else a free channel, or the one playing for the longest.
+        if (slot < 0) {
+            int oldest = Integer.MAX_VALUE;
+            for (int i = 0; i < numChannels; i++) {
+                if (channels[i] == null) {
+                    slot = i;
+                    break;
+                }
+                if (channelstart[i] < oldest) {
+                    oldest = channelstart[i];
+                    slot = i;
+                }
+            }
+        }
+
+        channels[slot] = cachedSounds[sfxid];
+        p_channels[slot] = 0;
+        channelsend[slot] = cachedSounds[sfxid].length;
+        channelstep[slot] = step;
+        channelstepremainder[slot] = 0;
+        channelstart[slot] = DM.gametic;
+        channelids[slot] = sfxid;
+
+        if (handlenums == 0) {
+            handlenums = MAXHANDLES;
+        }
+        channelhandles[slot] = handlenums--;
+
+        setGains(slot, volume, seperation + 1);
+        return channelhandles[slot];
+    }
+
+    private void setGains(int chan, int vol, int sep) {
+        final int leftvol = vol - ((vol * sep * sep) >> 16);
+        sep -= 257;
+        final int rightvol = vol - ((vol * sep * sep) >> 16);
+        channelleftgain[chan] = gain(Math.max(0, Math.min(127, leftvol)));
+        channelrightgain[chan] = gain(Math.max(0, Math.min(127, rightvol)));
+    }
+
+    private int getChannelFromHandle(int handle) {
+        for (int i = 0; i < numChannels; i++) {
+            if (channelhandles[i] == handle) {
+                return i;
+            }
+        }
+        return BUSY_HANDLE;
+    }
+
+    @Override
+    public synchronized void StopSound(int handle) {
+        final int chan = getChannelFromHandle(handle);
+        if (chan >= 0) {
+            channels[chan] = null;
+            p_channels[chan] = 0;
+            channelhandles[chan] = IDLE_HANDLE;
+        }
+    }
+
+    @Override
+    public synchronized boolean SoundIsPlaying(int handle) {
+        final int chan = getChannelFromHandle(handle);
+        return chan >= 0 && channels[chan] != null;
+    }
+
+    @Override
+    public synchronized void UpdateSoundParams(int handle, int vol, int sep, int pitch) {
+        final int chan = getChannelFromHandle(handle);
+        if (chan >= 0) {
+            setGains(chan, vol, sep);
+            channelstep[chan] = steptable[pitch];
+        }
+    }
+}
@@ -1,21 +1,20 @@
 package s;
 
-import static data.sounds.S_sfx;
+import static data.Defines.TICRATE;
 import data.sounds.sfxenum_t;
 import doom.DoomMain;
-import java.util.HashMap;
-import java.util.Timer;
-import java.util.TimerTask;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.Semaphore;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.DataLine;
 import javax.sound.sampled.SourceDataLine;
+import m.Settings;
+import mochadoom.Engine;
 import mochadoom.Loggers;
-import pooling.AudioChunkPool;
+import pooling.SpscRing;
 
 /**
  * A spiffy new sound system, based on the Classic sound driver.
@@ -36,17 +35,24 @@ import pooling.AudioChunkPool;
  * CONS:
  * a) All those of ClassicSoundDriver plus regarding timing accuracy.
  *
+ * The game thread hands mix messages to the mixer, and the mixer hands mixed
+ * chunks to playback, through lock-free rings of objects made up front, so
+ * starting a sound never blocks or allocates. Chunks are a tic long, and the
+ * audio line holds sound_latency of them: that, give or take a couple of
+ * chunks on their way, is how late a sound starts.
+ *
  * @author Maes
  */
 public class SuperDoomSoundDriver extends AbstractSoundDriver {
 
     private static final Logger LOGGER = Loggers.getLogger(SuperDoomSoundDriver.class.getName());
 
-    protected final Semaphore produce;
-
-    protected final Semaphore consume;
+    /** Tics of sound the audio line holds, at least 1 */
+    protected static final int LATENCY = Math.max(1, Engine.getConfig().getValue(Settings.sound_latency, Integer.class));
 
-    protected final Semaphore update_mixer;
+    /** Samples of a chunk: a tic's worth */
+    protected static final int CHUNK_SAMPLES = SAMPLERATE / TICRATE;
+    protected static final int CHUNK_BYTES = CHUNK_SAMPLES * BUFMUL;
 
     protected int chunk = 0;
 
@@ -55,25 +61,23 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
     // The one and only line
     protected SourceDataLine line = null;
 
-    protected HashMap<Integer, byte[]> cachedSounds
-            = new HashMap<>();
+    /**
+     * Every sound effect in signed 16-bit, expanded once at InitSound, so mixing
+     * is a multiply by the channel gain instead of a volume table lookup per sample
+     */
+    protected short[][] cachedSounds;
 
-    protected final Timer MIXTIMER;
+    /**
+     * Mixed chunks on their way from the mixer to playback. Two are enough: one being
+     * written to the line, which paces everything, and the next one ready behind it.
+     */
+    protected final SpscRing<byte[]> chunks = new SpscRing<>(2, byte[][]::new, () -> new byte[CHUNK_BYTES]);
 
     public SuperDoomSoundDriver(DoomMain<?, ?> DM, int numChannels) {
         super(DM, numChannels);
         channels = new boolean[numChannels];
-        produce = new Semaphore(1);
-        consume = new Semaphore(1);
-        update_mixer = new Semaphore(1);
-        produce.drainPermits();
-        update_mixer.drainPermits();
+        pendingStops = new boolean[numChannels];
         this.MIXSRV = new MixServer(numChannels);
-        MIXTIMER = new Timer(true);
-        // Sound tics every 1/35th of a second. Grossly
-        // inaccurate under Windows though, will get rounded
-        // down to the closest multiple of 15 or 16 ms.
-        MIXTIMER.schedule(new SoundTimer(), 0, SOUND_PERIOD);
     }
 
     /** These are still defined here to decouple them from the mixer's
@@ -81,6 +85,9 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
      */
     protected volatile boolean[] channels;
 
+    /** Channels stopped while the mixer had no room for the message, game thread only */
+    protected final boolean[] pendingStops;
+
     protected volatile boolean mixed = false;
 
     /**
@@ -98,6 +105,12 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
         // carry out at least currently enqueued mixing messages, regardless
         // of how badly the engine lags.
 
+        // Stops the mixer had no room for are tried again every tic.
+        for (int chan = 0; chan < numChannels; chan++) {
+            if (pendingStops[chan] && !publishStop(chan)) {
+                break;
+            }
+        }
     }
 
     /**
@@ -145,36 +158,38 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
         if (AudioSystem.isLineSupported(info))
             try {
             line = (SourceDataLine) AudioSystem.getSourceDataLine(format);
-            line.open(format, AUDIOLINE_BUFFER);
+            line.open(format, LATENCY * CHUNK_BYTES);
         } catch (Exception e) {
             LOGGER.log(Level.SEVERE, "Could not play signed 16 data", e);
             return false;
         }
 
         if (line != null) {
-            LOGGER.log(Level.INFO, "configured audio device");
+            LOGGER.log(Level.INFO, String.format("configured audio device, %d bytes buffered for %d tics",
+                    line.getBufferSize(), LATENCY));
             line.start();
         } else {
             LOGGER.log(Level.SEVERE, "could not configure audio device");
             return false;
         }
 
-        SOUNDSRV = new PlaybackServer(line);
-        SOUNDTHREAD = new Thread(SOUNDSRV);
-        SOUNDTHREAD.setDaemon(true);
-        SOUNDTHREAD.start();
-        // Vroom!
-        MIXTHREAD = new Thread(MIXSRV);
-        MIXTHREAD.setDaemon(true);
-        MIXTHREAD.start();
-
         // Initialize external data (all sounds) at start, keep static.
         LOGGER.log(Level.INFO, "I_InitSound");
 
         super.initSound8();
+        cachedSounds = expandSounds8();
 
         LOGGER.log(Level.INFO, "pre-cached all sound data");
 
+        SOUNDSRV = new PlaybackServer(line);
+        SOUNDTHREAD = new Thread(SOUNDSRV, "Sound playback");
+        SOUNDTHREAD.setDaemon(true);
+        // Vroom!
+        MIXTHREAD = new Thread(MIXSRV, "Sound mixer");
+        MIXTHREAD.setDaemon(true);
+        SOUNDTHREAD.start();
+        MIXTHREAD.start();
+
         // Finished initialization.
         LOGGER.log(Level.INFO, "I_InitSound: sound module ready");
 
@@ -196,6 +211,12 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
 
         int broken = -1;
 
+        final MixMessage m = claimMixMessage();
+        if (m == null) {
+            // The mixer is too far behind to take it, better skip one sound than wait.
+            return rc;
+        }
+
         // Chainsaw troubles.
         // Play these sound effects only one at a time.
         if (sfxid == sfxenum_t.sfx_sawup.ordinal()
@@ -208,10 +229,7 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
             for (i = 0; i < numChannels; i++) {
                 // Active, and using the same SFX?
                 if (channels[i] && (channelids[i] == sfxid)) {
-                    // Reset.
-
-                    MixMessage m = new MixMessage();
-                    m.stop = true;
+                    // Reset: the new sound takes over the channel.
 
                     // We are sure that iff,
                     // there will only be one.
@@ -245,20 +263,20 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
             slot = i;
         }
 
-        MixMessage m = new MixMessage();
-
         // Okay, in the less recent channel,
         // we will handle the new SFX.
         // Set pointer to raw data.
         channels[slot] = true;
+        // the new sound takes the channel over in the mixer, a stop still owed to it is moot
+        pendingStops[slot] = false;
         m.channel = slot;
-        m.data = S_sfx[sfxid].data;
+        m.data = cachedSounds[sfxid];
 
         // MAES: if you don't zero-out the channel pointer here, it gets ugly
         m.pointer = 0;
 
-        // Set pointer to end of raw data.
-        m.end = lengths[sfxid];
+        // Set pointer to end of raw data. Not lengths[sfxid], that's 0 for linked sounds.
+        m.end = m.data.length;
 
         // Reset current handle number, limited to 0..100.
         if (handlenums == 0) // was !handlenums, so it's actually 1...100?
@@ -301,10 +319,8 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
             DM.doomSystem.Error("leftvol out of bounds");
         }
 
-        // Get the proper lookup table piece
-        // for this volume level???
-        m.leftvol_lookup = vol_lookup[leftvol];
-        m.rightvol_lookup = vol_lookup[rightvol];
+        m.leftgain = gain(leftvol);
+        m.rightgain = gain(rightvol);
 
         // Preserve sound SFX id,
         // e.g. for avoiding duplicates of chainsaw.
@@ -316,10 +332,10 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
         if (D) {
             LOGGER.log(Level.FINE, String.format(
                     "Playing sfxid %d handle %d length %d vol %d on channel %d",
-                    sfxid, rc, S_sfx[sfxid].data.length, volume, slot));
+                    sfxid, rc, m.data.length, volume, slot));
         }
 
-        MIXSRV.submitMixMessage(m);
+        MIXSRV.mixmessages.publish();
 
         // You tell me.
         return rc;
@@ -330,10 +346,6 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
 
         boolean done;
 
-        // Unlock sound thread if it's waiting.
-        produce.release();
-        update_mixer.release();
-
         int i = 0;
         do {
             done = true;
@@ -343,14 +355,15 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
             }
             //System.out.println(done+" "+this.channelStatus());
 
+            Thread.onSpinWait();
         } while (!done);
 
         this.line.flush();
 
         SOUNDSRV.terminate = true;
         MIXSRV.terminate = true;
-        produce.release();
-        update_mixer.release();
+        LockSupport.unpark(SOUNDTHREAD);
+        LockSupport.unpark(MIXTHREAD);
         try {
             SOUNDTHREAD.join();
             MIXTHREAD.join();
@@ -366,7 +379,7 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
     protected class PlaybackServer
             implements Runnable {
 
-        public boolean terminate = false;
+        public volatile boolean terminate = false;
 
         public PlaybackServer(SourceDataLine line) {
             this.auline = line;
@@ -374,57 +387,23 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
 
         private SourceDataLine auline;
 
-        private ArrayBlockingQueue<AudioChunk> audiochunks
-                = new ArrayBlockingQueue<>(BUFFER_CHUNKS * 2);
-
-        public void addChunk(AudioChunk chunk) {
-            audiochunks.offer(chunk);
-        }
-
-        public volatile int currstate = 0;
-
         public void run() {
 
             while (!terminate) {
-
-                // while (timing[mixstate]<=mytime){
-                // Try acquiring a produce permit before going on.
-                try {
-                    //System.err.print("Waiting for a permit...");
-                    produce.acquire();
-                    //System.err.print("...got it\n");
-                } catch (InterruptedException e) {
-                    // Well, ouch.
-                    LOGGER.log(Level.SEVERE, "PlaybackServer run failure", e);
+                final byte[] chunk = chunks.peek();
+                if (chunk == null) {
+                    // The mixer is behind, it wakes us up with the next chunk
+                    LockSupport.park(this);
+                    continue;
                 }
 
-                int chunks = 0;
+                // Blocks for as long as the line is full, which is what
+                // keeps the mixer no more than a chunk or two ahead of it.
+                auline.write(chunk, 0, CHUNK_BYTES);
 
-                // System.err.printf("Audio queue has %d chunks\n",audiochunks.size());
-                // Play back only at most a given number of chunks once you reach
-                // this spot.
-                int atMost = Math.min(ISoundDriver.BUFFER_CHUNKS, audiochunks.size());
-
-                while (atMost-- > 0) {
-
-                    AudioChunk chunk = null;
-                    try {
-                        chunk = audiochunks.take();
-                    } catch (InterruptedException e1) {
-                        // Should not block
-                    }
-                    // Play back all chunks present in a buffer ASAP
-                    auline.write(chunk.buffer, 0, MIXBUFFERSIZE);
-                    chunks++;
-                    // No matter what, give the chunk back!
-                    chunk.free = true;
-                    audiochunkpool.checkIn(chunk);
-                }
-
-                //System.err.println(">>>>>>>>>>>>>>>>> CHUNKS " +chunks);
-                // Signal that we consumed a whole buffer and we are ready for
-                // another one.
-                consume.release();
+                // No matter what, give the chunk back!
+                chunks.release();
+                LockSupport.unpark(MIXTHREAD);
             }
         }
     }
@@ -451,11 +430,11 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
         public int remainder;
         public int end;
         public int channel;
-        public byte[] data;
+        public short[] data;
         public int step;
         public int stepremainder;
-        public int[] leftvol_lookup;
-        public int[] rightvol_lookup;
+        public int leftgain;
+        public int rightgain;
 
         public int pointer;
 
@@ -470,7 +449,8 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
     protected class MixServer
             implements Runnable {
 
-        private final ArrayBlockingQueue<MixMessage> mixmessages;
+        /** From the game thread, the only one starting, stopping and changing sounds */
+        final SpscRing<MixMessage> mixmessages;
 
         /**
          * MAES: we'll have to use this for actual pointing. channels[] holds just
@@ -483,256 +463,144 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
          */
         protected int[] channelsend;
 
-        private final byte[][] channels;
+        private final short[][] channels;
         /** The channel step amount... */
         protected final int[] channelstep;
 
         /** ... and a 0.16 bit remainder of last step. */
         protected final int[] channelstepremainder;
 
-        protected final int[][] channelrightvol_lookup;
-        protected final int[][] channelleftvol_lookup;
+        protected final int[] channelrightgain;
+        protected final int[] channelleftgain;
 
-        private volatile boolean update = false;
+        /** Left and right sums of a chunk, built up one channel at a time */
+        private final int[] mixleft = new int[CHUNK_SAMPLES];
+        private final int[] mixright = new int[CHUNK_SAMPLES];
 
         public MixServer(int numChannels) {
             // We can put only so many messages "on hold"
-            mixmessages = new ArrayBlockingQueue<>(35 * numChannels);
+            mixmessages = new SpscRing<>(35 * numChannels, MixMessage[]::new, MixMessage::new);
             this.p_channels = new int[numChannels];
-            this.channels = new byte[numChannels][];
+            this.channels = new short[numChannels][];
             this.channelstepremainder = new int[numChannels];
             this.channelsend = new int[numChannels];
             this.channelstep = new int[numChannels];
-            this.channelleftvol_lookup = new int[numChannels][];
-            this.channelrightvol_lookup = new int[numChannels][];
-        }
-
-        /** Adds a channel mixing message to the queue */
-        public void submitMixMessage(MixMessage m) {
-            try {
-                this.mixmessages.add(m);
-            } catch (IllegalStateException e) {
-                // Queue full. Force clear (VERY rare).
-                mixmessages.clear();
-                mixmessages.add(m);
-            }
+            this.channelleftgain = new int[numChannels];
+            this.channelrightgain = new int[numChannels];
         }
 
-        public boolean terminate = false;
+        public volatile boolean terminate = false;
 
         @Override
         public void run() {
 
-            // Mix current sound data.
-            // Data, from raw sound, for right and left.
-            int sample = 0;
-            int dl;
-            int dr;
-
-            // Pointers in global mixbuffer, left, right, end.
-            // Maes: those were explicitly signed short pointers...
-            int leftout;
-            int rightout;
-
-            // Step in mixbuffer, left and right, thus two.
-            final int step = 4;
-
-            // Mixing channel index.
-            int chan;
-
-            // Determine end, for left channel only
-            // (right channel is implicit).
-            // MAES: this implies that the buffer will only mix
-            // that many samples at a time, and that the size is just right.
-            // Thus, it must be flushed (p_mixbuffer=0) before reusing it.
-            final int leftend = SAMPLECOUNT * step;
-
             // Mix the next chunk, regardless of what the rest of the game is doing.
+            // This allows continuing mixing even if the main game loop
+            // is stalled. This will result in continuous sounds,
+            // rather than choppy interruptions.
             while (!terminate) {
-
-                // POINTERS to Left and right channel
-                // which are in global mixbuffer, alternating.
-                leftout = 0;
-                rightout = 2;
-
-                // Wait on interrupt semaphore anyway before draining queue.
-                // This allows continuing mixing even if the main game loop
-                // is stalled. This will result in continuous sounds,
-                // rather than choppy interruptions.
-                try {
-                    //System.err.print("Waiting on semaphore...");
-                    update_mixer.acquire();
-                    //System.err.print("...broke free\n");
-                } catch (InterruptedException e) {
-                    // Nothing to do. Suck it down.
+                final byte[] out = chunks.claim();
+                if (out == null) {
+                    // Far enough ahead, playback wakes us up when it takes a chunk
+                    LockSupport.park(this);
+                    continue;
                 }
 
-                // Get current number of element in queue.
-                // At worse, there will be none.
-                int messages = mixmessages.size();
-
                 // Drain the queue, applying changes to currently
                 // looping channels, if applicable. This may result in new channels,
                 // older ones being stopped, or current ones being altered. Changes
                 // will be applied with priority either way.
-                if (messages > 0) {
-                    drainAndApply(messages);
-                }
+                drainAndApply();
 
                 // This may have changed in the mean.
                 mixed = activeChannels();
 
+                // A whole chunk of one channel at a time, rather than
+                // all channels for one sample at a time.
+                Arrays.fill(mixleft, 0);
+                Arrays.fill(mixright, 0);
                 if (mixed) {// Avoid mixing entirely if no active channel.
-
-                    // Get audio chunk NOW
-                    gunk = audiochunkpool.checkOut();
-                    // Ha ha you're ass is mine!
-                    gunk.free = false;
-                    mixbuffer = gunk.buffer;
-
-                    while (leftout < leftend) {
-                        // Reset left/right value.
-                        dl = 0;
-                        dr = 0;
-
-                        // Love thy L2 chache - made this a loop.
-                        // Now more channels could be set at compile time
-                        // as well. Thus loop those channels.
-                        for (chan = 0; chan < numChannels; chan++) {
-
-                            // Check channel, if active.
-                            // MAES: this means that we must point to raw data here.
-                            if (channels[chan] != null) {
-                                int channel_pointer = p_channels[chan];
-
-                                // Get the raw data from the channel.
-                                // Maes: this is supposed to be an 8-bit unsigned value.
-                                sample = 0x00FF & channels[chan][channel_pointer];
-
-                                // Add left and right part for this channel (sound)
-                                // to the current data. Adjust volume accordingly.
-                                // Q: could this be optimized by converting samples to 16-bit
-                                // at load time, while also allowing for stereo samples?
-                                // A: Only for the stereo part. You would still look a lookup
-                                // for the CURRENT volume level.
-                                dl += channelleftvol_lookup[chan][sample];
-                                dr += channelrightvol_lookup[chan][sample];
-
-                                // This should increment the index inside a channel, but is
-                                // expressed in 16.16 fixed point arithmetic.
-                                channelstepremainder[chan] += channelstep[chan];
-
-                                // The actual channel pointer is increased here.
-                                // The above trickery allows playing back different pitches.
-                                // The shifting retains only the integer part.
-                                channel_pointer += channelstepremainder[chan] >> 16;
-
-                                // This limits it to the "decimal" part in order to
-                                // avoid undue accumulation.
-                                channelstepremainder[chan] &= 0xFFFF;
-
-                                // Check whether we are done. Also to avoid overflows.
-                                if (channel_pointer >= channelsend[chan]) {
-                                    // Reset pointer for a channel.
-                                    if (D) {
-                                        LOGGER.log(Level.FINE, String.format(
-                                                "Channel %d handle %d pointer %d thus done, stopping",
-                                                chan, channelhandles[chan],
-                                                channel_pointer));
-                                    }
-                                    channels[chan] = null;
-
-                                    // Communicate back to driver.
-                                    SuperDoomSoundDriver.this.channels[chan] = false;
-                                    channel_pointer = 0;
-                                }
-
-                                // Write pointer back, so we know where a certain channel
-                                // is the next time UpdateSounds is called.
-                                p_channels[chan] = channel_pointer;
-                            }
-
-                        } // for all channels.
-
-                        // MAES: at this point, the actual values for a single sample
-                        // (YIKES!) are in d1 and d2. We must use the leftout/rightout
-                        // pointers to write them back into the mixbuffer.
-                        // Clamp to range. Left hardware channel.
-                        // Remnant of 8-bit mixing code? That must have raped ears
-                        // and made them bleed.
-                        // if (dl > 127) *leftout = 127;
-                        // else if (dl < -128) *leftout = -128;
-                        // else *leftout = dl;
-                        if (dl > 0x7fff) {
-                            dl = 0x7fff;
-                        } else if (dl < -0x8000) {
-                            dl = -0x8000;
+                    for (int chan = 0; chan < numChannels; chan++) {
+                        if (channels[chan] != null) {
+                            mixChannel(chan);
                         }
+                    }
+                }
 
-                        // Write left channel
-                        mixbuffer[leftout] = (byte) ((dl & 0xFF00) >>> 8);
-                        mixbuffer[leftout + 1] = (byte) (dl & 0x00FF);
-
-                        // Same for right hardware channel.
-                        if (dr > 0x7fff) {
-                            dr = 0x7fff;
-                        } else if (dr < -0x8000) {
-                            dr = -0x8000;
-                        }
-
-                        // Write right channel.
-                        mixbuffer[rightout] = (byte) ((dr & 0xFF00) >>> 8);
-                        mixbuffer[rightout + 1] = (byte) (dr & 0x00FF);
-
-                        // Increment current pointers in mixbuffer.
-                        leftout += step;
-                        rightout += step;
-                    } // End leftend/leftout while
-
-                    // for (chan = 0; chan < numChannels; chan++) {
-                    // 	if (channels[chan]!=null){
-                    // 		System.err.printf("Channel %d pointer %d\n",chan,this.p_channels[chan]);
-                    // 	}
-                    // }
-                } // if-mixed
-
-                // After an entire buffer has been mixed, we can apply any updates.
-                // This includes silent updates.
-                submitSound();
-
+                // Silence is played too, so the line never runs dry and
+                // a new sound always starts the same time after it's asked for.
+                writeChunk(out);
+                chunks.publish();
+                chunk++;
+                LockSupport.unpark(SOUNDTHREAD);
             } // terminate loop
         }
 
-        private AudioChunk gunk;
-
-        private final void submitSound() {
-            // It's possible to stay entirely silent and give the audio
-            // queue a chance to get drained. without sending any data.
-            // Saves BW and CPU cycles.
-            if (mixed) {
-                silence = 0;
+        /**
+         * Adds a chunk's worth of a channel to the sums, and stops it if it runs out
+         */
+        private void mixChannel(int chan) {
+            final short[] data = channels[chan];
+            final int leftgain = channelleftgain[chan];
+            final int rightgain = channelrightgain[chan];
+            final int end = Math.min(channelsend[chan], data.length);
+            final int step = channelstep[chan];
+            int pointer = p_channels[chan];
+
+            if (step == 1 << 16) {
+                // At unit pitch, it's a straight run over the samples,
+                // which the JIT turns into vector instructions.
+                final int count = Math.min(CHUNK_SAMPLES, end - pointer);
+                for (int i = 0; i < count; i++) {
+                    final int sample = data[pointer + i];
+                    mixleft[i] += (sample * leftgain) >> 15;
+                    mixright[i] += (sample * rightgain) >> 15;
+                }
+                pointer += count;
+            } else {
+                // Otherwise step in 16.16 fixed point, which plays back different pitches.
+                int remainder = channelstepremainder[chan];
+                for (int i = 0; i < CHUNK_SAMPLES && pointer < end; i++) {
+                    final int sample = data[pointer];
+                    mixleft[i] += (sample * leftgain) >> 15;
+                    mixright[i] += (sample * rightgain) >> 15;
+                    remainder += step;
+                    pointer += remainder >> 16;
+                    remainder &= 0xFFFF;
+                }
+                channelstepremainder[chan] = remainder;
+            }
 
-                // System.err.printf("Submitted sound chunk %d to buffer %d \n",chunk,mixstate);
-                // Copy the currently mixed chunk into its position inside the
-                // master buffer.
-                // System.arraycopy(mixbuffer, 0, gunk.buffer, 0, MIXBUFFERSIZE);
-                SOUNDSRV.addChunk(gunk);
+            // Check whether we are done. Also to avoid overflows.
+            if (pointer >= end) {
+                if (D) {
+                    LOGGER.log(Level.FINE, String.format(
+                            "Channel %d handle %d pointer %d thus done, stopping",
+                            chan, channelhandles[chan], pointer));
+                }
+                channels[chan] = null;
 
-                // System.err.println(chunk++);
-                chunk++;
-                // System.err.println(chunk);
+                // Communicate back to driver.
+                SuperDoomSoundDriver.this.channels[chan] = false;
+                pointer = 0;
+            }
 
-                if (consume.tryAcquire()) {
-                    produce.release();
-                }
+            // Write pointer back, so we know where a certain channel
+            // is the next time a chunk is mixed.
+            p_channels[chan] = pointer;
+        }
 
-            } else {
-                silence++;
-                // MAES: attempt to fix lingering noise error
-                if (silence > ISoundDriver.BUFFER_CHUNKS) {
-                    line.flush();
-                    silence = 0;
-                }
+        /**
+         * Clamps the sums to 16 bits, and writes them out big endian, left and right alternating
+         */
+        private void writeChunk(byte[] mixbuffer) {
+            for (int i = 0, out = 0; i < CHUNK_SAMPLES; i++, out += 4) {
+                final int dl = Math.max(-0x8000, Math.min(0x7fff, mixleft[i]));
+                final int dr = Math.max(-0x8000, Math.min(0x7fff, mixright[i]));
+                mixbuffer[out] = (byte) (dl >> 8);
+                mixbuffer[out + 1] = (byte) dl;
+                mixbuffer[out + 2] = (byte) (dr >> 8);
+                mixbuffer[out + 3] = (byte) dr;
             }
         }
 
@@ -740,14 +608,10 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
          *  More recently enqueued messages will trump older ones. This method
          *  only changes the STATUS of channels, and actual message submissions
          *  can occur at most every sound frame.
-         *
-         * @param messages
          */
-        private void drainAndApply(int messages) {
+        private void drainAndApply() {
             MixMessage m;
-            for (int i = 0; i < messages; i++) {
-                // There should be no problems, in theory.
-                m = this.mixmessages.remove();
+            while ((m = this.mixmessages.peek()) != null) {
                 if (m.stop) {
                     stopChannel(m.channel);
                 } else if (m.update) {
@@ -755,6 +619,7 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
                 } else {
                     insertChannel(m);
                 }
+                this.mixmessages.release();
             }
         }
 
@@ -766,8 +631,8 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
 
         private final void updateChannel(MixMessage m) {
             //System.err.printf("Updating channel %d\n",m.channel);
-            this.channelleftvol_lookup[m.channel] = m.leftvol_lookup;
-            this.channelrightvol_lookup[m.channel] = m.rightvol_lookup;
+            this.channelleftgain[m.channel] = m.leftgain;
+            this.channelrightgain[m.channel] = m.rightgain;
             this.channelstep[m.channel] = m.step;
             this.channelsend[m.channel] = m.end;
         }
@@ -779,8 +644,8 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
             this.p_channels[ch] = m.pointer;
             this.channelsend[ch] = m.end;
             this.channelstepremainder[ch] = m.remainder;
-            this.channelleftvol_lookup[ch] = m.leftvol_lookup;
-            this.channelrightvol_lookup[ch] = m.rightvol_lookup;
+            this.channelleftgain[ch] = m.leftgain;
+            this.channelrightgain[ch] = m.rightgain;
             this.channelstep[ch] = m.step;
         }
 
@@ -830,19 +695,34 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
     public void StopSound(int handle) {
         // Which channel has it?
         int hnd = getChannelFromHandle(handle);
-        if (hnd >= 0) {
-
-            channels[hnd] = false;
-
-            this.channelhandles[hnd] = IDLE_HANDLE;
+        if (hnd >= 0 && !publishStop(hnd)) {
+            // The mixer goes on playing it, so the channel stays taken
+            // until UpdateSound gets the stop through.
+            pendingStops[hnd] = true;
+        }
+    }
 
-            MixMessage m = new MixMessage();
-            m.channel = hnd;
-            m.stop = true;
-            // We can only "ask" the mixer to stop at the next
-            //chunk.
-            MIXSRV.submitMixMessage(m);
+    /**
+     * Frees the channel once the mixer has been told to stop it
+     *
+     * @return false if there was no room for the message
+     */
+    private boolean publishStop(int chan) {
+        final MixMessage m = claimMixMessage();
+        if (m == null) {
+            return false;
         }
+
+        m.channel = chan;
+        m.stop = true;
+        // We can only "ask" the mixer to stop at the next
+        //chunk.
+        MIXSRV.mixmessages.publish();
+
+        channels[chan] = false;
+        channelhandles[chan] = IDLE_HANDLE;
+        pendingStops[chan] = false;
+        return true;
     }
 
     @Override
@@ -852,8 +732,6 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
         // judge when sound should be submitted.
     }
 
-    private int silence = 0;
-
     @Override
     public void UpdateSoundParams(int handle, int vol, int sep, int pitch) {
 
@@ -874,24 +752,42 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
             DM.doomSystem.Error("leftvol out of bounds");
         }
 
-        MixMessage m = new MixMessage();
+        final MixMessage m = claimMixMessage();
+        if (m == null) {
+            return;
+        }
 
         // We are updating a currently active channel
         m.update = true;
         m.channel = chan;
 
-        // Get the proper lookup table piece
-        // for this volume level???
-        m.leftvol_lookup = vol_lookup[leftvol];
-        m.rightvol_lookup = vol_lookup[rightvol];
+        m.leftgain = gain(leftvol);
+        m.rightgain = gain(rightvol);
 
         // Well, if you can get pitch to change too...
         m.step = steptable[pitch];
 
         // Oddly enough, we could be picking a different channel here? :-S
-        m.end = lengths[channelids[chan]];
+        m.end = cachedSounds[channelids[chan]].length;
 
-        MIXSRV.submitMixMessage(m);
+        MIXSRV.mixmessages.publish();
+    }
+
+    /**
+     * Game thread only
+     *
+     * @return a cleared message to fill in and publish, or null if the mixer has
+     * fallen so far behind that there is no room for one
+     */
+    protected MixMessage claimMixMessage() {
+        final MixMessage m = MIXSRV.mixmessages.claim();
+        if (m == null) {
+            LOGGER.log(Level.WARNING, "Mixer queue full, dropping a sound message");
+            return null;
+        }
+        m.stop = false;
+        m.update = false;
+        return m;
     }
 
     protected StringBuilder sb = new StringBuilder();
@@ -909,17 +805,4 @@ public class SuperDoomSoundDriver extends AbstractSoundDriver {
         return sb.toString();
 
     }
-
-    // Schedule this to release the sound thread at regular intervals
-    // so that it doesn't outrun the audioline's buffer and game updates.
-    protected class SoundTimer extends TimerTask {
-
-        public void run() {
-            update_mixer.release();
-        }
-    }
-
-    protected final AudioChunk SILENT_CHUNK = new AudioChunk();
-
-    protected final AudioChunkPool audiochunkpool = new AudioChunkPool();
-}
\ No newline at end of file
+}
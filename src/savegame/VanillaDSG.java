@@ -473,7 +473,7 @@ public class VanillaDSG<T, V> implements IDoomSaveGame {
                     mobj.id = ++id;
                     TL.add(mobj);
                     mobj.mobj_state = info.states[mobj.stateid];
-                    mobj.target = null;
+                    mobj.setTarget(null);
                     if (mobj.playerid != 0) {
                         mobj.player = DOOM.players[mobj.playerid - 1];
                         mobj.player.mo = mobj;
@@ -554,8 +554,8 @@ public class VanillaDSG<T, V> implements IDoomSaveGame {
     protected void rewirePointers() {
         TL.forEach(th -> {
             if (th.p_target != 0) {
-                th.target = pointindex.get(th.p_target);
-                th.tracer = pointindex.get(th.p_tracer);
+                th.setTarget(pointindex.get(th.p_target));
+                th.setTracer(pointindex.get(th.p_tracer));
                 // System.out.printf("Object %s has target %s\n",th.type.toString(),th.target.type.toString());
             }
         });
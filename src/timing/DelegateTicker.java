@@ -32,6 +32,16 @@ public class DelegateTicker implements ITicker {
         return currentTicker.GetTime();
     }
 
+    @Override
+    public long GetFracTime() {
+        return currentTicker.GetFracTime();
+    }
+
+    @Override
+    public void WaitForTic(int tic) {
+        currentTicker.WaitForTic(tic);
+    }
+
     public void changeTicker() {
         if (currentTicker == nt) {
             currentTicker = mt;
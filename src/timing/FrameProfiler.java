@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package timing;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import doom.CVarManager;
+import doom.CommandVariable;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mochadoom.Loggers;
+
+/**
+ * Per-tic and per-frame timing collector, used by -benchreport to tell
+ * where the frame time goes when playing back a -timedemo.
+ *
+ * Phases nest like a stack: when a phase begins while another is still open,
+ * the outer one is paused, so every figure is exclusive time. That way the
+ * segs drawn from inside the BSP traversal of the serial renderer do not get
+ * counted twice.
+ *
+ * When disabled, every call is a single boolean check, so the hooks can stay
+ * in the renderer for good.
+ *
+ * @author Good Sign
+ */
+public class FrameProfiler {
+
+    private static final Logger LOGGER = Loggers.getLogger(FrameProfiler.class.getName());
+
+    public enum Phase {
+        /**
+         * G_Ticker, and everything it runs: thinkers, specials, status bar etc.
+         */
+        TIC,
+        /**
+         * R_RenderBSPNode, without the segs it emits
+         */
+        BSP,
+        /**
+         * R_StoreWallRange and, for the parallel renderers, CompleteRendering
+         */
+        SEGS,
+        /**
+         * R_DrawPlanes, waiting on parallel visplane workers included
+         */
+        PLANES,
+        /**
+         * R_DrawMasked
+         */
+        MASKED,
+        /**
+         * Palette, tint and gamma conversion of the FG screen into the displayed raster.
+         * With a live window it is measured together with BLIT.
+         */
+        POSTPROCESS,
+        /**
+         * Delivery of the finished image to its destination
+         */
+        BLIT;
+
+        final String key = name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final int MAXDEPTH = 8;
+
+    /**
+     * Cheap do-nothing instance for normal play
+     */
+    public static final FrameProfiler DISABLED = new FrameProfiler(false);
+
+    private final boolean enabled;
+
+    private final Phase[] stack = new Phase[MAXDEPTH];
+    private int depth;
+    private long mark;
+
+    private final long[] current = new long[PHASES.length];
+    private long frameStart;
+
+    /**
+     * Per-frame samples, one growable row per phase, plus frame and tic totals
+     */
+    private final long[][] frameSamples = new long[PHASES.length][];
+    private long[] frameTotals = new long[1024];
+    private long[] ticSamples = new long[1024];
+    private int frames;
+    private int tics;
+
+    private FrameProfiler(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            for (int i = 0; i < PHASES.length; i++) {
+                frameSamples[i] = new long[1024];
+            }
+        }
+    }
+
+    public static FrameProfiler createProfiler(CVarManager CVM) {
+        return CVM.present(CommandVariable.BENCHREPORT) ? new FrameProfiler(true) : DISABLED;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void begin(Phase phase) {
+        if (!enabled) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        if (depth > 0) {
+            current[stack[depth - 1].ordinal()] += now - mark;
+        }
+        stack[depth++] = phase;
+        mark = now;
+    }
+
+    public void end(Phase phase) {
+        if (!enabled || depth == 0) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final long elapsed = now - mark;
+        current[phase.ordinal()] += elapsed;
+        --depth;
+        mark = now;
+
+        // Tics are sampled one by one, not accumulated into the frame
+        if (phase == Phase.TIC) {
+            if (tics == ticSamples.length) {
+                ticSamples = Arrays.copyOf(ticSamples, tics * 2);
+            }
+            ticSamples[tics++] = current[Phase.TIC.ordinal()];
+            current[Phase.TIC.ordinal()] = 0;
+        }
+    }
+
+    public void beginFrame() {
+        if (!enabled) {
+            return;
+        }
+
+        frameStart = System.nanoTime();
+    }
+
+    public void endFrame() {
+        if (!enabled) {
+            return;
+        }
+
+        if (frames == frameTotals.length) {
+            final int newSize = frames * 2;
+            frameTotals = Arrays.copyOf(frameTotals, newSize);
+            for (int i = 0; i < PHASES.length; i++) {
+                frameSamples[i] = Arrays.copyOf(frameSamples[i], newSize);
+            }
+        }
+
+        for (Phase p : PHASES) {
+            if (p != Phase.TIC) {
+                frameSamples[p.ordinal()][frames] = current[p.ordinal()];
+                current[p.ordinal()] = 0;
+            }
+        }
+        frameTotals[frames++] = System.nanoTime() - frameStart;
+    }
+
+    /**
+     * Writes the collected samples. A file name ending with .csv gets one line per frame
+     * followed by the percentile rows, anything else gets a JSON document.
+     */
+    public void writeReport(String fileName, Map<String, Object> info) {
+        if (!enabled) {
+            return;
+        }
+
+        try (Writer w = new FileWriter(fileName)) {
+            if (fileName.toLowerCase(Locale.ROOT).endsWith(".csv")) {
+                writeCsv(new PrintWriter(w));
+            } else {
+                writeJson(w, info);
+            }
+            LOGGER.log(Level.INFO, String.format("Benchmark report of %d tics, %d frames written to %s", tics, frames, fileName));
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, String.format("Could not write benchmark report %s", fileName), e);
+        }
+    }
+
+    private void writeJson(Writer w, Map<String, Object> info) {
+        final Map<String, Object> report = new LinkedHashMap<>(info);
+        report.put("tics", tics);
+        report.put("frames", frames);
+
+        final Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("tic", stats(ticSamples, tics));
+        summary.put("frame", stats(frameTotals, frames));
+        for (Phase p : PHASES) {
+            if (p != Phase.TIC) {
+                summary.put(p.key, stats(frameSamples[p.ordinal()], frames));
+            }
+        }
+        report.put("summary_ms", summary);
+
+        report.put("per_tic_ms", toMillis(ticSamples, tics));
+        final Map<String, Object> perFrame = new LinkedHashMap<>();
+        perFrame.put("frame", toMillis(frameTotals, frames));
+        for (Phase p : PHASES) {
+            if (p != Phase.TIC) {
+                perFrame.put(p.key, toMillis(frameSamples[p.ordinal()], frames));
+            }
+        }
+        report.put("per_frame_ms", perFrame);
+
+        final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        gson.toJson(report, w);
+    }
+
+    private void writeCsv(PrintWriter out) {
+        out.print("frame,tic,total");
+        for (Phase p : PHASES) {
+            if (p != Phase.TIC) {
+                out.print(',');
+                out.print(p.key);
+            }
+        }
+        out.println();
+
+        for (int f = 0; f < frames; f++) {
+            out.print(f);
+            out.print(',');
+            out.print(f < tics ? ms(ticSamples[f]) : "");
+            out.print(',');
+            out.print(ms(frameTotals[f]));
+            for (Phase p : PHASES) {
+                if (p != Phase.TIC) {
+                    out.print(',');
+                    out.print(ms(frameSamples[p.ordinal()][f]));
+                }
+            }
+            out.println();
+        }
+
+        for (int pct : new int[]{50, 95, 99}) {
+            out.print("p" + pct);
+            out.print(',');
+            out.print(ms(percentile(sorted(ticSamples, tics), pct)));
+            out.print(',');
+            out.print(ms(percentile(sorted(frameTotals, frames), pct)));
+            for (Phase p : PHASES) {
+                if (p != Phase.TIC) {
+                    out.print(',');
+                    out.print(ms(percentile(sorted(frameSamples[p.ordinal()], frames), pct)));
+                }
+            }
+            out.println();
+        }
+        out.flush();
+    }
+
+    private static Map<String, Double> stats(long[] samples, int count) {
+        final long[] sorted = sorted(samples, count);
+        final Map<String, Double> ret = new LinkedHashMap<>();
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += sorted[i];
+        }
+        ret.put("mean", count > 0 ? ms(sum / count) : 0.0);
+        ret.put("p50", ms(percentile(sorted, 50)));
+        ret.put("p95", ms(percentile(sorted, 95)));
+        ret.put("p99", ms(percentile(sorted, 99)));
+        ret.put("max", count > 0 ? ms(sorted[count - 1]) : 0.0);
+        return ret;
+    }
+
+    private static long[] sorted(long[] samples, int count) {
+        final long[] ret = Arrays.copyOf(samples, count);
+        Arrays.sort(ret);
+        return ret;
+    }
+
+    /**
+     * Nearest-rank percentile
+     */
+    private static long percentile(long[] sorted, int pct) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        final int rank = (int) Math.ceil(pct / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+
+    private static double[] toMillis(long[] samples, int count) {
+        final double[] ret = new double[count];
+        for (int i = 0; i < count; i++) {
+            ret[i] = ms(samples[i]);
+        }
+        return ret;
+    }
+
+    private static double ms(long nanos) {
+        return Math.round(nanos / 1000.0) / 1000.0;
+    }
+}
@@ -19,4 +19,21 @@ public interface ITicker {
 
     @I_IBM.C(I_GetTime)
     public int GetTime();
+
+    /**
+     * Waits until GetTime() would return the tic, without spinning all the way.
+     * Tickers that don't run on the clock return at once.
+     */
+    default void WaitForTic(int tic) {
+    }
+
+    /**
+     * The time GetTime() counts, with the part of the tic gone by so far
+     * in the low FRACBITS bits. Doesn't count as a call to GetTime().
+     *
+     * @return -1 for tickers that don't run on the clock
+     */
+    default long GetFracTime() {
+        return -1;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package timing;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mochadoom.Loggers;
+
+/**
+ * How long input takes to get to the screen: from when an event was posted
+ * to the end of the first Display() that could show what it did. For an event
+ * the menu took, that is the next frame, as the menu is drawn from its own state;
+ * for one that went to the game, it is the first frame after the tic that ran
+ * the ticcmd built with it, since only that tic moves the player.
+ *
+ * The game thread tells when it handles an event, when it builds a ticcmd and
+ * when it has shown a frame; the times of the events handled are kept, each with
+ * the tic of its ticcmd, until a frame is shown after that tic has run.
+ * Latencies go in a histogram of tenths of a millisecond, up to half a second,
+ * which is plenty to tell the median and the 99th percentile apart.
+ *
+ * What was measured is logged when the game quits.
+ *
+ * @author Good Sign
+ */
+public final class InputLatency {
+
+    private static final Logger LOGGER = Loggers.getLogger(InputLatency.class.getName());
+
+    private static final long BUCKET = 100_000L;
+    private static final int BUCKETS = 5000;
+    /** Events handled and not yet shown are only kept up to this many */
+    private static final int MAX_PENDING = 1024;
+
+    /** Tic of an event handled but not yet in a ticcmd, never run */
+    private static final int UNBUILT = Integer.MAX_VALUE;
+    /** Tic of an event the menu took, shown by the next frame */
+    private static final int MENU = Integer.MIN_VALUE;
+
+    /** Post times of events handled and not yet shown, with their tics, game thread only */
+    private long[] pending = new long[64];
+    private int[] pendingTics = new int[64];
+    private int numpending;
+
+    private final int[] histogram = new int[BUCKETS + 1];
+    private long events, total, max;
+    /** Events that did not fit in the queue and waited in its overflow */
+    private long overflowed;
+
+    private boolean hooked;
+
+    /**
+     * Game thread: an event posted at this time was given to the responders
+     *
+     * @param byMenu the menu took it, so it's not waiting for a ticcmd
+     */
+    public void handled(long stamp, boolean byMenu) {
+        if (numpending == pending.length) {
+            if (numpending == MAX_PENDING) {
+                return;
+            }
+            pending = Arrays.copyOf(pending, numpending * 2);
+            pendingTics = Arrays.copyOf(pendingTics, numpending * 2);
+        }
+        pending[numpending] = stamp;
+        pendingTics[numpending++] = byMenu ? MENU : UNBUILT;
+    }
+
+    /**
+     * Game thread: a ticcmd for this tic was built from the events handled so far
+     */
+    public void built(int tic) {
+        for (int i = 0; i < numpending; i++) {
+            if (pendingTics[i] == UNBUILT) {
+                pendingTics[i] = tic;
+            }
+        }
+    }
+
+    /**
+     * Game thread: a frame was just put on screen
+     *
+     * @param ranTics how many ticcmds have been run, so tics below it are on screen
+     */
+    public void displayed(int ranTics) {
+        if (numpending == 0) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        int kept = 0;
+        for (int i = 0; i < numpending; i++) {
+            if (pendingTics[i] < ranTics) {
+                record(now, pending[i]);
+            } else {
+                pending[kept] = pending[i];
+                pendingTics[kept++] = pendingTics[i];
+            }
+        }
+        numpending = kept;
+    }
+
+    /**
+     * Any thread: an event went to the overflow because the queue was full
+     */
+    public synchronized void overflowed() {
+        ++overflowed;
+    }
+
+    public synchronized Map<String, Object> statistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("events", events);
+        stats.put("mean_ms", events > 0 ? total / events / 1e6 : 0.0);
+        stats.put("p50_ms", percentile(0.50));
+        stats.put("p99_ms", percentile(0.99));
+        stats.put("max_ms", max / 1e6);
+        stats.put("overflowed", overflowed);
+        return stats;
+    }
+
+    private synchronized void record(long now, long stamp) {
+        final long latency = Math.max(0, now - stamp);
+        ++histogram[(int) Math.min(BUCKETS, latency / BUCKET)];
+        ++events;
+        total += latency;
+        max = Math.max(max, latency);
+
+        if (!hooked) {
+            hooked = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(this::report, "Input latency report"));
+        }
+    }
+
+    /**
+     * The upper end of the bucket the percentile falls in, but no more than the max
+     */
+    private double percentile(double p) {
+        if (events == 0) {
+            return 0.0;
+        }
+        final long rank = (long) Math.ceil(p * events);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                return Math.min((i + 1) * BUCKET, max) / 1e6;
+            }
+        }
+        return max / 1e6;
+    }
+
+    private void report() {
+        final Map<String, Object> stats = statistics();
+        LOGGER.log(Level.INFO, String.format(
+                "Input latency: %d events, %.1f ms on average, %.1f ms median, %.1f ms at 99%%, %.1f ms at most; "
+                + "%d past a full queue",
+                stats.get("events"), stats.get("mean_ms"), stats.get("p50_ms"), stats.get("p99_ms"),
+                stats.get("max_ms"), stats.get("overflowed")));
+    }
+}
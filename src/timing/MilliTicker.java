@@ -1,6 +1,7 @@
 package timing;
 
 import static data.Defines.TICRATE;
+import static m.fixed_t.FRACBITS;
 
 public class MilliTicker
         implements ITicker {
@@ -23,6 +24,24 @@ public class MilliTicker
         return newtics;
     }
 
+    @Override
+    public long GetFracTime() {
+        if (basetime == 0) {
+            return -1;
+        }
+        final long ticks = (System.currentTimeMillis() - basetime) * TICRATE;
+        return (ticks / 1000 << FRACBITS) | (ticks % 1000 << FRACBITS) / 1000;
+    }
+
+    @Override
+    public void WaitForTic(int tic) {
+        if (basetime != 0) {
+            final long remaining = basetime + (tic * 1000L + TICRATE - 1) / TICRATE - System.currentTimeMillis();
+            pacer.await(System.nanoTime() + remaining * 1000000L);
+        }
+    }
+
+    private final TicPacer pacer = new TicPacer();
     protected volatile long basetime = 0;
     protected volatile int oldtics = 0;
     protected volatile int discrepancies;
@@ -3,6 +3,7 @@ package timing;
 import static data.Defines.TICRATE;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import static m.fixed_t.FRACBITS;
 import mochadoom.Loggers;
 
 public class NanoTicker
@@ -34,6 +35,24 @@ public class NanoTicker
         return (oldtics = newtics);
     }
 
+    @Override
+    public long GetFracTime() {
+        if (basetime == 0) {
+            return -1;
+        }
+        final long ticks = (System.nanoTime() - basetime) * TICRATE;
+        return (ticks / 1000000000 << FRACBITS) | (ticks % 1000000000 << FRACBITS) / 1000000000;
+    }
+
+    @Override
+    public void WaitForTic(int tic) {
+        if (basetime != 0) {
+            // the first nanosecond GetTime() rounds down to the tic
+            pacer.await(basetime + (tic * 1000000000L + TICRATE - 1) / TICRATE);
+        }
+    }
+
+    private final TicPacer pacer = new TicPacer();
     protected volatile long basetime = 0;
     protected volatile int oldtics = 0;
     protected volatile int discrepancies;
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package timing;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import m.Settings;
+import mochadoom.Engine;
+import mochadoom.Loggers;
+
+/**
+ * Waits for a tic deadline without keeping a core busy for the whole of it.
+ *
+ * The thread is parked until a little before the deadline, then spins the rest
+ * of the way, because parking only promises not to wake up early: how late it wakes
+ * depends on the system's timers, a few tens of microseconds on Linux, up to
+ * a millisecond or more elsewhere. The spin is there to cover that.
+ *
+ * How late the waits ended up is kept, and logged when the game quits,
+ * so a spin too short for the system shows up as late wakeups.
+ *
+ * @author Good Sign
+ */
+public final class TicPacer {
+
+    private static final Logger LOGGER = Loggers.getLogger(TicPacer.class.getName());
+
+    /** When off, waits return at once and the game loop spins as it always did */
+    public static final boolean ENABLED = Engine.getConfig().equals(Settings.tic_pacing, Boolean.TRUE);
+
+    private static final long SPIN = Math.max(0, Engine.getConfig().getValue(Settings.tic_pacing_spin, Integer.class)) * 1000L;
+
+    private long waits;
+    /** How far past the deadline the waits returned */
+    private long lateTotal, lateMax;
+    /** How far past the end of the park the thread was woken */
+    private long oversleepTotal, oversleepMax;
+    /** Waits that woke up past the deadline, so the spin was too short */
+    private long missed;
+
+    private boolean hooked;
+
+    /**
+     * Returns once System.nanoTime() is at or past the deadline
+     */
+    public void await(long deadline) {
+        if (!ENABLED) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (deadline - now <= 0) {
+            return;
+        }
+
+        final long parkUntil = deadline - SPIN;
+        long oversleep = 0;
+        if (parkUntil - now > 0) {
+            // parkNanos may return early, or for no reason at all
+            do {
+                LockSupport.parkNanos(parkUntil - now);
+            } while (parkUntil - (now = System.nanoTime()) > 0);
+            oversleep = now - parkUntil;
+        }
+
+        while (deadline - (now = System.nanoTime()) > 0) {
+            Thread.onSpinWait();
+        }
+
+        record(now - deadline, oversleep);
+    }
+
+    public synchronized Map<String, Object> statistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("waits", waits);
+        stats.put("late_mean_us", waits > 0 ? lateTotal / waits / 1000.0 : 0.0);
+        stats.put("late_max_us", lateMax / 1000.0);
+        stats.put("oversleep_mean_us", waits > 0 ? oversleepTotal / waits / 1000.0 : 0.0);
+        stats.put("oversleep_max_us", oversleepMax / 1000.0);
+        stats.put("missed", missed);
+        stats.put("spin_us", SPIN / 1000);
+        return stats;
+    }
+
+    private synchronized void record(long late, long oversleep) {
+        ++waits;
+        lateTotal += late;
+        lateMax = Math.max(lateMax, late);
+        oversleepTotal += oversleep;
+        oversleepMax = Math.max(oversleepMax, oversleep);
+        if (oversleep > SPIN) {
+            ++missed;
+        }
+
+        if (!hooked) {
+            hooked = true;
+            Runtime.getRuntime().addShutdownHook(new Thread(this::report, "Tic pacing report"));
+        }
+    }
+
+    private void report() {
+        final Map<String, Object> stats = statistics();
+        LOGGER.log(Level.INFO, String.format(
+                "Tic pacing: %d waits, late by %.1f us on average, %.1f us at most; "
+                + "parks overslept %.1f us on average, %.1f us at most; %d woke past the %d us spin",
+                stats.get("waits"), stats.get("late_mean_us"), stats.get("late_max_us"),
+                stats.get("oversleep_mean_us"), stats.get("oversleep_max_us"), stats.get("missed"), SPIN / 1000));
+    }
+}
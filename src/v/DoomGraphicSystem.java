@@ -226,4 +226,17 @@ public interface DoomGraphicSystem<T, V> {
      */
     default void forcePalette() {
     }
+
+    /**
+     * From now on, patches are drawn together when EndOverlay is called, or before anything else
+     * is drawn through the graphics system. The screens should not be written directly until then.
+     */
+    default void BeginOverlay() {
+    }
+
+    /**
+     * Draws the patches put off since BeginOverlay
+     */
+    default void EndOverlay() {
+    }
 }
\ No newline at end of file
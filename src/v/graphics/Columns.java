@@ -16,12 +16,8 @@
  */
 package v.graphics;
 
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ForkJoinPool;
-import java.util.function.IntConsumer;
-import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
 import m.Settings;
 import mochadoom.Engine;
 import mochadoom.Loggers;
@@ -74,33 +70,44 @@ public interface Columns<V, E extends Enum<E>> extends Blocks<V, E> {
 
     /**
      * Accepts patch columns drawing arguments (usually from Patches::DrawPatch method)
-     * and submits the task to the local ForkJoinPool. The task iterates over patch columns in parallel.
-     * We need to only iterate through real patch.width and perform scale in-loop
+     * and draws them one after another. We need to only iterate through real patch.width and perform scale in-loop
+     *
+     * Columns used to be handed to a ForkJoinPool for each patch, but a patch is too little work
+     * to be worth a fork and a join; with cfg:parallelism_patch_columns, patches drawn between
+     * BeginOverlay and EndOverlay are put together by PatchCompositor and drawn in bands instead.
      */
     default void DrawPatchColumns(V screen, patch_t patch, int x, int y, int dupx, int dupy, boolean flip) {
         final int scrWidth = getScreenWidth();
-        final IntConsumer task = i -> {
+        for (int i = 0; i < patch.width; ++i) {
             final int startPoint = point(x + i * dupx, y, scrWidth);
             final column_t column = flip ? patch.columns[patch.width - 1 - i] : patch.columns[i];
             DrawColumn(screen, column, new Horizontal(startPoint, dupx),
                     convertPalettedBlock(column.data), scrWidth, dupy);
-        };
+        }
+    }
 
-        /**
-         * As vanilla DOOM does not parallel column computation, we should have the option to turn off
-         * the parallelism. Just set it to 0 in cfg:parallelism_patch_columns, and it will process columns in serial.
-         *
-         * It will also prevent a crash on a dumb negative value set to this option. However, a value of 1000 is even
-         * more dumb, but will probably not crash - just take hellion of megabytes memory and waste all the CPU time on
-         * computing "what to process" instead of "what will be the result"
-         */
-        if (U.COLUMN_THREADS > 0) try {
-            U.pool.submit(() -> IntStream.range(0, patch.width).parallel().forEach(task)).get();
-        } catch (InterruptedException | ExecutionException ex) {
-            LOGGER.log(Level.SEVERE, null, ex);
-        } else {
-            for (int i = 0; i < patch.width; ++i) {
-                task.accept(i);
+    /**
+     * Like DrawPatchColumns, but only draws the screen lines from top up to bottom, not including it,
+     * so the patch may be drawn a band at a time by different threads.
+     *
+     * @param data the columns of the patch already converted, unflipped, so nothing is cached while drawing
+     */
+    default void DrawPatchBand(V screen, patch_t patch, V[] data, int x, int y, int dupx, int dupy, boolean flip, int top, int bottom) {
+        final int scrWidth = getScreenWidth();
+        final Horizontal row = new Horizontal(0, dupx);
+        for (int i = 0; i < patch.width; ++i) {
+            final int c = flip ? patch.width - 1 - i : i;
+            final column_t col = patch.columns[c];
+            for (int j = 0; j < col.posts && col.postdeltas[j] != 0xFF; ++j) {
+                final int postTop = y + col.postdeltas[j] * dupy;
+                for (int p = 0; p < col.postlen[j]; ++p) {
+                    final int from = Math.max(top, postTop + p * dupy);
+                    final int to = Math.min(bottom, postTop + (p + 1) * dupy);
+                    for (int line = from; line < to; ++line) {
+                        row.start = point(x + i * dupx, line, scrWidth);
+                        screenSet(data[c], col.postofs[j] + p, screen, row);
+                    }
+                }
             }
         }
     }
@@ -108,7 +115,7 @@ public interface Columns<V, E extends Enum<E>> extends Blocks<V, E> {
     class U {
 
         static final int COLUMN_THREADS = Engine.getConfig().getValue(Settings.parallelism_patch_columns, Integer.class);
-        private static final ForkJoinPool pool = COLUMN_THREADS > 0 ? new ForkJoinPool(COLUMN_THREADS) : null;
+        static final ForkJoinPool pool = COLUMN_THREADS > 0 ? new ForkJoinPool(COLUMN_THREADS) : null;
 
         private U() {
         }
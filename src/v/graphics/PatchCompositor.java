@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package v.graphics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.function.IntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import mochadoom.Loggers;
+import rr.column_t;
+import rr.patch_t;
+
+/**
+ * Draws the patches of the status bar, HUD, menus, intermission and finale together,
+ * the screen cut in horizontal bands that are drawn by the threads of parallelism_patch_columns.
+ *
+ * While open, patches drawn are only put on a list, in the order they were drawn in;
+ * flushing draws the list, every band going through all of it, each patch clipped to the band,
+ * so patches over each other come out as if drawn one by one. The threads are forked and joined
+ * once for the list, not once for every patch.
+ *
+ * Anything else drawn to the screens while open must flush first, or it would be drawn
+ * under patches drawn before it. The graphics system does that for what is drawn through it;
+ * whoever opens the compositor should not write the screens directly until it is closed.
+ *
+ * Game thread only, except for the band tasks while flushing.
+ *
+ * @author Good Sign
+ */
+public final class PatchCompositor<V> {
+
+    private static final Logger LOGGER = Loggers.getLogger(PatchCompositor.class.getName());
+
+    /** More bands than threads, since most patches are at the bottom or in the middle of the screen */
+    private static final int BANDS_PER_THREAD = 4;
+
+    private final Patches<V, ?> graphics;
+    private final IntFunction<V[]> arrayConstructor;
+    private final List<Callable<Void>> bands = new ArrayList<>();
+
+    private Draw<V>[] draws;
+    private int numdraws;
+    private boolean open;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public PatchCompositor(Patches<V, ?> graphics, IntFunction<V[]> arrayConstructor) {
+        this.graphics = graphics;
+        this.arrayConstructor = arrayConstructor;
+        this.draws = new Draw[64];
+
+        final int height = graphics.getScreenHeight();
+        final int numbands = Math.min(height, Math.max(1, Columns.U.COLUMN_THREADS * BANDS_PER_THREAD));
+        final int bandHeight = (height + numbands - 1) / numbands;
+        for (int top = 0; top < height; top += bandHeight) {
+            final int bandTop = top, bandBottom = Math.min(height, top + bandHeight);
+            bands.add(() -> {
+                drawBand(bandTop, bandBottom);
+                return null;
+            });
+        }
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    public void open() {
+        open = true;
+    }
+
+    /**
+     * Draws what was put on the list and stops putting patches on it
+     */
+    public void close() {
+        flush();
+        open = false;
+    }
+
+    /**
+     * Puts a patch on the list. Its raster, or its columns converted to the screen's pixels,
+     * are looked up now, on the game thread, so the bands only read.
+     */
+    public void add(V screen, patch_t patch, int x, int y, int dupx, int dupy, boolean flip) {
+        if (numdraws == draws.length) {
+            draws = Arrays.copyOf(draws, numdraws * 2);
+        }
+        if (draws[numdraws] == null) {
+            draws[numdraws] = new Draw<>();
+        }
+
+        final Draw<V> draw = draws[numdraws++];
+        draw.screen = screen;
+        draw.patch = patch;
+        draw.x = x;
+        draw.y = y;
+        draw.dupx = dupx;
+        draw.dupy = dupy;
+        draw.flip = flip;
+
+        final PatchRasters<V> rasters = graphics.getPatchRasters();
+        if (rasters != null) {
+            draw.raster = rasters.get(patch, dupx, dupy, flip, graphics::convertPalettedBlock);
+            draw.data = null;
+            draw.bottom = y + draw.raster.rows * dupy;
+        } else {
+            draw.raster = null;
+            draw.data = arrayConstructor.apply(patch.width);
+            draw.bottom = y + patch.height * dupy;
+            for (int i = 0; i < patch.width; i++) {
+                final column_t col = patch.columns[i];
+                draw.data[i] = graphics.convertPalettedBlock(col.data);
+                for (int j = 0; j < col.posts && col.postdeltas[j] != 0xFF; ++j) {
+                    draw.bottom = Math.max(draw.bottom, y + (col.postdeltas[j] + col.postlen[j]) * dupy);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws what was put on the list, all bands at once, and empties it
+     */
+    public void flush() {
+        if (numdraws == 0) {
+            return;
+        }
+
+        try {
+            for (Future<Void> band : Columns.U.pool.invokeAll(bands)) {
+                band.get();
+            }
+        } catch (InterruptedException | ExecutionException ex) {
+            LOGGER.log(Level.SEVERE, null, ex);
+        }
+
+        for (int i = 0; i < numdraws; i++) {
+            draws[i].clear();
+        }
+        numdraws = 0;
+    }
+
+    private void drawBand(int top, int bottom) {
+        final int scrWidth = graphics.getScreenWidth();
+        for (int i = 0; i < numdraws; i++) {
+            final Draw<V> draw = draws[i];
+            if (draw.y >= bottom || draw.bottom <= top) {
+                continue;
+            }
+
+            if (draw.raster != null) {
+                draw.raster.draw(draw.screen, draw.x, draw.y, scrWidth, top, bottom);
+            } else {
+                graphics.DrawPatchBand(draw.screen, draw.patch, draw.data, draw.x, draw.y,
+                        draw.dupx, draw.dupy, draw.flip, top, bottom);
+            }
+        }
+    }
+
+    private static final class Draw<V> {
+
+        V screen;
+        patch_t patch;
+        int x, y, dupx, dupy;
+        /** The line under the last one the patch draws to */
+        int bottom;
+        boolean flip;
+        PatchRasters.Raster<V> raster;
+        V[] data;
+
+        void clear() {
+            screen = null;
+            patch = null;
+            raster = null;
+            data = null;
+        }
+    }
+}
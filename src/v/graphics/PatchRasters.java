@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package v.graphics;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import m.Settings;
+import mochadoom.Engine;
+import rr.column_t;
+import rr.patch_t;
+
+/**
+ * Patches drawn to the screen, already scaled and in the pixels of the screen,
+ * so drawing one again is a System.arraycopy for each run of opaque pixels in each row.
+ *
+ * The status bar, the HUD, the menus and the intermission draw the same patches every frame,
+ * and drawing them by columns means scaling every pixel of every column again each time.
+ * Here a patch is scaled across once, when first drawn at a scale, and its rows kept
+ * with where their opaque runs start and end; rows are only repeated down when blitted.
+ *
+ * A raster is only good for the scale it was made for, and is made again if the patch
+ * is drawn at another one. Flipped and unflipped, a patch has one raster each.
+ * The colors in it are the base ones convertPalettedBlock gives, before tint and gamma,
+ * which are applied to the whole screen afterwards, so palette and gamma changes
+ * don't touch it: the graphics system holding it is made again with a new pixel
+ * format or video scale, and the rasters with it.
+ *
+ * Memory is a budget of bytes, over which the least recently drawn rasters are dropped.
+ *
+ * @author Good Sign
+ */
+public final class PatchRasters<V> {
+
+    /** Megabytes, 0 for drawing patches by columns as before */
+    public static final int BUDGET = Math.max(0, Engine.getConfig().getValue(Settings.patch_raster_cache, Integer.class));
+
+    private final Class<V> bufferType;
+    private final int pixelBytes;
+    private final long budget;
+
+    private final Map<Key, Raster<V>> rasters = new LinkedHashMap<>(64, 0.75f, true);
+    private long residentBytes;
+
+    /**
+     * @param budget bytes of rasters kept before the least recently drawn are dropped
+     */
+    public PatchRasters(Class<V> bufferType, long budget) {
+        this.bufferType = bufferType;
+        this.pixelBytes = bufferType == byte[].class ? 1 : bufferType == short[].class ? 2 : 4;
+        this.budget = budget;
+    }
+
+    /**
+     * @param converter turns the palette indices of a column into pixels
+     * @return the patch scaled dupx across, with dupy kept to repeat its rows down when drawn
+     */
+    public synchronized Raster<V> get(patch_t patch, int dupx, int dupy, boolean flip, Function<byte[], V> converter) {
+        final Key key = new Key(patch, flip);
+        final Raster<V> cached = rasters.get(key);
+        if (cached != null && cached.dupx == dupx && cached.dupy == dupy) {
+            return cached;
+        }
+
+        final Raster<V> raster = new Raster<>(patch, dupx, dupy, flip, converter, bufferType);
+        final long size = (long) raster.rowWidth * raster.rows * pixelBytes;
+        remove(key);
+        if (size > budget) {
+            // bigger than all the cache, it's drawn this time and not kept
+            return raster;
+        }
+
+        rasters.put(key, raster);
+        raster.size = size;
+        residentBytes += size;
+        for (final Iterator<Raster<V>> it = rasters.values().iterator(); residentBytes > budget && it.hasNext();) {
+            residentBytes -= it.next().size;
+            it.remove();
+        }
+        return raster;
+    }
+
+    private void remove(Key key) {
+        final Raster<V> old = rasters.remove(key);
+        if (old != null) {
+            residentBytes -= old.size;
+        }
+    }
+
+    /**
+     * A patch, as the same one, and which way round it's drawn
+     */
+    private static final class Key {
+
+        final patch_t patch;
+        final boolean flip;
+
+        Key(patch_t patch, boolean flip) {
+            this.patch = patch;
+            this.flip = flip;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Key && ((Key) obj).patch == patch && ((Key) obj).flip == flip;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(patch) * 2 + (flip ? 1 : 0);
+        }
+    }
+
+    /**
+     * One patch at one scale, not changed once made
+     */
+    public static final class Raster<V> {
+
+        final int dupx, dupy;
+        final boolean flip;
+        /** Pixels in a row, patch width times dupx, and rows, not scaled */
+        final int rowWidth, rows;
+        final V pixels;
+        /** For each row, the start and length of each run of opaque pixels, in pairs */
+        final int[][] runs;
+        long size;
+
+        @SuppressWarnings("unchecked")
+        Raster(patch_t patch, int dupx, int dupy, boolean flip, Function<byte[], V> converter, Class<V> bufferType) {
+            this.dupx = dupx;
+            this.dupy = dupy;
+            this.flip = flip;
+            this.rowWidth = patch.width * dupx;
+            this.rows = height(patch);
+            this.pixels = (V) Array.newInstance(bufferType.getComponentType(), rowWidth * rows);
+
+            final boolean[] opaque = new boolean[patch.width * rows];
+            for (int i = 0; i < patch.width; i++) {
+                final column_t col = flip ? patch.columns[patch.width - 1 - i] : patch.columns[i];
+                final V data = converter.apply(col.data);
+                for (int j = 0; j < col.posts && col.postdeltas[j] != 0xFF; ++j) {
+                    for (int p = 0; p < col.postlen[j]; ++p) {
+                        final int row = col.postdeltas[j] + p;
+                        opaque[row * patch.width + i] = true;
+                        // one pixel from the column, then doubled across until it's dupx wide
+                        final int to = row * rowWidth + i * dupx;
+                        System.arraycopy(data, col.postofs[j] + p, pixels, to, 1);
+                        for (int k = 1; k < dupx; k += k) {
+                            System.arraycopy(pixels, to, pixels, to + k, Math.min(k, dupx - k));
+                        }
+                    }
+                }
+            }
+
+            this.runs = new int[rows][];
+            final int[] found = new int[patch.width + 1];
+            for (int row = 0; row < rows; row++) {
+                int n = 0;
+                for (int i = 0, base = row * patch.width; i < patch.width;) {
+                    if (!opaque[base + i]) {
+                        ++i;
+                        continue;
+                    }
+                    final int start = i;
+                    while (i < patch.width && opaque[base + i]) {
+                        ++i;
+                    }
+                    found[n++] = start * dupx;
+                    found[n++] = (i - start) * dupx;
+                }
+                runs[row] = Arrays.copyOf(found, n);
+            }
+        }
+
+        /**
+         * Copies the opaque runs to the screen, each row dupy times, with the top left corner
+         * of the scaled patch at x, y. Only screen lines from top up to bottom, not including it, are drawn.
+         */
+        public void draw(V screen, int x, int y, int scrWidth, int top, int bottom) {
+            final int from = Math.max(top, y), to = Math.min(bottom, y + rows * dupy);
+            for (int line = from; line < to; ++line) {
+                final int[] rowRuns = runs[(line - y) / dupy];
+                final int src = (line - y) / dupy * rowWidth;
+                final int dst = line * scrWidth + x;
+                for (int r = 0; r < rowRuns.length; r += 2) {
+                    System.arraycopy(pixels, src + rowRuns[r], screen, dst + rowRuns[r], rowRuns[r + 1]);
+                }
+            }
+        }
+
+        /**
+         * Posts may go past the height in the header, as drawing by columns draws them anyway
+         */
+        private static int height(patch_t patch) {
+            int height = Math.max(0, patch.height);
+            for (int i = 0; i < patch.width; i++) {
+                final column_t col = patch.columns[i];
+                for (int j = 0; j < col.posts && col.postdeltas[j] != 0xFF; ++j) {
+                    height = Math.max(height, col.postdeltas[j] + col.postlen[j]);
+                }
+            }
+            return height;
+        }
+    }
+}
@@ -117,7 +117,7 @@ public interface Patches<V, E extends Enum<E>> extends Columns<V, E> {
 
         try {
             doRangeCheck(x, y, patch, dupx, dupy);
-            DrawPatchColumns(getScreen(screen), patch, x, y, dupx, dupy, flip);
+            DrawPatchRaster(getScreen(screen), patch, x, y, dupx, dupy, flip);
         } catch (BadRangeException ex) {
             printDebugPatchInfo(patch, x, y, predevide, scaleOffset, scaleStart, dupx, dupy);
         }
@@ -179,13 +179,48 @@ public interface Patches<V, E extends Enum<E>> extends Columns<V, E> {
 
         try {
             doRangeCheck(x, y, patch, dupx, dupy);
-            DrawPatchColumns(getScreen(screen), patch, x, y, dupx, dupy, flip);
+            DrawPatchRaster(getScreen(screen), patch, x, y, dupx, dupy, flip);
         } catch (BadRangeException ex) {
             // Do not abort!
             printDebugPatchInfo(patch, x, y, predevide, scaleOffset, scaleStart, dupx, dupy);
         }
     }
 
+    /**
+     * Blits the patch from its scaled raster if the graphics system keeps them,
+     * or draws it by columns if not. With an open compositor, it's only put on its list.
+     */
+    default void DrawPatchRaster(V screen, patch_t patch, int x, int y, int dupx, int dupy, boolean flip) {
+        final PatchCompositor<V> compositor = getPatchCompositor();
+        if (compositor != null && compositor.isOpen()) {
+            compositor.add(screen, patch, x, y, dupx, dupy, flip);
+            return;
+        }
+
+        final PatchRasters<V> rasters = getPatchRasters();
+        if (rasters == null) {
+            DrawPatchColumns(screen, patch, x, y, dupx, dupy, flip);
+            return;
+        }
+
+        rasters.get(patch, dupx, dupy, flip, this::convertPalettedBlock)
+                .draw(screen, x, y, getScreenWidth(), 0, getScreenHeight());
+    }
+
+    /**
+     * @return the cache of scaled patches, or null to always draw them by columns
+     */
+    default PatchRasters<V> getPatchRasters() {
+        return null;
+    }
+
+    /**
+     * @return what draws patches together in bands, or null to draw each right away
+     */
+    default PatchCompositor<V> getPatchCompositor() {
+        return null;
+    }
+
     /**
      * Replaces DrawPatchCol for bunny scrolled in Finale.
      * Also uses my reworked column code, but that one is not parallelized
@@ -121,14 +121,7 @@ class BufferedRenderer16 extends SoftwareParallelVideoRenderer<byte[], short[]>
 
     @Override
     void doWriteScreen() {
-        for (int i = 0; i < PARALLELISM; i++) {
-            executor.execute(paletteThreads[i]);
-        }
-        try {
-            updateBarrier.await();
-        } catch (InterruptedException | BrokenBarrierException e) {
-            LOGGER.log(Level.SEVERE, e, null);
-        }
+        applyPalette();
     }
 
     @Override
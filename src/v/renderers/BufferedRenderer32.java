@@ -27,6 +27,8 @@ import java.awt.image.VolatileImage;
 import java.util.concurrent.BrokenBarrierException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import m.Settings;
+import mochadoom.Engine;
 import mochadoom.Loggers;
 import v.tables.BlurryTable;
 import v.tables.ColorTint;
@@ -46,7 +48,24 @@ class BufferedRenderer32 extends SoftwareParallelVideoRenderer<byte[], int[]> {
 
     private static final Logger LOGGER = Loggers.getLogger(BufferedRenderer32.class.getName());
 
-    protected final int[] raster;
+    protected int[] raster;
+
+    /**
+     * With pipeline_realcolor_tint, a finished frame is copied here, and tinted into the
+     * pending image while the next one is rendered. The images swap once it's done.
+     */
+    private final boolean pipelined = Engine.getConfig().equals(Settings.pipeline_realcolor_tint, Boolean.TRUE);
+    private final int[] snapshot;
+    private Image pendingscreen;
+    private int[] pendingRaster;
+    private boolean tinting;
+
+    /**
+     * What the palette threads tint from and into, and with what: set before they are started
+     */
+    private int[] tintSource, tintTarget;
+    private ColorTint tint;
+    private int tintGamma;
 
     // VolatileImage speeds up delivery to VRAM - it is 30-40 fps faster then directly rendering BufferedImage
     protected VolatileImage screen;
@@ -69,7 +88,7 @@ class BufferedRenderer32 extends SoftwareParallelVideoRenderer<byte[], int[]> {
          * Try to create as accelerated Images as possible - these would not lose
          * more performance from attempt (in contrast to 16-bit ones)
          */
-        screen = GRAPHICS_CONF.createCompatibleVolatileImage(width, height);
+        screen = GRAPHICS_CONF != null ? GRAPHICS_CONF.createCompatibleVolatileImage(width, height) : null;
         transparency = rf.getBppMode().transparency;
 
         /**
@@ -77,13 +96,16 @@ class BufferedRenderer32 extends SoftwareParallelVideoRenderer<byte[], int[]> {
          * and if you have, for example, 24-bit mode, the TYPE_INT_RGB BufferedImage will
          * still get accelerated
          */
-        currentscreen = compatible
-                ? GRAPHICS_CONF.createCompatibleImage(width, height, transparency)
-                : new BufferedImage(width, height, transparency == TRANSLUCENT ? TYPE_INT_ARGB : TYPE_INT_RGB);
-        currentscreen.setAccelerationPriority(1.0f);
+        currentscreen = newScreenImage();
+        raster = rasterOf(currentscreen);
 
-        // extract raster from the created image
-        raster = ((DataBufferInt) ((BufferedImage) currentscreen).getRaster().getDataBuffer()).getData();
+        if (pipelined) {
+            pendingscreen = newScreenImage();
+            pendingRaster = rasterOf(pendingscreen);
+            snapshot = new int[raster.length];
+        } else {
+            snapshot = null;
+        }
 
         blurryTable = new BlurryTable(liteColorMaps);
 
@@ -98,14 +120,39 @@ class BufferedRenderer32 extends SoftwareParallelVideoRenderer<byte[], int[]> {
         }
     }
 
+    private Image newScreenImage() {
+        final Image image = compatible
+                ? GRAPHICS_CONF.createCompatibleImage(width, height, transparency)
+                : new BufferedImage(width, height, transparency == TRANSLUCENT ? TYPE_INT_ARGB : TYPE_INT_RGB);
+        image.setAccelerationPriority(1.0f);
+        return image;
+    }
+
+    // extract raster from the created image
+    private static int[] rasterOf(Image image) {
+        return ((DataBufferInt) ((BufferedImage) image).getRaster().getDataBuffer()).getData();
+    }
+
     /**
      * This method is accessed by AWTDoom to render the screen
      * As we use VolatileImage that can lose its contents, it must have special care.
      * doWriteScreen is called in the moment, when the VolatileImage is ready and
-     * we can copy to it and post-process
+     * we can copy to it
      */
     @Override
     public Image getScreenImage() {
+        if (pipelined) {
+            pipelineFrame();
+        } else {
+            startTint(screens.get(DoomScreen.FG), raster);
+            awaitPalette();
+        }
+
+        if (screen == null) {
+            // headless, nothing to accelerate
+            return currentscreen;
+        }
+
         do {
             if (screen.validate(GRAPHICS_CONF) == VolatileImage.IMAGE_INCOMPATIBLE) {
                 screen.flush();
@@ -117,17 +164,41 @@ class BufferedRenderer32 extends SoftwareParallelVideoRenderer<byte[], int[]> {
         return screen;
     }
 
-    @Override
-    void doWriteScreen() {
-        for (int i = 0; i < PARALLELISM; i++) {
-            executor.execute(paletteThreads[i]);
-        }
-        try {
-            updateBarrier.await();
-        } catch (InterruptedException | BrokenBarrierException e) {
-            LOGGER.log(Level.SEVERE, e, null);
+    /**
+     * Takes the frame tinted while this one was rendered as the current screen, then sets
+     * the palette threads on this one and returns without waiting. The first frame shown
+     * is blank.
+     */
+    private void pipelineFrame() {
+        if (tinting) {
+            awaitPalette();
+            final Image done = pendingscreen;
+            pendingscreen = currentscreen;
+            currentscreen = done;
+            final int[] doneRaster = pendingRaster;
+            pendingRaster = raster;
+            raster = doneRaster;
         }
 
+        // FG will be drawn over by the next frame before the threads are done with it
+        System.arraycopy(screens.get(DoomScreen.FG), 0, snapshot, 0, snapshot.length);
+        startTint(snapshot, pendingRaster);
+        tinting = true;
+    }
+
+    /**
+     * The palette and gamma are taken now, as they may change before the threads run
+     */
+    private void startTint(int[] source, int[] target) {
+        tintSource = source;
+        tintTarget = target;
+        tint = (GRAYPAL_SET ? GREY_TINTS : NORMAL_TINTS).get(usepalette);
+        tintGamma = usegamma;
+        startPalette();
+    }
+
+    @Override
+    void doWriteScreen() {
         final Graphics2D g = screen.createGraphics();
         g.drawImage(currentscreen, 0, 0, null);
         g.dispose();
@@ -152,14 +223,12 @@ class BufferedRenderer32 extends SoftwareParallelVideoRenderer<byte[], int[]> {
      */
     private class IntPaletteThread implements Runnable {
 
-        private final int[] FG;
         private final int start;
         private final int stop;
 
         IntPaletteThread(int start, int stop) {
             this.start = start;
             this.stop = stop;
-            this.FG = screens.get(DoomScreen.FG);
         }
 
         /**
@@ -167,10 +236,12 @@ class BufferedRenderer32 extends SoftwareParallelVideoRenderer<byte[], int[]> {
          */
         @Override
         public void run() {
-            final ColorTint t = (GRAYPAL_SET ? GREY_TINTS : NORMAL_TINTS).get(usepalette);
-            final byte[] LUT_R = t.LUT_r8[usegamma];
-            final byte[] LUT_G = t.LUT_g8[usegamma];
-            final byte[] LUT_B = t.LUT_b8[usegamma];
+            final int[] FG = tintSource;
+            final int[] raster = tintTarget;
+            final ColorTint t = tint;
+            final byte[] LUT_R = t.LUT_r8[tintGamma];
+            final byte[] LUT_G = t.LUT_g8[tintGamma];
+            final byte[] LUT_B = t.LUT_b8[tintGamma];
             for (int i = start; i < stop;) {
                 raster[i] = (FG[i] & 0xFF000000) + ((LUT_R[(FG[i] >> 16) & 0xFF] & 0xFF) << 16) + ((LUT_G[(FG[i] >> 8) & 0xFF] & 0xFF) << 8) + (LUT_B[FG[i++] & 0xFF] & 0xFF);
                 raster[i] = (FG[i] & 0xFF000000) + ((LUT_R[(FG[i] >> 16) & 0xFF] & 0xFF) << 16) + ((LUT_G[(FG[i] >> 8) & 0xFF] & 0xFF) << 8) + (LUT_B[FG[i++] & 0xFF] & 0xFF);
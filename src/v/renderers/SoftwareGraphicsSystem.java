@@ -24,6 +24,7 @@ import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
 import java.awt.image.DataBufferInt;
 import java.awt.image.DataBufferUShort;
+import java.lang.reflect.Array;
 import java.util.Map;
 import m.IRandom;
 import m.Settings;
@@ -34,6 +35,8 @@ import v.graphics.Blocks;
 import v.graphics.Horizontal;
 import v.graphics.Lines;
 import v.graphics.Palettes;
+import v.graphics.PatchCompositor;
+import v.graphics.PatchRasters;
 import v.graphics.Patches;
 import v.graphics.Plotter;
 import v.graphics.Rectangles;
@@ -82,6 +85,16 @@ abstract class SoftwareGraphicsSystem<T, V>
      */
     protected Image currentscreen;
 
+    /**
+     * Patches scaled to this screen, null when they are drawn by columns
+     */
+    protected final PatchRasters<V> patchRasters;
+
+    /**
+     * Draws patches in bands with cfg:parallelism_patch_columns, null when they are drawn right away
+     */
+    protected final PatchCompositor<V> patchCompositor;
+
     /**
      * Dynamic properties:
      */
@@ -105,6 +118,14 @@ abstract class SoftwareGraphicsSystem<T, V>
         this.screens = mapScreensToBuffers(bufferType, bufferLength);
         this.palette = palette(rf);
         this.liteColorMaps = colormap(rf);
+        this.patchRasters = PatchRasters.BUDGET > 0 ? new PatchRasters<>(bufferType, PatchRasters.BUDGET * 1024L * 1024L) : null;
+        this.patchCompositor = Engine.getConfig().getValue(Settings.parallelism_patch_columns, Integer.class) > 0
+                ? new PatchCompositor<>(this, this::newBlocks) : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private V[] newBlocks(int length) {
+        return (V[]) Array.newInstance(bufferType, length);
     }
 
     @SuppressWarnings("unchecked")
@@ -209,6 +230,7 @@ abstract class SoftwareGraphicsSystem<T, V>
 
     @Override
     public void screenCopy(DoomScreen srcScreen, DoomScreen dstScreen) {
+        flushOverlay();
         Rectangles.super.screenCopy(srcScreen, dstScreen);
     }
 
@@ -254,36 +276,76 @@ abstract class SoftwareGraphicsSystem<T, V>
 
     @Override
     public void DrawPatchColScaled(DoomScreen screen, patch_t patch, VideoScale vs, int x, int col) {
+        flushOverlay();
         Patches.super.DrawPatchColScaled(screen, patch, vs, x, col);
     }
 
+    @Override
+    public PatchRasters<V> getPatchRasters() {
+        return patchRasters;
+    }
+
+    @Override
+    public PatchCompositor<V> getPatchCompositor() {
+        return patchCompositor;
+    }
+
+    @Override
+    public void BeginOverlay() {
+        if (patchCompositor != null) {
+            patchCompositor.open();
+        }
+    }
+
+    @Override
+    public void EndOverlay() {
+        if (patchCompositor != null) {
+            patchCompositor.close();
+        }
+    }
+
+    /**
+     * Patches put off by the compositor go under what is drawn next
+     */
+    private void flushOverlay() {
+        if (patchCompositor != null) {
+            patchCompositor.flush();
+        }
+    }
+
     @Override
     public void CopyRect(DoomScreen srcScreenType, Rectangle rectangle, DoomScreen dstScreenType) {
+        flushOverlay();
         Rectangles.super.CopyRect(srcScreenType, rectangle, dstScreenType);
     }
 
     @Override
     public void CopyRect(DoomScreen srcScreenType, Rectangle rectangle, DoomScreen dstScreenType, int dstPoint) {
+        flushOverlay();
         Rectangles.super.CopyRect(srcScreenType, rectangle, dstScreenType, dstPoint);
     }
 
     @Override
     public void FillRect(DoomScreen screenType, Rectangle rectangle, V patternSrc, Horizontal pattern) {
+        flushOverlay();
         Rectangles.super.FillRect(screenType, rectangle, patternSrc, pattern);
     }
 
     @Override
     public void FillRect(DoomScreen screenType, Rectangle rectangle, V patternSrc, int point) {
+        flushOverlay();
         Rectangles.super.FillRect(screenType, rectangle, patternSrc, point);
     }
 
     @Override
     public void FillRect(DoomScreen screenType, Rectangle rectangle, int color) {
+        flushOverlay();
         Rectangles.super.FillRect(screenType, rectangle, color);
     }
 
     @Override
     public void FillRect(DoomScreen screenType, Rectangle rectangle, byte color) {
+        flushOverlay();
         Rectangles.super.FillRect(screenType, rectangle, color);
     }
 
@@ -294,21 +356,25 @@ abstract class SoftwareGraphicsSystem<T, V>
 
     @Override
     public void TileScreen(DoomScreen dstScreen, V block, Rectangle blockArea) {
+        flushOverlay();
         Rectangles.super.TileScreen(dstScreen, block, blockArea);
     }
 
     @Override
     public void TileScreenArea(DoomScreen dstScreen, Rectangle screenArea, V block, Rectangle blockArea) {
+        flushOverlay();
         Rectangles.super.TileScreenArea(dstScreen, screenArea, block, blockArea);
     }
 
     @Override
     public void DrawBlock(DoomScreen dstScreen, V block, Rectangle sourceArea, int destinationPoint) {
+        flushOverlay();
         Rectangles.super.DrawBlock(dstScreen, block, sourceArea, destinationPoint);
     }
 
     @Override
     public Plotter<V> createPlotter(DoomScreen screen) {
+        flushOverlay();
         return DoomGraphicSystem.super.createPlotter(screen);
     }
 
@@ -22,12 +22,16 @@ import java.awt.GraphicsEnvironment;
 import java.awt.image.ColorModel;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.concurrent.BrokenBarrierException;
 import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import m.MenuMisc;
 import m.Settings;
 import mochadoom.Engine;
+import mochadoom.Loggers;
 
 /**
  * Base for HiColor and TrueColor parallel renderers
@@ -37,12 +41,18 @@ import mochadoom.Engine;
  */
 abstract class SoftwareParallelVideoRenderer<T, V> extends SoftwareGraphicsSystem<T, V> {
 
+    private static final Logger LOGGER = Loggers.getLogger(SoftwareParallelVideoRenderer.class.getName());
+
     // How many threads it will use, but default it uses all avalable cores
     private static final int[] EMPTY_INT_PALETTED_BLOCK = new int[0];
     private static final short[] EMPTY_SHORT_PALETTED_BLOCK = new short[0];
     protected static final int PARALLELISM = Engine.getConfig().getValue(Settings.parallelism_realcolor_tint, Integer.class);
-    protected static final GraphicsConfiguration GRAPHICS_CONF = GraphicsEnvironment.getLocalGraphicsEnvironment()
-            .getDefaultScreenDevice().getDefaultConfiguration();
+    /**
+     * There is no screen device to be compatible with when running -headless, so it is null then
+     */
+    protected static final GraphicsConfiguration GRAPHICS_CONF = GraphicsEnvironment.isHeadless()
+            ? null
+            : GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
 
     protected final boolean GRAYPAL_SET = Engine.getCVM().bool(CommandVariable.GREYPAL);
 
@@ -51,6 +61,9 @@ abstract class SoftwareParallelVideoRenderer<T, V> extends SoftwareGraphicsSyste
      * Maybe even some acceleration will be possible
      */
     static boolean checkConfigurationHicolor() {
+        if (GRAPHICS_CONF == null) {
+            return false;
+        }
         final ColorModel cm = GRAPHICS_CONF.getColorModel();
         final int cps = cm.getNumComponents();
         return cps == 3 && cm.getComponentSize(0) == 5 && cm.getComponentSize(1) == 5 && cm.getComponentSize(2) == 5;
@@ -61,6 +74,9 @@ abstract class SoftwareParallelVideoRenderer<T, V> extends SoftwareGraphicsSyste
      * Maybe even some acceleration will be possible
      */
     static boolean checkConfigurationTruecolor() {
+        if (GRAPHICS_CONF == null) {
+            return false;
+        }
         final ColorModel cm = GRAPHICS_CONF.getColorModel();
         final int cps = cm.getNumComponents();
         return cps == 3 && cm.getComponentSize(0) == 8 && cm.getComponentSize(1) == 8 && cm.getComponentSize(2) == 8;
@@ -85,6 +101,34 @@ abstract class SoftwareParallelVideoRenderer<T, V> extends SoftwareGraphicsSyste
 
     abstract void doWriteScreen();
 
+    /**
+     * Runs the palette threads over the whole FG screen and waits for them to finish
+     */
+    protected void applyPalette() {
+        startPalette();
+        awaitPalette();
+    }
+
+    /**
+     * Sets the palette threads going, without waiting for them
+     */
+    protected void startPalette() {
+        for (int i = 0; i < PARALLELISM; i++) {
+            executor.execute(paletteThreads[i]);
+        }
+    }
+
+    /**
+     * Waits for the palette threads started by startPalette to finish
+     */
+    protected void awaitPalette() {
+        try {
+            updateBarrier.await();
+        } catch (InterruptedException | BrokenBarrierException e) {
+            LOGGER.log(Level.SEVERE, e, null);
+        }
+    }
+
     @Override
     public boolean writeScreenShot(String name, DoomScreen screen) {
         // munge planar buffer to linear
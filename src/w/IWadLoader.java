@@ -11,6 +11,8 @@ import static doom.SourceCode.W_Wad.W_LumpLength;
 import static doom.SourceCode.W_Wad.W_ReadLump;
 import static doom.SourceCode.W_Wad.W_Reload;
 import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -118,6 +120,15 @@ public interface IWadLoader {
     @W_Wad.C(W_CacheLumpNum)
     public abstract <T extends CacheableDoomObject> T CacheLumpNum(int lump, int tag, Class<T> what);
 
+    /**
+     * CacheLumpNum, done by a background decoder. The lump is read and unpacked
+     * without holding up the cache, and put in it in one go, so whoever asks
+     * for it later gets it right away and never a half unpacked one.
+     *
+     * @return the lump as it ends up in the cache
+     */
+    public abstract <T extends CacheableDoomObject> CompletableFuture<T> CacheLumpNumAsync(int lump, int tag, Class<T> what);
+
     /**
      * Return a cached lump based on its name, as raw bytes, no matter what.
      * It's rare, but has its uses.
@@ -268,6 +279,21 @@ public interface IWadLoader {
      */
     void InjectLumpNum(int lump, CacheableDoomObject obj);
 
+    /**
+     * Z_FreeTags: forgets every cached lump with a tag from lowtag to hightag inclusive.
+     *
+     * @param lowtag
+     * @param hightag
+     */
+    void FreeTags(int lowtag, int hightag);
+
+    /**
+     * Hits, misses and evictions of the lump cache, and the bytes it holds
+     *
+     * @return
+     */
+    Map<String, Object> getCacheStatistics();
+
     /**
      * Read a lump into a bunch of bytes straight. No caching, no frills.
      *
@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2017 Good Sign
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package w;
+
+import static data.Defines.PU_PURGELEVEL;
+import static data.Defines.PU_STATIC;
+import java.lang.ref.SoftReference;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The lumps WadLoader has read in, with the zone tags they were cached with.
+ *
+ * Like the zone of vanilla, lumps tagged PU_PURGELEVEL and up, in practice PU_CACHE,
+ * may be dropped when memory is needed, and everything else stays until it is
+ * unlocked or its tags are freed. Memory here is a budget of bytes, counted by
+ * the size of the lumps on disk: once the lumps in cache go over it, purgable ones
+ * are dropped by a CLOCK sweep, so a lump asked for since the hand last passed it
+ * gets another round. A dropped lump is only read in again if it's asked for again.
+ *
+ * Dropping a lump here only forgets it: whoever still holds the object keeps it.
+ * With soft references on, dropped lumps are remembered softly, so one asked for
+ * again before the collector needed its memory comes back without being read.
+ *
+ * Only peek and tryGet may be called from any thread at any time, so a lump already
+ * in cache is found without a lock: lumps are kept in an array read with acquire
+ * semantics, so a thread that sees a lump sees it unpacked. Everything else is not
+ * thread safe, WadLoader only calls it holding its own lock.
+ *
+ * @author Good Sign
+ */
+public final class LumpCache {
+
+    private final AtomicReferenceArray<CacheableDoomObject> objects;
+    private final int[] tags;
+    private final long[] sizes;
+    private final boolean[] referenced;
+    /** Null unless dropped lumps are remembered softly */
+    private final SoftReference<CacheableDoomObject>[] dropped;
+    /** For unlocking by object */
+    private final Map<CacheableDoomObject, Integer> lumpOf = new IdentityHashMap<>();
+
+    /** Bytes, 0 for no limit */
+    private final long budget;
+    private int hand;
+
+    private long residentBytes, purgableBytes;
+    private final LongAdder hits = new LongAdder();
+    private long misses, evictions;
+
+    /**
+     * @param budget bytes of lumps kept before purgable ones are dropped, 0 for no limit
+     * @param soft whether dropped lumps are remembered through soft references
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public LumpCache(int numlumps, long budget, boolean soft) {
+        this.objects = new AtomicReferenceArray<>(numlumps);
+        this.tags = new int[numlumps];
+        this.sizes = new long[numlumps];
+        this.referenced = new boolean[numlumps];
+        this.dropped = soft ? new SoftReference[numlumps] : null;
+        this.budget = budget;
+    }
+
+    /**
+     * @return the lump if it is in cache, without counting it as used
+     */
+    public CacheableDoomObject peek(int lump) {
+        return objects.get(lump);
+    }
+
+    /**
+     * Any thread: get, for a lump that is in cache and already has the tag,
+     * which is how lumps are asked for every frame
+     *
+     * @return the lump, or null if get has to be called holding the lock
+     */
+    public CacheableDoomObject tryGet(int lump, int tag) {
+        final CacheableDoomObject obj = objects.get(lump);
+        if (obj == null || tags[lump] != normalize(tag)) {
+            return null;
+        }
+
+        // a hint only, a lost write costs the lump a round
+        referenced[lump] = true;
+        hits.increment();
+        return obj;
+    }
+
+    /**
+     * Looks the lump up for someone who is going to use it, so it is counted
+     * as a hit or a miss, and from now on has the tag it's asked for with,
+     * as W_CacheLumpNum changes the tag of a lump it finds.
+     *
+     * @return the lump, or null if it has to be read in
+     */
+    public CacheableDoomObject get(int lump, int tag) {
+        CacheableDoomObject obj = objects.get(lump);
+        if (obj == null && dropped != null && dropped[lump] != null) {
+            obj = dropped[lump].get();
+            dropped[lump] = null;
+            if (obj != null) {
+                install(lump, obj, tag, sizes[lump]);
+                if (budget > 0) {
+                    // it counts against the budget again, as if it had been read in
+                    evict();
+                }
+            }
+        }
+
+        if (obj == null) {
+            ++misses;
+            return null;
+        }
+
+        hits.increment();
+        referenced[lump] = true;
+        retag(lump, tag);
+        return obj;
+    }
+
+    /**
+     * Puts the lump in, in place of whatever was there, and makes room for it
+     * if it goes over the budget. It's the last one dropped, but a purgable lump
+     * bigger than the whole budget doesn't stay.
+     */
+    public void put(int lump, CacheableDoomObject obj, int tag, long size) {
+        remove(lump);
+        install(lump, obj, tag, Math.max(0, size));
+        if (budget > 0) {
+            evict();
+        }
+    }
+
+    public void remove(int lump) {
+        if (dropped != null) {
+            dropped[lump] = null;
+        }
+        drop(lump);
+    }
+
+    /**
+     * @return the lump the object was cached as, or -1
+     */
+    public int lumpOf(CacheableDoomObject obj) {
+        final Integer lump = lumpOf.get(obj);
+        return lump != null ? lump : -1;
+    }
+
+    /**
+     * Z_FreeTags: removes every lump with a tag from lowtag to hightag inclusive
+     */
+    public void freeTags(int lowtag, int hightag) {
+        for (int lump = 0; lump < objects.length(); lump++) {
+            if (objects.get(lump) != null && tags[lump] >= lowtag && tags[lump] <= hightag) {
+                remove(lump);
+            }
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public Map<String, Object> statistics() {
+        final Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("resident_bytes", residentBytes);
+        stats.put("purgable_bytes", purgableBytes);
+        stats.put("budget_bytes", budget);
+        return stats;
+    }
+
+    private void install(int lump, CacheableDoomObject obj, int tag, long size) {
+        tags[lump] = normalize(tag);
+        sizes[lump] = size;
+        referenced[lump] = true;
+        objects.set(lump, obj);
+        lumpOf.put(obj, lump);
+        residentBytes += size;
+        if (isPurgable(lump)) {
+            purgableBytes += size;
+        }
+    }
+
+    private void retag(int lump, int tag) {
+        final boolean was = isPurgable(lump);
+        tags[lump] = normalize(tag);
+        if (was != isPurgable(lump)) {
+            purgableBytes += was ? -sizes[lump] : sizes[lump];
+        }
+    }
+
+    private void drop(int lump) {
+        final CacheableDoomObject obj = objects.get(lump);
+        if (obj == null) {
+            return;
+        }
+        if (isPurgable(lump)) {
+            purgableBytes -= sizes[lump];
+        }
+        residentBytes -= sizes[lump];
+        lumpOf.remove(obj, lump);
+        objects.set(lump, null);
+        referenced[lump] = false;
+    }
+
+    /**
+     * Every purgable lump is dropped within two turns of the hand,
+     * so this ends once there are none left to drop
+     */
+    private void evict() {
+        while (residentBytes > budget && purgableBytes > 0) {
+            final int lump = hand;
+            hand = hand + 1 < objects.length() ? hand + 1 : 0;
+
+            if (objects.get(lump) == null || !isPurgable(lump)) {
+                continue;
+            }
+
+            if (referenced[lump]) {
+                referenced[lump] = false;
+                continue;
+            }
+
+            if (dropped != null) {
+                dropped[lump] = new SoftReference<>(objects.get(lump));
+            }
+            drop(lump);
+            ++evictions;
+        }
+    }
+
+    private boolean isPurgable(int lump) {
+        return tags[lump] >= PU_PURGELEVEL;
+    }
+
+    /**
+     * Some callers pass 0, which isn't a tag: the zone would have taken it as static
+     */
+    private static int normalize(int tag) {
+        return tag < PU_STATIC ? PU_STATIC : tag;
+    }
+}
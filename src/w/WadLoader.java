@@ -22,6 +22,8 @@
 package w;
 
 import static data.Defines.PU_CACHE;
+import static data.Defines.PU_LEVEL;
+import static data.Defines.PU_STATIC;
 import doom.SourceCode;
 import doom.SourceCode.W_Wad;
 import static doom.SourceCode.W_Wad.W_CacheLumpName;
@@ -36,14 +38,23 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import m.Settings;
+import mochadoom.Engine;
 import mochadoom.Loggers;
 import rr.patch_t;
 import utils.C2JUtils;
@@ -54,6 +65,18 @@ public class WadLoader implements IWadLoader {
 
     private static final Logger LOGGER = Loggers.getLogger(WadLoader.class.getName());
 
+    /**
+     * Reads and unpacks lumps for CacheLumpNumAsync. Leaves a core to the game,
+     * and its threads are only started once there is something to decode.
+     */
+    private static final ExecutorService DECODERS = Executors.newFixedThreadPool(
+            Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)), r -> {
+                final Thread t = new Thread(r, "Lump decoder");
+                t.setDaemon(true);
+                t.setPriority(Thread.NORM_PRIORITY - 1);
+                return t;
+            });
+
     protected IDoomSystem I;
 
     ///// CONSTRUCTOR
@@ -64,7 +87,6 @@ public class WadLoader implements IWadLoader {
 
     public WadLoader() {
         lumpinfo = new lumpinfo_t[0];
-        zone = new HashMap<>();
         wadfiles = new ArrayList<>();
         this.I = new DummySystem();
 
@@ -88,8 +110,10 @@ public class WadLoader implements IWadLoader {
      *
      * Not to brag, but this system is FAR superior to the inline unmarshaling
      * used in other projects ;-)
+     *
+     * Now it also keeps their tags, and drops PU_CACHE ones past a budget.
      */
-    private CacheableDoomObject[] lumpcache;
+    private LumpCache lumpcache;
 
     private boolean[] preloaded;
 
@@ -174,6 +198,11 @@ public class WadLoader implements IWadLoader {
         wadinfo.entry = entry;
         wadinfo.type = type;
 
+        // Plain local files are served straight from a mapping. Reloadable ones may change under us.
+        if (type == InputStreamSugar.FILE && entry == null && reloadname == null) {
+            wadinfo.mapped = mapFile(uri);
+        }
+
         // System.out.println(" adding " + filename + "\n");
         // We start at the number of lumps. This allows appending stuff.
         startlump = this.numlumps;
@@ -306,6 +335,52 @@ public class WadLoader implements IWadLoader {
         }
     }
 
+    /**
+     * Maps a whole file read-only, so lumps can be read without seeking a stream, and
+     * unpacked from slices of the mapping without copying them onto the heap first.
+     * The mapping outlives the channel, and is let go of along with the wadfile.
+     *
+     * @return the mapping, or null if the file can't be mapped: then the stream is used
+     */
+    private static ByteBuffer mapFile(String uri) {
+        try (FileChannel channel = FileChannel.open(Paths.get(uri), StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                // Lump offsets are 32 bit anyway
+                return null;
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, String.format("Could not map %s, reading it as a stream", uri), e);
+            return null;
+        }
+    }
+
+    /**
+     * The lump's bytes as a slice of its wadfile's mapping: no copy is made, and the slice
+     * is read-only. Null if the wadfile is not mapped, or the directory points outside it.
+     */
+    private ByteBuffer mappedLump(lumpinfo_t l) {
+        final ByteBuffer mapped = l.wadfile != null ? l.wadfile.mapped : null;
+        if (mapped == null || l.position < 0 || l.size < 0 || l.position + l.size > mapped.capacity()) {
+            return null;
+        }
+        return mapped.slice((int) l.position, (int) l.size);
+    }
+
+    /**
+     * A buffer to unpack a lump from: a slice of the mapping when there is one, otherwise
+     * the lump read onto the heap.
+     */
+    private ByteBuffer lumpBuffer(int lump) {
+        final ByteBuffer slice = mappedLump(lumpinfo[lump]);
+        if (slice != null) {
+            I.BeginRead();
+            return slice;
+        }
+        return ByteBuffer.wrap(ReadLump(lump));
+    }
+
     /** Try to guess a realistic wad size limit based only on the number of lumps and their
      *  STATED contents, in case it's not possible to get an accurate stream size otherwise.
      *  Of course, they may be way off with deliberately malformed files etc.
@@ -374,9 +449,9 @@ public class WadLoader implements IWadLoader {
         lump_p = reloadlump;
         int fileinfo_p = 0;
         for (i = reloadlump; i < reloadlump + lumpcount; i++, lump_p++, fileinfo_p++) {
-            if (lumpcache[i] != null) {
+            if (lumpcache.peek(i) != null) {
                 // That's like "freeing" it, right?
-                lumpcache[i] = null;
+                lumpcache.remove(i);
                 preloaded[i] = false;
             }
 
@@ -428,13 +503,11 @@ public class WadLoader implements IWadLoader {
 
         // set up caching
         size = numlumps;
-        lumpcache = new CacheableDoomObject[size];
+        lumpcache = new LumpCache(size,
+                Math.max(0, Engine.getConfig().getValue(Settings.lump_cache_budget, Integer.class)) * 1024L * 1024L,
+                Engine.getConfig().equals(Settings.lump_cache_soft, Boolean.TRUE));
         preloaded = new boolean[size];
 
-        if (lumpcache == null) {
-            I.Error("Couldn't allocate lumpcache");
-        }
-
         this.InitLumpHash();
     }
 
@@ -632,7 +705,7 @@ public class WadLoader implements IWadLoader {
      * @throws IOException
      */
     @Override
-    public final void ReadLump(int lump, byte[] buf, int offset) {
+    public final synchronized void ReadLump(int lump, byte[] buf, int offset) {
         int c = 0;
         lumpinfo_t l;
         InputStream handle = null;
@@ -644,6 +717,13 @@ public class WadLoader implements IWadLoader {
 
         l = lumpinfo[lump];
 
+        final ByteBuffer slice = mappedLump(l);
+        if (slice != null) {
+            slice.get(buf, offset, (int) l.size);
+            I.BeginRead();
+            return;
+        }
+
         if (l.handle == null) {
             // reloadable file, so use open / read / close
             try {
@@ -696,6 +776,10 @@ public class WadLoader implements IWadLoader {
      * off disk, based on the specific class type (it will call the unpack()
      * method). If not possible to call the unpack method, it will leave a
      * DoomBuffer object in its place, with the raw byte contents.
+     *
+     * A lump already in cache is returned without a lock, as the renderer asks for
+     * patches and flats every frame. Reading and putting lumps in the cache are
+     * synchronized, as level setup and prefetching load lumps from more than one thread.
      */
     @Override
     @SuppressWarnings("unchecked")
@@ -705,48 +789,112 @@ public class WadLoader implements IWadLoader {
             I.Error("W_CacheLumpNum: %d >= numlumps", lump);
         }
 
+        if (what != null) {
+            final CacheableDoomObject cached = lumpcache.tryGet(lump, tag);
+            if (cached != null) {
+                return (T) cached;
+            }
+        }
+
+        synchronized (this) {
+            return cacheLumpNumLocked(lump, tag, what);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends CacheableDoomObject> T cacheLumpNumLocked(int lump, int tag, Class<T> what) {
         // Nothing cached here...
         // SPECIAL case : if no class is specified (null), the lump is re-read anyway
         // and you get a raw doombuffer. Plus, it won't be cached.
-        if ((lumpcache[lump] == null) || (what == null)) {
-            // read the lump in
-            // System.out.println("cache miss on lump "+lump);
-            // Fake Zone system: mark this particular lump with the tag specified
-            // ptr = Z_Malloc (W_LumpLength (lump), tag, &lumpcache[lump]);
-            // Read as a byte buffer anyway.
-            ByteBuffer thebuffer = ByteBuffer.wrap(ReadLump(lump));
-
-            // Class type specified
-            if (what != null) {
-                try {
-                    // Can it be uncached? If so, deserialize it.
-                    // MAES: this should be done whenever single lumps
-                    // are read. DO NOT DELEGATE TO THE READ OBJECTS THEMSELVES.
-                    // In case of sequential reads of similar objects, use
-                    // CacheLumpNumIntoArray instead.
-                    thebuffer.rewind();
-                    lumpcache[lump] = what.getDeclaredConstructor().newInstance();
-                    lumpcache[lump].unpack(thebuffer);
-
-                    // Track it for freeing
-                    Track(lumpcache[lump], lump);
-
-                    if (what == patch_t.class) {
-                        ((patch_t) lumpcache[lump]).name = this.lumpinfo[lump].name;
-                    }
-                } catch (Exception e) {
-                    LOGGER.log(Level.SEVERE,
-                            String.format("Could not auto-instantiate lump %d of class %s", lump, String.valueOf(what)), e);
+        final CacheableDoomObject cached = what != null ? lumpcache.get(lump, tag) : null;
+        if (cached != null) {
+            return (T) cached;
+        }
+
+        // read the lump in
+        // System.out.println("cache miss on lump "+lump);
+        // Fake Zone system: mark this particular lump with the tag specified
+        // ptr = Z_Malloc (W_LumpLength (lump), tag, &lumpcache[lump]);
+        // Read as a byte buffer anyway. Raw bytes are asked for as an array, so they
+        // get a copy, while objects unpack straight from the mapping when there is one.
+        ByteBuffer thebuffer = what != null ? lumpBuffer(lump) : ByteBuffer.wrap(ReadLump(lump));
+        CacheableDoomObject obj = null;
+
+        // Class type specified
+        if (what != null) {
+            try {
+                // Can it be uncached? If so, deserialize it.
+                // MAES: this should be done whenever single lumps
+                // are read. DO NOT DELEGATE TO THE READ OBJECTS THEMSELVES.
+                // In case of sequential reads of similar objects, use
+                // CacheLumpNumIntoArray instead.
+                thebuffer.rewind();
+                obj = what.getDeclaredConstructor().newInstance();
+                obj.unpack(thebuffer);
+
+                if (what == patch_t.class) {
+                    ((patch_t) obj).name = this.lumpinfo[lump].name;
                 }
 
-            } else {
-                // Class not specified? Then gimme a containing DoomBuffer!
-                DoomBuffer db = new DoomBuffer(thebuffer);
-                lumpcache[lump] = db;
+                // Track it for freeing
+                lumpcache.put(lump, obj, tag, lumpinfo[lump].size);
+            } catch (Exception e) {
+                LOGGER.log(Level.SEVERE,
+                        String.format("Could not auto-instantiate lump %d of class %s", lump, String.valueOf(what)), e);
+            }
+
+        } else {
+            // Class not specified? Then gimme a containing DoomBuffer!
+            obj = new DoomBuffer(thebuffer);
+            lumpcache.put(lump, obj, tag, lumpinfo[lump].size);
+        }
+
+        return (T) obj;
+    }
+
+    @Override
+    public <T extends CacheableDoomObject> CompletableFuture<T> CacheLumpNumAsync(int lump, int tag, Class<T> what) {
+        if (lump < 0 || lump >= numlumps || what == null) {
+            return CompletableFuture.completedFuture(CacheLumpNum(lump, tag, what));
+        }
+        return CompletableFuture.supplyAsync(() -> decodeInBackground(lump, tag, what), DECODERS);
+    }
+
+    /**
+     * Only holds the cache's lock to look, and to put the lump in, so the game
+     * thread can go on reading the cache while the lump is unpacked.
+     * If the game gets to the lump first, its copy is the one kept.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends CacheableDoomObject> T decodeInBackground(int lump, int tag, Class<T> what) {
+        synchronized (this) {
+            if (lumpcache.peek(lump) != null) {
+                return (T) lumpcache.peek(lump);
+            }
+        }
+
+        final T decoded;
+        try {
+            final ByteBuffer thebuffer = lumpBuffer(lump);
+            thebuffer.rewind();
+            decoded = what.getDeclaredConstructor().newInstance();
+            decoded.unpack(thebuffer);
+            if (decoded instanceof patch_t) {
+                ((patch_t) decoded).name = this.lumpinfo[lump].name;
             }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING,
+                    String.format("Could not prefetch lump %d of class %s", lump, String.valueOf(what)), e);
+            return null;
         }
 
-        return (T) lumpcache[lump];
+        synchronized (this) {
+            if (lumpcache.peek(lump) == null) {
+                lumpcache.put(lump, decoded, tag, lumpinfo[lump].size);
+                return decoded;
+            }
+            return (T) lumpcache.peek(lump);
+        }
     }
 
     /** A very useful method when you need to load a lump which can consist
@@ -765,7 +913,7 @@ public class WadLoader implements IWadLoader {
      *  @return a properly sized array of the correct type.
      */
     @Override
-    public <T extends CacheableDoomObject> T[] CacheLumpNumIntoArray(int lump, int num, ArraySupplier<T> what, IntFunction<T[]> arrGen) {
+    public synchronized <T extends CacheableDoomObject> T[] CacheLumpNumIntoArray(int lump, int num, ArraySupplier<T> what, IntFunction<T[]> arrGen) {
         if (lump >= numlumps) {
             I.Error("CacheLumpNumIntoArray: %d >= numlumps", lump);
         }
@@ -778,40 +926,41 @@ public class WadLoader implements IWadLoader {
 			I.Error("CacheLumpNumIntoArray: %s does not implement CacheableDoomObject", what.getName());
 		}*/
         // Nothing cached here...
-        if ((lumpcache[lump] == null) && (what != null)) {
+        CacheableDoomObject cached = lumpcache.get(lump, PU_LEVEL);
+        if ((cached == null) && (what != null)) {
             //System.out.println("cache miss on lump " + lump);
             // Read as a byte buffer anyway.
-            ByteBuffer thebuffer = ByteBuffer.wrap(ReadLump(lump));
+            ByteBuffer thebuffer = lumpBuffer(lump);
             T[] stuff = malloc(what, arrGen, num);
 
             // Store the buffer anyway (as a CacheableDoomObjectContainer)
-            lumpcache[lump] = new CacheableDoomObjectContainer<>(stuff);
+            cached = new CacheableDoomObjectContainer<>(stuff);
 
             // Auto-unpack it, if possible.
             try {
                 thebuffer.rewind();
-                lumpcache[lump].unpack(thebuffer);
+                cached.unpack(thebuffer);
             } catch (IOException e) {
                 LOGGER.log(Level.WARNING, String.format(
                         "Could not auto-unpack lump %s into an array of objects of class %s", lump, what
                 ), e);
             }
 
-            // Track it (as ONE lump)
-            Track(lumpcache[lump], lump);
+            // Track it (as ONE lump). It's a part of a map, so it goes with the level.
+            lumpcache.put(lump, cached, PU_LEVEL, lumpinfo[lump].size);
         }
 
-        if (lumpcache[lump] == null) {
+        if (cached == null) {
             return null;
         }
 
         @SuppressWarnings("unchecked")
-        final CacheableDoomObjectContainer<T> cont = (CacheableDoomObjectContainer<T>) lumpcache[lump];
+        final CacheableDoomObjectContainer<T> cont = (CacheableDoomObjectContainer<T>) cached;
         return cont.getStuff();
     }
 
     public CacheableDoomObject CacheLumpNum(int lump) {
-        return lumpcache[lump];
+        return lumpcache.peek(lump);
     }
 
     @Override
@@ -1122,39 +1271,42 @@ public class WadLoader implements IWadLoader {
     }
 
     @Override
-    public void UnlockLumpNum(int lump) {
-        lumpcache[lump] = null;
+    public synchronized void UnlockLumpNum(int lump) {
+        lumpcache.remove(lump);
     }
 
     @Override
-    public void InjectLumpNum(int lump, CacheableDoomObject obj) {
-        lumpcache[lump] = obj;
-    }
-
-    //// Merged remnants from LumpZone here.
-    HashMap<CacheableDoomObject, Integer> zone;
-
-    /** Add a lump to the tracking */
-    public void Track(CacheableDoomObject lump, int index) {
-        zone.put(lump, index);
+    public synchronized void InjectLumpNum(int lump, CacheableDoomObject obj) {
+        // There's nothing to read it back from, so it can't be dropped
+        lumpcache.put(lump, obj, PU_STATIC, lumpinfo[lump].size);
     }
 
     @Override
-    public void UnlockLumpNum(CacheableDoomObject lump) {
+    public synchronized void UnlockLumpNum(CacheableDoomObject lump) {
         // Remove it from the reference
-        Integer lumpno = zone.remove(lump);
+        final int lumpno = lumpcache.lumpOf(lump);
 
         // Force nulling. This should trigger garbage collection,
         // and reclaim some memory, provided you also nulled any other
         // reference to a certain lump. Therefore, make sure you null
         // stuff right after calling this method, if you want to make sure
         // that they won't be referenced anywhere else.
-        if (lumpno != null) {
-            lumpcache[lumpno] = null;
+        if (lumpno != -1) {
+            lumpcache.remove(lumpno);
             //System.out.printf("Lump %d %d freed\n",lump.hashCode(),lumpno);
         }
     }
 
+    @Override
+    public synchronized void FreeTags(int lowtag, int hightag) {
+        lumpcache.freeTags(lowtag, hightag);
+    }
+
+    @Override
+    public synchronized Map<String, Object> getCacheStatistics() {
+        return lumpcache.statistics();
+    }
+
     @Override
     public boolean verifyLumpName(int lump, String lumpname) {
 